@@ -0,0 +1,130 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.Region;
+import org.altbeacon.beacon.distance.DistanceCalculator;
+import org.apache.cordova.CallbackContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Deterministic ranging results for the benchmarks, and the notifier LocationManager registers.
+ */
+final class BenchmarkFixtures {
+
+    static final String UUID = "E4007AB3-EFCA-4C89-A106-D4C4EC03DBD2";
+
+    static {
+        // The AltBeacon default needs an Android context, this is the usual log distance model.
+        Beacon.setDistanceCalculator(new DistanceCalculator() {
+            @Override
+            public double calculateDistance(int txPower, double rssi) {
+                return Math.pow(10.0, (txPower - rssi) / 20.0);
+            }
+        });
+    }
+
+    private static final RegionEventDispatcher.Host HOST = new RegionEventDispatcher.Host() {
+        @Override
+        public void onBeaconsRanged(Region region, Collection<Beacon> beacons) {
+        }
+
+        @Override
+        public boolean isDebugEnabled() {
+            return false;
+        }
+
+        @Override
+        public void debugLog(String message) {
+        }
+
+        @Override
+        public void errorLog(String message) {
+            System.err.println(message);
+        }
+    };
+
+    // A failure event would hide a broken dispatch from the measurements
+    private static final IBeaconServiceNotifier FAILURES = new IBeaconServiceNotifier() {
+        @Override
+        public void didStartMonitoringForRegion(Region region) {
+        }
+
+        @Override
+        public void monitoringDidFailForRegion(Region region, Exception exception) {
+            throw new IllegalStateException(exception);
+        }
+
+        @Override
+        public void rangingBeaconsDidFailForRegion(Region region, Exception exception) {
+            throw new IllegalStateException(exception);
+        }
+
+        @Override
+        public void didChangeAuthorizationStatus(String status) {
+        }
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /*
+     * The RegionEventDispatcher of LocationManager with the default options and without recorded
+     * sightings, sending the events of the regions to the callback.
+     */
+    static RegionEventDispatcher regionEventDispatcher(StripedDispatcher eventDispatcher, EventMetrics eventMetrics,
+                                                       CallbackContext callbackContext) {
+        RegionEventDispatcher dispatcher = new RegionEventDispatcher(eventDispatcher, eventMetrics, null,
+                new VisibleBeaconIndex(2), new RangingSubscriptions(),
+                Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()), HOST);
+        dispatcher.setDelegate(callbackContext, FAILURES);
+        return dispatcher;
+    }
+
+    static Region region() {
+        return new Region("benchmarkRegion", Identifier.parse(UUID), null, null);
+    }
+
+    static Region regionWithMajorAndMinor() {
+        return new Region("benchmarkRegion", Identifier.parse(UUID), Identifier.parse("1000"), Identifier.parse("42"));
+    }
+
+    static List<Beacon> beacons(int count) {
+        Random random = new Random(count);
+        List<Beacon> beacons = new ArrayList<Beacon>(count);
+        for (int i = 0; i < count; i++) {
+            beacons.add(new Beacon.Builder()
+                    .setId1(UUID)
+                    .setId2(String.valueOf(1000 + i / 100))
+                    .setId3(String.valueOf(i % 100))
+                    .setRssi(-40 - random.nextInt(55))
+                    .setTxPower(-59)
+                    .build());
+        }
+        return beacons;
+    }
+}
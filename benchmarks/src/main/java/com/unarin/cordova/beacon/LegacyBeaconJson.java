@@ -0,0 +1,74 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collection;
+
+/*
+ * The JSONObject tree serialisation of ranging results that LocationManager used before
+ * RangingJsonWriter, kept as the baseline of RangingSerializationBenchmark.
+ */
+final class LegacyBeaconJson {
+
+    private LegacyBeaconJson() {
+    }
+
+    static JSONObject rangingEvent(Region region, Collection<Beacon> beacons) throws JSONException {
+        JSONObject data = new JSONObject();
+        data.put("eventType", "didRangeBeaconsInRegion");
+        data.put("region", RegionJson.mapOfRegion(region));
+        data.put("beacons", mapOfBeacons(beacons));
+        return data;
+    }
+
+    static JSONArray mapOfBeacons(Collection<Beacon> beacons) throws JSONException {
+        JSONArray beaconData = new JSONArray();
+        for (Beacon beacon : beacons) {
+            beaconData.put(mapOfBeacon(beacon));
+        }
+        return beaconData;
+    }
+
+    static JSONObject mapOfBeacon(Beacon region) throws JSONException {
+        JSONObject dict = new JSONObject();
+
+        //beacon id
+        dict.put("uuid", region.getId1());
+        dict.put("major", region.getId2());
+        dict.put("minor", region.getId3());
+
+        // proximity
+        dict.put("proximity", Proximity.nameOf(region.getDistance()));
+
+        // signal strength and transmission power
+        dict.put("rssi", region.getRssi());
+        dict.put("tx", region.getTxPower());
+
+        // accuracy = rough distance estimate limited to two decimal places (in metres)
+        dict.put("accuracy", Math.round(region.getDistance() * 100.0) / 100.0);
+
+        return dict;
+    }
+}
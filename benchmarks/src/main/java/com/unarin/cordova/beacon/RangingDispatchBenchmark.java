@@ -0,0 +1,90 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Time from a ranging result arriving in the RangeNotifier until its PluginResult is sent,
+ * through the RegionEventDispatcher that LocationManager registers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RangingDispatchBenchmark {
+
+    @Param({"1", "50", "500"})
+    public int beaconCount;
+
+    private Region region;
+    private List<Beacon> beacons;
+
+    private StripedDispatcher eventDispatcher;
+    private RegionEventDispatcher regionEventDispatcher;
+    private volatile CountDownLatch sent;
+
+    @Setup
+    public void setUp() {
+        region = BenchmarkFixtures.region();
+        beacons = BenchmarkFixtures.beacons(beaconCount);
+        eventDispatcher = new StripedDispatcher(1, 256);
+        regionEventDispatcher = BenchmarkFixtures.regionEventDispatcher(eventDispatcher, new EventMetrics(),
+                new CallbackContext("benchmark") {
+            @Override
+            protected void onResult(PluginResult pluginResult) {
+                sent.countDown();
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        regionEventDispatcher.shutdown();
+        eventDispatcher.shutdownNow();
+    }
+
+    @Benchmark
+    public void dispatchRanging() throws InterruptedException {
+        sent = new CountDownLatch(1);
+        regionEventDispatcher.didRangeBeaconsInRegion(beacons, region);
+        sent.await();
+    }
+}
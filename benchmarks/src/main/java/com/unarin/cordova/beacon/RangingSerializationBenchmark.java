@@ -0,0 +1,92 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Cost of turning one ranging result into the message handed to the WebView, including the
+ * encoding done by the PluginResult constructor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RangingSerializationBenchmark {
+
+    @Param({"1", "50", "500"})
+    public int beaconCount;
+
+    private Region region;
+    private List<Beacon> beacons;
+    private RangingJsonWriter writer;
+    private RangingBinaryWriter binaryWriter;
+    private TopKTracker topKTracker;
+
+    @Setup
+    public void setUp() {
+        region = BenchmarkFixtures.region();
+        beacons = BenchmarkFixtures.beacons(beaconCount);
+        writer = new RangingJsonWriter();
+        binaryWriter = new RangingBinaryWriter();
+        topKTracker = new TopKTracker();
+    }
+
+    @Benchmark
+    public String mapOfBeacon() throws JSONException {
+        return new PluginResult(PluginResult.Status.OK, LegacyBeaconJson.rangingEvent(region, beacons)).getMessage();
+    }
+
+    @Benchmark
+    public String rangingJsonWriter() throws JSONException {
+        return new PluginResult(PluginResult.Status.OK, writer.rangingEvent(region, beacons)).getMessage();
+    }
+
+    // The selection always counts as changed here, so each result is written
+    @Benchmark
+    public String rangingJsonWriterTop3() throws JSONException {
+        topKTracker.clear();
+        List<Beacon> top = topKTracker.update(region, beacons, 3, TopKTracker.BY_RSSI, null);
+        return new PluginResult(PluginResult.Status.OK, writer.rangingEvent(region, top)).getMessage();
+    }
+
+    @Benchmark
+    public String rangingBinaryWriter() {
+        return new PluginResult(PluginResult.Status.OK, binaryWriter.rangingEvent(region, beacons, null)).getMessage();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Cost of smoothing the RSSI of every beacon of one ranging result, per filter type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RssiFilterBenchmark {
+
+    @Param({"50", "500"})
+    public int beaconCount;
+
+    @Param({RssiFilterBank.KALMAN, RssiFilterBank.MEDIAN, RssiFilterBank.ARMA})
+    public String type;
+
+    private Region region;
+    private List<Beacon> beacons;
+    private RangingOptions options;
+    private final RssiFilterBank rssiFilterBank = new RssiFilterBank();
+    private final Random random = new Random(1);
+
+    @Setup
+    public void setUp() throws JSONException {
+        region = BenchmarkFixtures.region();
+        beacons = BenchmarkFixtures.beacons(beaconCount);
+        JSONObject filter = new JSONObject();
+        filter.put("type", type);
+        JSONObject json = new JSONObject();
+        json.put("filter", filter);
+        options = new RangingOptions(json);
+    }
+
+    @Benchmark
+    public RssiFilterBank.Readings update() {
+        // a new RSSI per cycle, so the median window does not stay sorted
+        Beacon first = beacons.get(0);
+        first.setRssi(-40 - random.nextInt(55));
+        return rssiFilterBank.update(region, beacons, options);
+    }
+}
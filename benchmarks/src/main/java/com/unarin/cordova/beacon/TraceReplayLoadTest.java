@@ -0,0 +1,192 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.MonitorNotifier;
+import org.altbeacon.beacon.Region;
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Load test of the dispatch pipeline: replays a BeaconTrace through TraceReplayer into the
+ * RegionEventDispatcher that LocationManager registers and prints the event metrics.
+ *
+ *   java -cp target/benchmarks.jar com.unarin.cordova.beacon.TraceReplayLoadTest [options] [trace]
+ *
+ * Without a trace a synthetic one is generated first. Options:
+ *   --speed <factor>     replay speed, 0 (default) replays as fast as possible
+ *   --queue <capacity>   capacity of the event queue, 256 by default like LocationManager
+ *   --lanes <n>          event threads, the number of cores by default like LocationManager
+ *   --regions <n>        synthetic trace: number of regions, 10 by default
+ *   --beacons <n>        synthetic trace: beacons per region, 500 by default
+ *   --cycles <n>         synthetic trace: ranging cycles, 200 by default
+ *   --period <ms>        synthetic trace: time between cycles, 1100 by default
+ *   --save <file>        synthetic trace: where to keep it, deleted after the run otherwise
+ */
+public final class TraceReplayLoadTest {
+
+    private TraceReplayLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        double speed = 0;
+        int queueCapacity = 256;
+        int lanes = Runtime.getRuntime().availableProcessors();
+        int regions = 10;
+        int beacons = 500;
+        int cycles = 200;
+        long periodMs = 1100;
+        File save = null;
+        File trace = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--speed".equals(arg)) {
+                speed = Double.parseDouble(args[++i]);
+            } else if ("--queue".equals(arg)) {
+                queueCapacity = Integer.parseInt(args[++i]);
+            } else if ("--lanes".equals(arg)) {
+                lanes = Integer.parseInt(args[++i]);
+            } else if ("--regions".equals(arg)) {
+                regions = Integer.parseInt(args[++i]);
+            } else if ("--beacons".equals(arg)) {
+                beacons = Integer.parseInt(args[++i]);
+            } else if ("--cycles".equals(arg)) {
+                cycles = Integer.parseInt(args[++i]);
+            } else if ("--period".equals(arg)) {
+                periodMs = Long.parseLong(args[++i]);
+            } else if ("--save".equals(arg)) {
+                save = new File(args[++i]);
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else {
+                trace = new File(arg);
+            }
+        }
+
+        boolean synthetic = trace == null;
+        if (synthetic) {
+            trace = save != null ? save : File.createTempFile("synthetic", ".trace");
+            long writtenAt = System.nanoTime();
+            writeSyntheticTrace(trace, regions, beacons, cycles, periodMs);
+            System.out.println("Generated " + trace + ": " + regions + " regions of " + beacons + " beacons, "
+                    + cycles + " cycles, " + trace.length() / 1024 + " KiB in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - writtenAt) + " ms");
+        }
+
+        final AtomicLong sentCount = new AtomicLong();
+        StripedDispatcher eventDispatcher = new StripedDispatcher(lanes, queueCapacity);
+        EventMetrics eventMetrics = new EventMetrics();
+        RegionEventDispatcher regionEventDispatcher = BenchmarkFixtures.regionEventDispatcher(eventDispatcher, eventMetrics,
+                new CallbackContext("loadTest") {
+            @Override
+            protected void onResult(PluginResult pluginResult) {
+                sentCount.incrementAndGet();
+            }
+        });
+
+        TraceReplayer replayer = new TraceReplayer(trace, speed, false,
+                regionEventDispatcher, regionEventDispatcher, new TraceReplayer.Listener() {
+            @Override
+            public void onReplayEnded(TraceReplayer replayer, Exception error) {
+                if (error != null) {
+                    System.err.println("Replay failed: " + error);
+                }
+            }
+        });
+
+        long startedAt = System.nanoTime();
+        replayer.start();
+        replayer.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        long replayedAt = System.nanoTime();
+        while (eventDispatcher.size() > 0) {
+            Thread.sleep(1);
+        }
+        // the last task may still be running
+        Thread.sleep(50);
+        regionEventDispatcher.shutdown();
+        eventDispatcher.shutdownNow();
+
+        double seconds = (replayedAt - startedAt) / 1e9;
+        System.out.println("Replayed " + replayer.getEventCount() + " events in " + String.format("%.3f", seconds) + " s ("
+                + String.format("%.0f", replayer.getEventCount() / seconds) + " events/s), "
+                + sentCount.get() + " results sent on " + lanes + " lanes, peak queue size "
+                + eventDispatcher.getPeakSize());
+        System.out.println(eventMetrics.toJSON().toString(2));
+
+        if (synthetic && save == null) {
+            trace.delete();
+        }
+    }
+
+    /*
+     * Every region is entered, ranged for the given cycles with slowly drifting RSSIs, then exited.
+     */
+    static void writeSyntheticTrace(File file, int regionCount, int beaconCount, int cycles, long periodMs) throws IOException {
+        Random random = new Random(42);
+        List<Region> regions = new ArrayList<Region>(regionCount);
+        List<List<Beacon>> beaconsOfRegions = new ArrayList<List<Beacon>>(regionCount);
+        for (int r = 0; r < regionCount; r++) {
+            Identifier major = Identifier.fromInt(r);
+            regions.add(new Region("region" + r, Identifier.parse(BenchmarkFixtures.UUID), major, null));
+            beaconsOfRegions.add(new ArrayList<Beacon>(beaconCount));
+        }
+
+        BeaconTrace.TraceWriter writer = new BeaconTrace.TraceWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            for (Region region : regions) {
+                writer.entered(0, region).determinedState(0, MonitorNotifier.INSIDE, region);
+            }
+            for (int cycle = 0; cycle < cycles; cycle++) {
+                long timeMs = cycle * periodMs;
+                for (int r = 0; r < regionCount; r++) {
+                    List<Beacon> beacons = beaconsOfRegions.get(r);
+                    beacons.clear();
+                    for (int b = 0; b < beaconCount; b++) {
+                        beacons.add(new Beacon.Builder()
+                                .setId1(BenchmarkFixtures.UUID)
+                                .setId2(String.valueOf(r))
+                                .setId3(String.valueOf(b))
+                                .setRssi(-60 - (b % 30) + random.nextInt(7) - 3)
+                                .setTxPower(-59)
+                                .build());
+                    }
+                    writer.ranged(timeMs, regions.get(r), beacons);
+                }
+            }
+            for (Region region : regions) {
+                writer.exited(cycles * periodMs, region);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Identifier;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BeaconSlotIndexTest {
+
+    private static final Identifier UUID = Identifier.parse("E4007AB3-EFCA-4C89-A106-D4C4EC03DBD2");
+
+    private static int add(BeaconSlotIndex index, int major, int minor) {
+        return index.add(UUID, Identifier.fromInt(major), Identifier.fromInt(minor));
+    }
+
+    private static int find(BeaconSlotIndex index, int major, int minor) {
+        return index.find(UUID, Identifier.fromInt(major), Identifier.fromInt(minor));
+    }
+
+    @Test
+    public void findsAddedBeacons() {
+        BeaconSlotIndex index = new BeaconSlotIndex();
+        int first = add(index, 1, 1);
+        int second = add(index, 1, 2);
+
+        assertEquals(first, find(index, 1, 1));
+        assertEquals(second, find(index, 1, 2));
+        assertEquals(-1, find(index, 2, 1));
+        assertEquals(-1, index.find(UUID, Identifier.fromInt(1), null));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void reusesSlotsOfRemovedBeacons() {
+        BeaconSlotIndex index = new BeaconSlotIndex();
+        add(index, 1, 1);
+        int removed = add(index, 1, 2);
+        add(index, 1, 3);
+
+        index.remove(removed);
+        assertFalse(index.isUsed(removed));
+        assertEquals(-1, find(index, 1, 2));
+
+        assertEquals(removed, add(index, 1, 4));
+        assertEquals(3, index.slotLimit());
+        assertEquals(3, index.size());
+    }
+
+    /*
+     * Removing shifts the following entries of a probe sequence back into the hole. Entries
+     * moved to the wrong place, or left behind a hole, are not found anymore.
+     */
+    @Test
+    public void findsRemainingBeaconsAfterRemovals() {
+        BeaconSlotIndex index = new BeaconSlotIndex();
+        Map<Integer, Integer> slots = new HashMap<Integer, Integer>();
+        Random random = new Random(42);
+
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 200; i++) {
+                int minor = random.nextInt(1000);
+                if (!slots.containsKey(minor)) {
+                    slots.put(minor, add(index, 7, minor));
+                }
+            }
+
+            List<Integer> minors = new ArrayList<Integer>(slots.keySet());
+            for (Integer minor : minors) {
+                if (random.nextInt(3) != 0) {
+                    index.remove(slots.remove(minor));
+                }
+            }
+
+            assertEquals(slots.size(), index.size());
+            for (int minor = 0; minor < 1000; minor++) {
+                Integer slot = slots.get(minor);
+                assertEquals("minor " + minor + " in round " + round, slot != null ? slot : -1, find(index, 7, minor));
+            }
+        }
+    }
+
+    @Test
+    public void forgetsEverythingOnClear() {
+        BeaconSlotIndex index = new BeaconSlotIndex();
+        for (int minor = 0; minor < 100; minor++) {
+            add(index, 1, minor);
+        }
+        index.clear();
+
+        assertEquals(0, index.size());
+        assertEquals(-1, find(index, 1, 5));
+        assertEquals(0, add(index, 1, 5));
+        assertTrue(index.isUsed(0));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DispatchQueueTest {
+
+    private final List<String> droppedNames = new ArrayList<String>();
+
+    private final class Ranging extends DispatchQueue.DroppableTask {
+        private final String name;
+
+        Ranging(String key, String name) {
+            super(key);
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+        }
+
+        @Override
+        void onDropped() {
+            droppedNames.add(name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final class Monitoring implements Runnable {
+        private final String name;
+
+        Monitoring(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static List<String> namesOf(DispatchQueue queue) {
+        List<String> names = new ArrayList<String>();
+        for (Runnable task : queue) {
+            names.add(task.toString());
+        }
+        return names;
+    }
+
+    private static List<String> names(String... names) {
+        List<String> list = new ArrayList<String>();
+        for (String name : names) {
+            list.add(name);
+        }
+        return list;
+    }
+
+    @Test
+    public void keepsTasksInOrderBelowCapacity() {
+        DispatchQueue queue = new DispatchQueue(3);
+        queue.offer(new Ranging("a", "a1"));
+        queue.offer(new Monitoring("enter"));
+        queue.offer(new Ranging("b", "b1"));
+
+        assertEquals(names("a1", "enter", "b1"), namesOf(queue));
+        assertEquals(0, queue.getDroppedCount());
+        assertTrue(droppedNames.isEmpty());
+    }
+
+    @Test
+    public void replacesQueuedResultOfSameKeyWhenFull() {
+        DispatchQueue queue = new DispatchQueue(3);
+        queue.offer(new Ranging("a", "a1"));
+        queue.offer(new Ranging("b", "b1"));
+        queue.offer(new Ranging("c", "c1"));
+        queue.offer(new Ranging("b", "b2"));
+
+        // b1 goes rather than the older a1, b2 queues behind the others
+        assertEquals(names("a1", "c1", "b2"), namesOf(queue));
+        assertEquals(names("b1"), droppedNames);
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void dropsOldestDroppableTaskWithoutSameKey() {
+        DispatchQueue queue = new DispatchQueue(3);
+        queue.offer(new Monitoring("enter"));
+        queue.offer(new Ranging("a", "a1"));
+        queue.offer(new Ranging("b", "b1"));
+        queue.offer(new Ranging("c", "c1"));
+
+        assertEquals(names("enter", "b1", "c1"), namesOf(queue));
+        assertEquals(names("a1"), droppedNames);
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void dropsTasksWithoutKeyOldestFirst() {
+        DispatchQueue queue = new DispatchQueue(2);
+        queue.offer(new Ranging(null, "batch1"));
+        queue.offer(new Ranging(null, "batch2"));
+        queue.offer(new Ranging(null, "batch3"));
+
+        assertEquals(names("batch2", "batch3"), namesOf(queue));
+        assertEquals(names("batch1"), droppedNames);
+    }
+
+    @Test
+    public void acceptsNonDroppableTasksBeyondCapacity() {
+        DispatchQueue queue = new DispatchQueue(2);
+        queue.offer(new Ranging("a", "a1"));
+        queue.offer(new Monitoring("enter"));
+        queue.offer(new Monitoring("exit"));
+        queue.offer(new Monitoring("state"));
+
+        assertEquals(names("a1", "enter", "exit", "state"), namesOf(queue));
+        assertEquals(4, queue.getPeakSize());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void dropsNewestResultWhenOnlyNonDroppableTasksAreQueued() {
+        DispatchQueue queue = new DispatchQueue(2);
+        queue.offer(new Monitoring("enter"));
+        queue.offer(new Monitoring("exit"));
+        queue.offer(new Ranging("a", "a1"));
+
+        assertEquals(names("enter", "exit"), namesOf(queue));
+        assertEquals(names("a1"), droppedNames);
+        assertEquals(1, queue.getDroppedCount());
+    }
+}
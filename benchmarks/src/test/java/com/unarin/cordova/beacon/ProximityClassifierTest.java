@@ -0,0 +1,103 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ProximityClassifierTest {
+
+    private static ProximityClassifier classifier(long minDwellMs) {
+        ProximityClassifier classifier = new ProximityClassifier(ProximityClassifier.DEFAULT_IMMEDIATE_THRESHOLD,
+                ProximityClassifier.DEFAULT_NEAR_THRESHOLD, 0.2, minDwellMs);
+        classifier.ensureCapacity(2);
+        return classifier;
+    }
+
+    @Test
+    public void takesFirstDistanceAsIs() {
+        ProximityClassifier classifier = classifier(1000);
+        assertEquals(Proximity.FAR, classifier.classify(0, 4.5, 0));
+        assertEquals(Proximity.IMMEDIATE, classifier.classify(1, 0.45, 0));
+    }
+
+    @Test
+    public void movesFartherOnlyBeyondTheBand() {
+        ProximityClassifier classifier = classifier(0);
+        assertEquals(Proximity.NEAR, classifier.classify(0, 3.0, 0));
+        // far without hysteresis, but within 20% of the 4 m threshold
+        assertEquals(Proximity.NEAR, classifier.classify(0, 4.5, 100));
+        assertEquals(Proximity.NEAR, classifier.classify(0, 4.8, 200));
+        assertEquals(Proximity.FAR, classifier.classify(0, 4.9, 300));
+    }
+
+    @Test
+    public void movesCloserOnlyBelowTheBand() {
+        ProximityClassifier classifier = classifier(0);
+        assertEquals(Proximity.FAR, classifier.classify(0, 6.0, 0));
+        assertEquals(Proximity.FAR, classifier.classify(0, 3.5, 100));
+        assertEquals(Proximity.NEAR, classifier.classify(0, 3.1, 200));
+
+        assertEquals(Proximity.NEAR, classifier.classify(0, 0.45, 300));
+        assertEquals(Proximity.IMMEDIATE, classifier.classify(0, 0.35, 400));
+        // back within the band of the immediate threshold
+        assertEquals(Proximity.IMMEDIATE, classifier.classify(0, 0.55, 500));
+    }
+
+    @Test
+    public void reportsNewProximityAfterMinimumDwell() {
+        ProximityClassifier classifier = classifier(1000);
+        assertEquals(Proximity.NEAR, classifier.classify(0, 2.0, 0));
+        assertEquals(Proximity.NEAR, classifier.classify(0, 6.0, 100));
+        assertEquals(Proximity.NEAR, classifier.classify(0, 6.0, 1099));
+        assertEquals(Proximity.FAR, classifier.classify(0, 6.0, 1100));
+    }
+
+    @Test
+    public void restartsDwellWhenBeaconReturns() {
+        ProximityClassifier classifier = classifier(1000);
+        assertEquals(Proximity.NEAR, classifier.classify(0, 2.0, 0));
+        assertEquals(Proximity.NEAR, classifier.classify(0, 6.0, 100));
+        assertEquals(Proximity.NEAR, classifier.classify(0, 2.0, 600));
+        assertEquals(Proximity.NEAR, classifier.classify(0, 6.0, 1200));
+        assertEquals(Proximity.NEAR, classifier.classify(0, 6.0, 2199));
+        assertEquals(Proximity.FAR, classifier.classify(0, 6.0, 2200));
+    }
+
+    @Test
+    public void reportsUnknownDistanceWithoutBand() {
+        ProximityClassifier classifier = classifier(0);
+        assertEquals(Proximity.NEAR, classifier.classify(0, 2.0, 0));
+        assertEquals(Proximity.UNKNOWN, classifier.classify(0, -1, 100));
+        // from unknown the plain thresholds apply
+        assertEquals(Proximity.FAR, classifier.classify(0, 4.5, 200));
+    }
+
+    @Test
+    public void keepsStatePerSlotUntilForgotten() {
+        ProximityClassifier classifier = classifier(0);
+        assertEquals(Proximity.NEAR, classifier.classify(0, 3.0, 0));
+        assertEquals(Proximity.FAR, classifier.classify(1, 4.5, 0));
+        assertEquals(Proximity.NEAR, classifier.classify(0, 4.5, 100));
+
+        classifier.forget(0);
+        assertEquals(Proximity.FAR, classifier.classify(0, 4.5, 200));
+    }
+}
@@ -0,0 +1,205 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.MonitorNotifier;
+import org.altbeacon.beacon.Region;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RegionStoreTest {
+
+    private static final String UUID = "E4007AB3-EFCA-4C89-A106-D4C4EC03DBD2";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Region region(String uniqueId, int major) {
+        return new Region(uniqueId, Identifier.parse(UUID), Identifier.fromInt(major), null);
+    }
+
+    private static List<String> idsOf(List<Region> regions) {
+        List<String> ids = new ArrayList<String>();
+        for (Region region : regions) {
+            ids.add(region.getUniqueId());
+        }
+        return ids;
+    }
+
+    private static List<String> ids(String... ids) {
+        List<String> list = new ArrayList<String>();
+        for (String id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static void close(RegionStore store) throws InterruptedException {
+        store.close();
+        assertTrue(store.awaitClosed(5, TimeUnit.SECONDS));
+    }
+
+    private static RegionStore load(File file) {
+        RegionStore store = new RegionStore(file);
+        store.load();
+        return store;
+    }
+
+    // Stores the regions in a new file and returns its length
+    private long write(File file, Region... regions) throws InterruptedException {
+        RegionStore store = load(file);
+        for (Region region : regions) {
+            store.putRegion(region);
+        }
+        close(store);
+        return file.length();
+    }
+
+    private static void corrupt(File file, long position) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0xff);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void loadsRegionsAndStatesWritten() throws Exception {
+        File file = new File(folder.getRoot(), "regions");
+        RegionStore store = load(file);
+        store.putRegion(region("first", 1));
+        store.putRegion(region("second", 2));
+        store.putState("second", MonitorNotifier.INSIDE);
+        close(store);
+
+        RegionStore loaded = load(file);
+        assertEquals(ids("first", "second"), idsOf(loaded.getRegions()));
+        Region second = loaded.getRegions().get(1);
+        assertEquals(Identifier.parse(UUID), second.getId1());
+        assertEquals(Identifier.fromInt(2), second.getId2());
+        assertEquals(null, second.getId3());
+        Map<String, Integer> states = loaded.getStates();
+        assertEquals(1, states.size());
+        assertEquals(Integer.valueOf(MonitorNotifier.INSIDE), states.get("second"));
+    }
+
+    @Test
+    public void dropsRecordTornAtTheEndAndAppendsAfterTheLastIntactOne() throws Exception {
+        File file = new File(folder.getRoot(), "regions");
+        long length = write(file, region("first", 1), region("second", 2), region("third", 3));
+
+        // a write of the last record cut short by the process being killed
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length - 3);
+        } finally {
+            raf.close();
+        }
+
+        RegionStore recovered = load(file);
+        assertEquals(ids("first", "second"), idsOf(recovered.getRegions()));
+
+        // the torn bytes were cut off, so a record appended now is read back
+        recovered.putRegion(region("fourth", 4));
+        close(recovered);
+        assertEquals(ids("first", "second", "fourth"), idsOf(load(file).getRegions()));
+    }
+
+    @Test
+    public void dropsEverythingFromTheFirstDamagedRecord() throws Exception {
+        File firstOnly = new File(folder.getRoot(), "first");
+        long firstRecordEnd = write(firstOnly, region("first", 1));
+
+        File file = new File(folder.getRoot(), "regions");
+        write(file, region("first", 1), region("second", 2), region("third", 3));
+
+        // a byte in the body of the second record, behind its length
+        corrupt(file, firstRecordEnd + 6);
+
+        RegionStore recovered = load(file);
+        assertEquals(ids("first"), idsOf(recovered.getRegions()));
+        assertEquals(firstRecordEnd, file.length());
+    }
+
+    @Test
+    public void ignoresFileWithUnknownHeader() throws Exception {
+        File file = new File(folder.getRoot(), "regions");
+        write(file, region("first", 1));
+        corrupt(file, 0);
+
+        assertTrue(load(file).getRegions().isEmpty());
+    }
+
+    @Test
+    public void compactsSupersededRecords() throws Exception {
+        File compact = new File(folder.getRoot(), "compact");
+        RegionStore store = load(compact);
+        store.putRegion(region("first", 1));
+        store.putState("first", MonitorNotifier.INSIDE);
+        close(store);
+
+        // well above the records that trigger a rewrite, all but two superseded
+        File file = new File(folder.getRoot(), "regions");
+        store = load(file);
+        store.putRegion(region("first", 1));
+        for (int i = 0; i < 100; i++) {
+            store.putState("first", i % 2 == 0 ? MonitorNotifier.OUTSIDE : MonitorNotifier.INSIDE);
+        }
+        close(store);
+
+        assertEquals(compact.length(), file.length());
+        RegionStore loaded = load(file);
+        assertEquals(ids("first"), idsOf(loaded.getRegions()));
+        assertEquals(Integer.valueOf(MonitorNotifier.INSIDE), loaded.getStates().get("first"));
+    }
+
+    @Test
+    public void compactsRemovedRegions() throws Exception {
+        File file = new File(folder.getRoot(), "regions");
+        RegionStore store = load(file);
+        for (int i = 0; i < 100; i++) {
+            store.putRegion(region("region" + i, i));
+        }
+        for (int i = 0; i < 99; i++) {
+            store.removeRegion("region" + i);
+        }
+        close(store);
+
+        File compact = new File(folder.getRoot(), "compact");
+        assertEquals(write(compact, region("region99", 99)), file.length());
+        assertEquals(ids("region99"), idsOf(load(file).getRegions()));
+    }
+}
@@ -0,0 +1,259 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import android.os.RemoteException;
+import android.util.Log;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.BeaconManager;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.Region;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Adapts the time between scans to what is going on around the device.
+ *
+ * Once per scan cycle the scheduler checks whether there was any activity since the last
+ * check: beacons appearing in or disappearing from a ranged region, or a monitored region
+ * being entered or exited. Activity brings the time between scans down to the floor right
+ * away, every quiet cycle multiplies it by the backoff multiplier up to the ceiling. The
+ * foreground and background periods back off independently of each other, each within its
+ * own floor and ceiling.
+ *
+ * Changes in the RSSI or distance of the beacons do not count as activity, the raw readings
+ * are too noisy for that.
+ */
+class AdaptiveScanScheduler {
+
+    private static final String TAG = LocationManager.TAG;
+    // the smallest step the time between scans grows by, so a floor of 0 backs off as well
+    private static final long MIN_BACKOFF_STEP_MS = 1000;
+    private static final long MIN_EVALUATION_DELAY_MS = 1000;
+
+    private final BeaconManager beaconManager;
+    private final ScanOptions options;
+    private final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("LocationManager-scan-scheduler"));
+    private final Runnable evaluateTask = new Runnable() {
+        @Override
+        public void run() {
+            evaluate();
+        }
+    };
+
+    // per ranged region the number of beacons and the sum of their hash codes in the last cycle
+    private final HashMap<String, long[]> rangedBeacons = new HashMap<String, long[]>();
+
+    private long staticForegroundBetweenScanPeriod;
+    private long staticBackgroundBetweenScanPeriod;
+    // -1 until the first periods are applied
+    private long foregroundBetweenScanPeriod = -1;
+    private long backgroundBetweenScanPeriod = -1;
+    private volatile boolean adaptive;
+    private boolean backgroundMode;
+    private boolean activity;
+    private ScheduledFuture<?> evaluation;
+    private boolean shutdown;
+
+    AdaptiveScanScheduler(BeaconManager beaconManager, ScanOptions options,
+                          long staticForegroundBetweenScanPeriod, long staticBackgroundBetweenScanPeriod) {
+        this.beaconManager = beaconManager;
+        this.options = options;
+        this.staticForegroundBetweenScanPeriod = staticForegroundBetweenScanPeriod;
+        this.staticBackgroundBetweenScanPeriod = staticBackgroundBetweenScanPeriod;
+    }
+
+    /*
+     * Applies the saved options, called once the beacon manager is configured.
+     */
+    synchronized void start() {
+        restart();
+    }
+
+    synchronized void setOptions(JSONObject json) {
+        options.parseAndSave(json);
+        restart();
+    }
+
+    /*
+     * The time between foreground scans while the scheduler is not adaptive, -1 leaves it as is.
+     */
+    synchronized void setStaticForegroundBetweenScanPeriod(long period) {
+        staticForegroundBetweenScanPeriod = period;
+        if (!adaptive) {
+            restart();
+        }
+    }
+
+    synchronized void setBackgroundMode(boolean backgroundMode) {
+        if (this.backgroundMode == backgroundMode) {
+            return;
+        }
+        this.backgroundMode = backgroundMode;
+        if (adaptive) {
+            // the cycle of the other mode has a different length
+            schedule();
+        }
+    }
+
+    /*
+     * Reports the result of a ranging cycle.
+     */
+    void onBeaconsRanged(Region region, Collection<Beacon> beacons) {
+        if (!adaptive) {
+            return;
+        }
+
+        // Beacon.hashCode() builds a string, the identifiers hash their bytes
+        long hash = 0;
+        for (Beacon beacon : beacons) {
+            hash += hashOf(beacon.getId1()) * 961 + hashOf(beacon.getId2()) * 31 + hashOf(beacon.getId3());
+        }
+
+        synchronized (this) {
+            long[] previous = rangedBeacons.get(region.getUniqueId());
+            if (previous == null) {
+                previous = new long[2];
+                rangedBeacons.put(region.getUniqueId(), previous);
+            }
+            if (previous[0] != beacons.size() || previous[1] != hash) {
+                previous[0] = beacons.size();
+                previous[1] = hash;
+                onActivity();
+            }
+        }
+    }
+
+    synchronized void onRangingStopped(Region region) {
+        rangedBeacons.remove(region.getUniqueId());
+    }
+
+    /*
+     * Reports activity like a region being entered or exited.
+     */
+    synchronized void onActivity() {
+        if (!adaptive) {
+            return;
+        }
+        activity = true;
+        if (foregroundBetweenScanPeriod > options.getForegroundFloorMs()
+                || backgroundBetweenScanPeriod > options.getBackgroundFloorMs()) {
+            // scan more often right away instead of at the end of a long cycle
+            evaluate();
+        }
+    }
+
+    synchronized JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("adaptive", options.isAdaptive());
+        json.put("backgroundMode", backgroundMode);
+        json.put("foregroundBetweenScanPeriod", foregroundBetweenScanPeriod);
+        json.put("backgroundBetweenScanPeriod", backgroundBetweenScanPeriod);
+        return json;
+    }
+
+    synchronized void shutdown() {
+        shutdown = true;
+        timer.shutdownNow();
+    }
+
+    // Must be called while holding the lock.
+    private void restart() {
+        rangedBeacons.clear();
+        activity = false;
+        adaptive = options.isAdaptive();
+        if (adaptive) {
+            apply(options.getForegroundFloorMs(), options.getBackgroundFloorMs());
+            schedule();
+        } else {
+            if (evaluation != null) {
+                evaluation.cancel(false);
+                evaluation = null;
+            }
+            apply(staticForegroundBetweenScanPeriod, staticBackgroundBetweenScanPeriod);
+        }
+    }
+
+    private synchronized void evaluate() {
+        if (shutdown || !adaptive) {
+            return;
+        }
+
+        if (activity) {
+            activity = false;
+            apply(options.getForegroundFloorMs(), options.getBackgroundFloorMs());
+        } else {
+            double multiplier = options.getBackoffMultiplier();
+            apply(backOff(foregroundBetweenScanPeriod, multiplier, options.getForegroundCeilingMs()),
+                    backOff(backgroundBetweenScanPeriod, multiplier, options.getBackgroundCeilingMs()));
+        }
+        schedule();
+    }
+
+    // Must be called while holding the lock.
+    private void schedule() {
+        if (shutdown) {
+            return;
+        }
+        if (evaluation != null) {
+            evaluation.cancel(false);
+        }
+        long delay = backgroundMode ? backgroundBetweenScanPeriod : foregroundBetweenScanPeriod;
+        evaluation = timer.schedule(evaluateTask, Math.max(MIN_EVALUATION_DELAY_MS, delay), TimeUnit.MILLISECONDS);
+    }
+
+    private static int hashOf(Identifier identifier) {
+        return identifier != null ? identifier.hashCode() : 0;
+    }
+
+    private static long backOff(long period, double multiplier, long ceiling) {
+        long next = Math.max((long) (period * multiplier), period + MIN_BACKOFF_STEP_MS);
+        return Math.min(ceiling, next);
+    }
+
+    // Must be called while holding the lock.
+    private void apply(long foreground, long background) {
+        if (foreground == foregroundBetweenScanPeriod && background == backgroundBetweenScanPeriod) {
+            return;
+        }
+        foregroundBetweenScanPeriod = foreground;
+        backgroundBetweenScanPeriod = background;
+        if (foreground >= 0) {
+            beaconManager.setForegroundBetweenScanPeriod(foreground);
+        }
+        if (background >= 0) {
+            beaconManager.setBackgroundBetweenScanPeriod(background);
+        }
+        try {
+            beaconManager.updateScanPeriods();
+        } catch (RemoteException e) {
+            // not bound to the beacon service yet, it starts with the new periods
+            Log.d(TAG, "Scan periods apply once the beacon service is bound: " + e.getMessage());
+        }
+    }
+}
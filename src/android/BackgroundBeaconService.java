@@ -9,7 +9,6 @@ import android.app.Service;
 import android.content.res.Resources;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
@@ -17,7 +16,6 @@ import android.os.Build;
 import android.os.Binder;
 import android.os.IBinder;
 import android.os.RemoteException;
-import android.preference.PreferenceManager;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 
@@ -30,11 +28,23 @@ import org.altbeacon.beacon.startup.RegionBootstrap;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Created by Tom on 01/06/2015.
  */
 public class BackgroundBeaconService extends Service implements BootstrapNotifier {
     public static final String TAG = "com.unarin.beacon";
+    private static final String REGION_STORE_FILE_NAME = "com.unarin.cordova.beacon.regions";
+    private static final String SIGHTING_LOG_DIRECTORY_NAME = "com.unarin.cordova.beacon.sightings";
+    private static final long BACKGROUND_BETWEEN_SCAN_PERIOD = 45000;
+    private static final long BACKGROUND_SCAN_PERIOD = 8000;
     private boolean debugEnabled = false;
 
 	public BackgroundBeaconService() {
@@ -47,10 +57,64 @@ public class BackgroundBeaconService extends Service implements BootstrapNotifie
 
 	private MonitorNotifier monitorNotifier;
 	
-	private SharedPreferences preferences;
-
-	private boolean inRegion;
-	private boolean wasInRegionSet;
+    // The regions registered from JS, guarded by itself
+    private final RegionIndex monitoredRegions = new RegionIndex();
+    // MonitorNotifier.INSIDE or OUTSIDE per region identifier, guarded by monitoredRegions
+    private final HashMap<String, Integer> regionStates = new HashMap<String, Integer>();
+    // Persists monitoredRegions and regionStates
+    private RegionStore regionStore;
+    // Owns the time between scans of the shared BeaconManager
+    private AdaptiveScanScheduler scanScheduler;
+    // Ranges the beacons of the monitored regions into the sighting log while no client is bound, if enabled
+    private RecorderOptions recorderOptions;
+    private SightingLog sightingLog;
+    // guarded by monitoredRegions
+    private boolean bound;
+    private boolean recording;
+    private boolean recordingStartPending;
+
+    // The recorder ranges all beacons once and attributes them to the monitored regions through the
+    // index, instead of having AltBeacon range every monitored region. Its identifier is not used by
+    // clients, so stopping it leaves their ranging alone.
+    private static final Region RECORDER_REGION = new Region("com.unarin.cordova.beacon.recorder", null, null, null);
+
+    private final RangeNotifier recorderNotifier = new RangeNotifier() {
+        @Override
+        public void didRangeBeaconsInRegion(Collection<Beacon> beacons, Region region) {
+            if (!RECORDER_REGION.equals(region)) {
+                // still ranged for a client that is gone
+                return;
+            }
+
+            LinkedHashMap<Region, List<Beacon>> sightings = new LinkedHashMap<Region, List<Beacon>>();
+            List<Beacon> matched = new ArrayList<Beacon>();
+            List<Region> matches = new ArrayList<Region>();
+            synchronized (monitoredRegions) {
+                for (Beacon beacon : beacons) {
+                    matches.clear();
+                    monitoredRegions.match(beacon, matches);
+                    if (matches.isEmpty()) {
+                        continue;
+                    }
+                    matched.add(beacon);
+                    for (Region match : matches) {
+                        List<Beacon> regionBeacons = sightings.get(match);
+                        if (regionBeacons == null) {
+                            regionBeacons = new ArrayList<Beacon>();
+                            sightings.put(match, regionBeacons);
+                        }
+                        regionBeacons.add(beacon);
+                    }
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            for (Map.Entry<Region, List<Beacon>> entry : sightings.entrySet()) {
+                sightingLog.append(entry.getKey(), entry.getValue(), now);
+            }
+            scanScheduler.onBeaconsRanged(RECORDER_REGION, matched);
+        }
+    };
 	
     // Binder given to clients
     private final IBinder mBinder = new BackgroundBeaconServiceBinder();	
@@ -76,16 +140,14 @@ public class BackgroundBeaconService extends Service implements BootstrapNotifie
 		iBeaconManager = BeaconManager.getInstanceForApplication(this);
 		
 		Context ctx = getApplicationContext();
-		preferences = PreferenceManager.getDefaultSharedPreferences(ctx);
-		if(preferences != null) {
-			debugLog("SharedPreferences were loaded");
-		}
 		
 		iBeaconManager.getBeaconParsers().add(new BeaconParser().setBeaconLayout("m:2-3=0215,i:4-19,i:20-21,i:22-23,p:24-24"));
 		
-		iBeaconManager.setBackgroundBetweenScanPeriod(45000l);
-		iBeaconManager.setBackgroundScanPeriod(8000l);
+		iBeaconManager.setBackgroundScanPeriod(BACKGROUND_SCAN_PERIOD);
+		// the foreground period is set by the plugin from config.xml
+		scanScheduler = new AdaptiveScanScheduler(iBeaconManager, new ScanOptions(ctx), -1, BACKGROUND_BETWEEN_SCAN_PERIOD);
 		setBackgroundMode(true);
+		scanScheduler.start();
 		
 		// Simply constructing this class and holding a reference to it
 		// enables auto battery saving of about 60%
@@ -95,49 +157,66 @@ public class BackgroundBeaconService extends Service implements BootstrapNotifie
 			iBeaconManager.setDebug(true);
 		}
 		
-        wasInRegionSet = preferences.getBoolean("wasInRegion", false);
-		debugLog("wasInRegionSet was set to " + wasInRegionSet);
-
-		// We read the preference, set that back to false now
-		setWasInRegionPreference(false);
-		
 		notificationOptions = new NotificationOptions(ctx);
+
+		recorderOptions = new RecorderOptions(ctx);
+		sightingLog = new SightingLog(new File(getFilesDir(), SIGHTING_LOG_DIRECTORY_NAME),
+				recorderOptions.getMaxFileBytes(), recorderOptions.getMaxFiles());
 		
-		// We should set this dynamically
-		Region region = new Region("backgroundRegion", Identifier.parse("E4007AB3-EFCA-4C89-A106-D4C4EC03DBD2"), null, null);
-		regionBootstrap = new RegionBootstrap(this, region);
-		debugLog("Created RegionBootstrap in BackgroundBeaconService.");
+		synchronized (monitoredRegions) {
+			regionStore = new RegionStore(new File(getFilesDir(), REGION_STORE_FILE_NAME));
+			regionStore.load();
+			for (Region region : regionStore.getRegions()) {
+				monitoredRegions.put(region);
+			}
+			// regions we were inside of before a restart do not notify again when entered
+			regionStates.putAll(regionStore.getStates());
+			debugLog("Restored " + monitoredRegions.size() + " regions, inside of " + countInsideRegions());
+
+			if (monitoredRegions.size() > 0) {
+				regionBootstrap = new RegionBootstrap(this, monitoredRegions.toList());
+				debugLog("Created RegionBootstrap in BackgroundBeaconService for " + monitoredRegions.size() + " regions.");
+			}
+			// not bound yet, the WebView may be gone
+			startRecording();
+		}
 	}
 
 	public void onDestroy(){
 		debugLog("Destroying BackgroundBeaconService");
 		
 		// The service was forcibly killed. We should not store that we were in a region.
-		setWasInRegionPreference(false);
+		synchronized (monitoredRegions) {
+			regionStates.clear();
+			regionStore.clearStates();
+			regionStore.close();
+			stopRecording();
+		}
+		sightingLog.close();
+		scanScheduler.shutdown();
 	}
 
 	@Override
 	public void didEnterRegion(Region region) {
 		debugLog("BackgroundBeaconService.didEnterRegion called!");
 
-		inRegion = true;
+		boolean wasInRegion = setRegionState(region, MonitorNotifier.INSIDE);
+		scanScheduler.onActivity();
 
 		if(monitorNotifier != null) {
 			monitorNotifier.didEnterRegion(region);
 		}
-		else if(!wasInRegionSet){
+		else if(!wasInRegion){
 			showNotification();
 		}
-		
-		// we should check if this is the correct region...
-		wasInRegionSet = false;
 	}
 
 	@Override
 	public void didExitRegion(Region region) {
 		debugLog("BackgroundBeaconService.didExitRegion called!");
 		
-		inRegion = false;
+		setRegionState(region, MonitorNotifier.OUTSIDE);
+		scanScheduler.onActivity();
 		
 		// Cancel the notification once you exit
 		cancelNotification();
@@ -145,14 +224,14 @@ public class BackgroundBeaconService extends Service implements BootstrapNotifie
 		if(monitorNotifier != null) {
 			monitorNotifier.didExitRegion(region);
 		}
-		
-		// we should check if this is the correct region...
-		wasInRegionSet = false; // we reset this so that we can trigger the notification if the user has already left the area
 	}
 
 	@Override
 	public void didDetermineStateForRegion(int state, Region region) {
 		debugLog("BackgroundBeaconService.didDetermineStateForRegion called!");
+
+		// the RegionBootstrap is connected to the beacon service by now
+		retryRecording();
 			
 		if(monitorNotifier != null) {
 			monitorNotifier.didDetermineStateForRegion(state, region);
@@ -161,9 +240,97 @@ public class BackgroundBeaconService extends Service implements BootstrapNotifie
 
 	public void requestStateForRegion(Region region) {
 		debugLog("Region State was requested!");
-			
-		didDetermineStateForRegion(inRegion ? MonitorNotifier.INSIDE : MonitorNotifier.OUTSIDE, region);
+
+		Integer state;
+		synchronized (monitoredRegions) {
+			state = regionStates.get(region.getUniqueId());
+		}
+		didDetermineStateForRegion(state != null ? state : MonitorNotifier.OUTSIDE, region);
 	}
+
+    /**
+     * Starts monitoring the region, also after the app or the device was restarted.
+     * A region with the same identifier is replaced.
+     */
+    public void startMonitoringForRegion(Region region) {
+        synchronized (monitoredRegions) {
+            Region previous = monitoredRegions.put(region);
+            if (previous != null) {
+                regionStates.remove(previous.getUniqueId());
+            }
+            regionStore.putRegion(region);
+            updateMonitoring(previous, region);
+        }
+    }
+
+    /**
+     * Stops monitoring the region with the identifier of the given region.
+     */
+    public void stopMonitoringForRegion(Region region) {
+        synchronized (monitoredRegions) {
+            Region removed = monitoredRegions.remove(region.getUniqueId());
+            if (removed == null) {
+                return;
+            }
+            regionStates.remove(removed.getUniqueId());
+            regionStore.removeRegion(removed.getUniqueId());
+            updateMonitoring(removed, null);
+        }
+    }
+
+    public List<Region> getMonitoredRegions() {
+        synchronized (monitoredRegions) {
+            return monitoredRegions.toList();
+        }
+    }
+
+    // Must be called while holding the monitoredRegions lock.
+    private void updateMonitoring(Region removed, Region added) {
+        if (regionBootstrap == null) {
+            regionBootstrap = new RegionBootstrap(this, monitoredRegions.toList());
+            debugLog("Created RegionBootstrap in BackgroundBeaconService.");
+            return;
+        }
+
+        try {
+            if (removed != null) {
+                iBeaconManager.stopMonitoringBeaconsInRegion(removed);
+            }
+            if (added != null) {
+                iBeaconManager.startMonitoringBeaconsInRegion(added);
+            }
+        } catch (RemoteException e) {
+            // Not bound to the beacon service yet, monitoring starts with the new bootstrap once it is.
+            debugLog("Recreating RegionBootstrap, " + e.getMessage());
+            regionBootstrap.disable();
+            regionBootstrap = new RegionBootstrap(this, monitoredRegions.toList());
+        }
+    }
+
+    /*
+     * Records the new state of the region and returns whether it already had that state.
+     */
+    private boolean setRegionState(Region region, int state) {
+        synchronized (monitoredRegions) {
+            if (monitoredRegions.get(region.getUniqueId()) == null) {
+                return false;
+            }
+            Integer previous = regionStates.put(region.getUniqueId(), state);
+            regionStore.putState(region.getUniqueId(), state);
+            return previous != null && previous == state;
+        }
+    }
+
+    // Must be called while holding the monitoredRegions lock.
+    private int countInsideRegions() {
+        int count = 0;
+        for (Integer state : regionStates.values()) {
+            if (state == MonitorNotifier.INSIDE) {
+                count++;
+            }
+        }
+        return count;
+    }
 	
 	public void setMonitorNotifier(MonitorNotifier monitorNotifier) {
 		this.monitorNotifier = monitorNotifier;
@@ -172,8 +339,93 @@ public class BackgroundBeaconService extends Service implements BootstrapNotifie
 	public void setBackgroundMode(boolean backgroundMode) {
 		debugLog("Setting background mode to: " + backgroundMode);
 		iBeaconManager.setBackgroundMode(backgroundMode);
+		scanScheduler.setBackgroundMode(backgroundMode);
+	}
+
+	AdaptiveScanScheduler getScanScheduler() {
+		return scanScheduler;
+	}
+
+	/**
+	 * Replaces the options of the sighting recorder, recording starts the next time no client is bound.
+	 */
+	public void setRecorderOptions(JSONObject options) {
+		debugLog("Setting recorderOptions to " + options);
+		synchronized (monitoredRegions) {
+			recorderOptions.parseAndSave(options);
+			sightingLog.setLimits(recorderOptions.getMaxFileBytes(), recorderOptions.getMaxFiles());
+			if (recorderOptions.isEnabled()) {
+				startRecording();
+			} else {
+				stopRecording();
+			}
+		}
+	}
+
+	boolean isRecorderEnabled() {
+		return recorderOptions.isEnabled();
+	}
+
+	boolean isRecording() {
+		synchronized (monitoredRegions) {
+			return recording;
+		}
+	}
+
+	SightingLog getSightingLog() {
+		return sightingLog;
 	}
 
+    // Must be called while holding the monitoredRegions lock.
+    private void startRecording() {
+        if (recording || bound || !recorderOptions.isEnabled()) {
+            return;
+        }
+        debugLog("Recording sightings of " + monitoredRegions.size() + " regions");
+        recording = true;
+        iBeaconManager.setRangeNotifier(recorderNotifier);
+        startRecordingRegion();
+    }
+
+    // Must be called while holding the monitoredRegions lock.
+    private void stopRecording() {
+        if (!recording) {
+            return;
+        }
+        debugLog("Stopping to record sightings");
+        recording = false;
+        recordingStartPending = false;
+        try {
+            iBeaconManager.stopRangingBeaconsInRegion(RECORDER_REGION);
+        } catch (RemoteException e) {
+            // not ranging without a connection to the beacon service
+        }
+        scanScheduler.onRangingStopped(RECORDER_REGION);
+        if (iBeaconManager.getRangingNotifier() == recorderNotifier) {
+            iBeaconManager.setRangeNotifier(null);
+        }
+    }
+
+    // Must be called while holding the monitoredRegions lock.
+    private void startRecordingRegion() {
+        try {
+            iBeaconManager.startRangingBeaconsInRegion(RECORDER_REGION);
+        } catch (RemoteException e) {
+            // Not bound to the beacon service yet, retried once the RegionBootstrap reports a state.
+            recordingStartPending = true;
+        }
+    }
+
+    private void retryRecording() {
+        synchronized (monitoredRegions) {
+            if (!recording || !recordingStartPending) {
+                return;
+            }
+            recordingStartPending = false;
+            startRecordingRegion();
+        }
+    }
+
 	public void setNotificationOptions(JSONObject options) {
 		debugLog("Setting notificationOptions to" + options.toString());
 		this.notificationOptions.parseAndSave(options);
@@ -192,29 +444,35 @@ public class BackgroundBeaconService extends Service implements BootstrapNotifie
 	
     @Override
     public IBinder onBind(Intent intent) {
+		onClientBound();
+        return mBinder;
+    }
+
+    @Override
+    public void onRebind(Intent intent) {
+		onClientBound();
+    }
+
+    private void onClientBound() {
+		synchronized (monitoredRegions) {
+			bound = true;
+			stopRecording();
+		}
 		setBackgroundMode(false);
 		cancelNotification();
-		
-        return mBinder;
     }
 	
     @Override
     public boolean onUnbind(Intent intent) {      
 		monitorNotifier = null;
 		setBackgroundMode(true);
-		setWasInRegionPreference(inRegion);
-		
-        return false;
-    }
-
-	private void setWasInRegionPreference(boolean wasInRegion) {
-		// We need an Editor object to make preference changes.
-		// All objects are from android.context.Context
-		SharedPreferences.Editor editor = preferences.edit();
-		editor.putBoolean("wasInRegion", wasInRegion);
-		editor.commit();
+		synchronized (monitoredRegions) {
+			bound = false;
+			startRecording();
+		}
 		
-		debugLog("Setting wasInRegion to: " + wasInRegion);
+        // onRebind() is called when a client binds again, onBind() is not
+        return true;
     }
 
     /**
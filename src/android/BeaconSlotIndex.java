@@ -0,0 +1,220 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Identifier;
+
+import java.util.Arrays;
+
+/*
+ * Assigns a small integer slot to each (uuid, major, minor) combination, so per beacon state
+ * can be kept in plain arrays indexed by slot.
+ *
+ * Looking up a beacon does not allocate: the identifiers are hashed and compared in place
+ * with open addressing. Slots of removed beacons are reused. Not thread safe.
+ */
+final class BeaconSlotIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Identifier[] ids1 = new Identifier[INITIAL_CAPACITY];
+    private Identifier[] ids2 = new Identifier[INITIAL_CAPACITY];
+    private Identifier[] ids3 = new Identifier[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private boolean[] used = new boolean[INITIAL_CAPACITY];
+
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount;
+    private int slotLimit;
+    private int size;
+
+    // open addressing table holding slot + 1, 0 marks an empty bucket
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    int find(Beacon beacon) {
+        return find(beacon.getId1(), beacon.getId2(), beacon.getId3());
+    }
+
+    int find(Identifier id1, Identifier id2, Identifier id3) {
+        int hash = hash(id1, id2, id3);
+        int mask = table.length - 1;
+        for (int i = spread(hash) & mask; table[i] != 0; i = (i + 1) & mask) {
+            int slot = table[i] - 1;
+            if (hashes[slot] == hash && matches(slot, id1, id2, id3)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    int findOrAdd(Beacon beacon) {
+        int slot = find(beacon);
+        return slot != -1 ? slot : add(beacon.getId1(), beacon.getId2(), beacon.getId3());
+    }
+
+    /*
+     * Adds a combination which is known not to be in the index yet and returns its slot.
+     */
+    int add(Identifier id1, Identifier id2, Identifier id3) {
+        if ((size + 1) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotLimit == ids1.length) {
+                growSlots(ids1.length * 2);
+            }
+            slot = slotLimit++;
+        }
+
+        int hash = hash(id1, id2, id3);
+        ids1[slot] = id1;
+        ids2[slot] = id2;
+        ids3[slot] = id3;
+        hashes[slot] = hash;
+        used[slot] = true;
+        insert(slot);
+        size++;
+        return slot;
+    }
+
+    void remove(int slot) {
+        if (!used[slot]) {
+            return;
+        }
+
+        int mask = table.length - 1;
+        int hole = spread(hashes[slot]) & mask;
+        while (table[hole] != slot + 1) {
+            hole = (hole + 1) & mask;
+        }
+
+        // shift the following entries of the probe sequence back, so no tombstones are needed
+        for (int i = (hole + 1) & mask; table[i] != 0; i = (i + 1) & mask) {
+            int home = spread(hashes[table[i] - 1]) & mask;
+            boolean inPlace = hole <= i ? (hole < home && home <= i) : (hole < home || home <= i);
+            if (!inPlace) {
+                table[hole] = table[i];
+                hole = i;
+            }
+        }
+        table[hole] = 0;
+
+        ids1[slot] = null;
+        ids2[slot] = null;
+        ids3[slot] = null;
+        used[slot] = false;
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+
+    void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(ids1, null);
+        Arrays.fill(ids2, null);
+        Arrays.fill(ids3, null);
+        Arrays.fill(used, false);
+        freeCount = 0;
+        slotLimit = 0;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /*
+     * Upper bound (exclusive) of the slots handed out so far, for iterating over all slots.
+     */
+    int slotLimit() {
+        return slotLimit;
+    }
+
+    /*
+     * Current length of the slot arrays, per slot state arrays of the callers should be at least this long.
+     */
+    int capacity() {
+        return ids1.length;
+    }
+
+    boolean isUsed(int slot) {
+        return used[slot];
+    }
+
+    Identifier id1(int slot) {
+        return ids1[slot];
+    }
+
+    Identifier id2(int slot) {
+        return ids2[slot];
+    }
+
+    Identifier id3(int slot) {
+        return ids3[slot];
+    }
+
+    private boolean matches(int slot, Identifier id1, Identifier id2, Identifier id3) {
+        return equal(ids1[slot], id1) && equal(ids2[slot], id2) && equal(ids3[slot], id3);
+    }
+
+    private void insert(int slot) {
+        int mask = table.length - 1;
+        int i = spread(hashes[slot]) & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = slot + 1;
+    }
+
+    private void rehash(int tableLength) {
+        table = new int[tableLength];
+        for (int slot = 0; slot < slotLimit; slot++) {
+            if (used[slot]) {
+                insert(slot);
+            }
+        }
+    }
+
+    private void growSlots(int capacity) {
+        ids1 = Arrays.copyOf(ids1, capacity);
+        ids2 = Arrays.copyOf(ids2, capacity);
+        ids3 = Arrays.copyOf(ids3, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+        used = Arrays.copyOf(used, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+
+    private static int hash(Identifier id1, Identifier id2, Identifier id3) {
+        int hash = id1 != null ? id1.hashCode() : 0;
+        hash = 31 * hash + (id2 != null ? id2.hashCode() : 0);
+        return 31 * hash + (id3 != null ? id3.hashCode() : 0);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equal(Identifier a, Identifier b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,310 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.MonitorNotifier;
+import org.altbeacon.beacon.Region;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ * A recorded or synthetic trace of ranging and monitoring callbacks, replayed by TraceReplayer.
+ *
+ * A trace is UTF-8 text, one record per line, blank lines and lines starting with # are ignored:
+ *
+ *   beaconTrace 1
+ *   region {"typeName":"BeaconRegion","identifier":"lobby","uuid":"2f234454-cf6d-4a0f-adf2-f4911ba9ffa6"}
+ *   0 range 2 lobby
+ *   2f234454-cf6d-4a0f-adf2-f4911ba9ffa6 1 2 -61 -59
+ *   2f234454-cf6d-4a0f-adf2-f4911ba9ffa6 1 3 -75 -59
+ *   1000 enter lobby
+ *   1000 state inside lobby
+ *   9000 exit lobby
+ *
+ * A region is declared once, as the JSON the DOM passes, before the events referring to its
+ * identifier. An event starts with its time in milliseconds from the start of the trace, the
+ * region identifier is the rest of the line. A range event is followed by one line per beacon
+ * holding its three identifiers, - for missing trailing ones, its RSSI and its TX power.
+ */
+class BeaconTrace {
+
+    static final String HEADER = "beaconTrace 1";
+
+    static final int RANGE = 0;
+    static final int ENTER = 1;
+    static final int EXIT = 2;
+    static final int STATE = 3;
+
+    static final class Event {
+        final long timeMs;
+        final int type;
+        final Region region;
+        // the beacons of a range event, empty for the others
+        final List<Beacon> beacons;
+        // the MonitorNotifier state of a state event
+        final int state;
+
+        Event(long timeMs, int type, Region region, List<Beacon> beacons, int state) {
+            this.timeMs = timeMs;
+            this.type = type;
+            this.region = region;
+            this.beacons = beacons;
+            this.state = state;
+        }
+    }
+
+    private BeaconTrace() {
+    }
+
+    static final class TraceReader implements Closeable {
+
+        private final BufferedReader in;
+        private final HashMap<String, Region> regions = new HashMap<String, Region>();
+        private int lineNumber;
+
+        TraceReader(Reader in) throws IOException {
+            this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+            String header = nextLine();
+            if (!HEADER.equals(header)) {
+                throw new IOException("Not a beacon trace, expected '" + HEADER + "' but found '" + header + "'");
+            }
+        }
+
+        /*
+         * The next event of the trace, null at its end.
+         */
+        Event next() throws IOException {
+            String line;
+            while ((line = nextLine()) != null) {
+                if (line.startsWith("region ")) {
+                    declareRegion(line.substring("region ".length()));
+                    continue;
+                }
+
+                String[] fields = line.split(" ", 3);
+                if (fields.length < 3) {
+                    throw malformed("event");
+                }
+                long timeMs = parseLong(fields[0]);
+                String type = fields[1];
+                String rest = fields[2];
+
+                if ("range".equals(type)) {
+                    int space = rest.indexOf(' ');
+                    if (space < 0) {
+                        throw malformed("range event");
+                    }
+                    int count = (int) parseLong(rest.substring(0, space));
+                    Region region = regionOf(rest.substring(space + 1));
+                    return new Event(timeMs, RANGE, region, readBeacons(count), 0);
+                } else if ("enter".equals(type)) {
+                    return new Event(timeMs, ENTER, regionOf(rest), Collections.<Beacon>emptyList(), MonitorNotifier.INSIDE);
+                } else if ("exit".equals(type)) {
+                    return new Event(timeMs, EXIT, regionOf(rest), Collections.<Beacon>emptyList(), MonitorNotifier.OUTSIDE);
+                } else if ("state".equals(type)) {
+                    int space = rest.indexOf(' ');
+                    if (space < 0) {
+                        throw malformed("state event");
+                    }
+                    int state = stateOf(rest.substring(0, space));
+                    return new Event(timeMs, STATE, regionOf(rest.substring(space + 1)), Collections.<Beacon>emptyList(), state);
+                }
+                throw malformed("event type '" + type + "'");
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void declareRegion(String json) throws IOException {
+            try {
+                Region region = RegionJson.parseRegion(new JSONObject(json));
+                regions.put(region.getUniqueId(), region);
+            } catch (Exception e) {
+                throw malformed("region, " + e.getMessage());
+            }
+        }
+
+        private Region regionOf(String identifier) throws IOException {
+            Region region = regions.get(identifier);
+            if (region == null) {
+                throw malformed("event, region '" + identifier + "' is not declared");
+            }
+            return region;
+        }
+
+        private List<Beacon> readBeacons(int count) throws IOException {
+            ArrayList<Beacon> beacons = new ArrayList<Beacon>(count);
+            for (int i = 0; i < count; i++) {
+                String line = nextLine();
+                String[] fields = line != null ? line.split(" ") : null;
+                if (fields == null || fields.length != 5) {
+                    throw malformed("beacon");
+                }
+
+                try {
+                    List<Identifier> identifiers = new ArrayList<Identifier>(3);
+                    for (int j = 0; j < 3 && !"-".equals(fields[j]); j++) {
+                        identifiers.add(IdentifierCache.parse(fields[j]));
+                    }
+                    beacons.add(new Beacon.Builder()
+                            .setIdentifiers(identifiers)
+                            .setRssi((int) parseLong(fields[3]))
+                            .setTxPower((int) parseLong(fields[4]))
+                            .build());
+                } catch (IllegalArgumentException e) {
+                    throw malformed("beacon, " + e.getMessage());
+                }
+            }
+            return beacons;
+        }
+
+        private int stateOf(String name) throws IOException {
+            if ("inside".equals(name)) {
+                return MonitorNotifier.INSIDE;
+            } else if ("outside".equals(name)) {
+                return MonitorNotifier.OUTSIDE;
+            }
+            throw malformed("state '" + name + "'");
+        }
+
+        private long parseLong(String text) throws IOException {
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                throw malformed("number '" + text + "'");
+            }
+        }
+
+        private String nextLine() throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() > 0 && line.charAt(0) != '#') {
+                    return line;
+                }
+            }
+            return null;
+        }
+
+        private IOException malformed(String what) {
+            return new IOException("Malformed " + what + " at line " + lineNumber + " of the beacon trace");
+        }
+    }
+
+    /*
+     * Writes a trace, declaring each region before the first event referring to it.
+     */
+    static final class TraceWriter implements Closeable {
+
+        private final Writer out;
+        private final HashMap<String, Region> regions = new HashMap<String, Region>();
+
+        TraceWriter(Writer out) throws IOException {
+            this.out = out;
+            out.write(HEADER);
+            out.write('\n');
+        }
+
+        TraceWriter ranged(long timeMs, Region region, Collection<Beacon> beacons) throws IOException {
+            declare(region);
+            event(timeMs, "range " + beacons.size(), region);
+            for (Beacon beacon : beacons) {
+                out.write(textOf(beacon.getId1()));
+                out.write(' ');
+                out.write(textOf(beacon.getIdentifiers().size() > 1 ? beacon.getId2() : null));
+                out.write(' ');
+                out.write(textOf(beacon.getIdentifiers().size() > 2 ? beacon.getId3() : null));
+                out.write(' ');
+                out.write(Integer.toString(beacon.getRssi()));
+                out.write(' ');
+                out.write(Integer.toString(beacon.getTxPower()));
+                out.write('\n');
+            }
+            return this;
+        }
+
+        TraceWriter entered(long timeMs, Region region) throws IOException {
+            declare(region);
+            event(timeMs, "enter", region);
+            return this;
+        }
+
+        TraceWriter exited(long timeMs, Region region) throws IOException {
+            declare(region);
+            event(timeMs, "exit", region);
+            return this;
+        }
+
+        TraceWriter determinedState(long timeMs, int state, Region region) throws IOException {
+            declare(region);
+            event(timeMs, state == MonitorNotifier.INSIDE ? "state inside" : "state outside", region);
+            return this;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private void declare(Region region) throws IOException {
+            if (regions.get(region.getUniqueId()) == region) {
+                return;
+            }
+            try {
+                out.write("region ");
+                out.write(RegionJson.mapOfRegion(region).toString());
+                out.write('\n');
+            } catch (JSONException e) {
+                throw new IOException("Region " + region.getUniqueId() + " cannot be written: " + e.getMessage());
+            }
+            regions.put(region.getUniqueId(), region);
+        }
+
+        private void event(long timeMs, String type, Region region) throws IOException {
+            out.write(Long.toString(timeMs));
+            out.write(' ');
+            out.write(type);
+            out.write(' ');
+            out.write(region.getUniqueId());
+            out.write('\n');
+        }
+
+        private static String textOf(Identifier identifier) {
+            return identifier != null ? IdentifierCache.stringOf(identifier) : "-";
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Runs the plugin commands on threads owned by the plugin instead of the application wide
+ * AsyncTask executor, so a slow command does not hold up unrelated work of the app.
+ *
+ * With a single thread the commands run one at a time in the order they were queued. More
+ * threads let commands finish out of order, including ones that depend on each other.
+ *
+ * The queue is bounded, a command which does not fit is rejected with a
+ * RejectedExecutionException. For each command the time spent waiting in the queue and the
+ * time spent running are recorded.
+ */
+class CommandExecutor extends ThreadPoolExecutor {
+
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    /*
+     * Statistics of a single command.
+     */
+    static final class CommandStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram queueWait = new LatencyHistogram();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong rejections = new AtomicLong();
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("count", latency.getCount());
+            json.put("failures", failures.get());
+            json.put("rejections", rejections.get());
+            json.put("latency", latency.toJSON());
+            json.put("queueWait", queueWait.toJSON());
+            return json;
+        }
+    }
+
+    private final int queueCapacity;
+    private final ConcurrentHashMap<String, CommandStats> stats = new ConcurrentHashMap<String, CommandStats>();
+
+    CommandExecutor(int threads, int queueCapacity) {
+        super(Math.max(1, threads), Math.max(1, threads), KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)), new CommandThreadFactory());
+        this.queueCapacity = Math.max(1, queueCapacity);
+        allowCoreThreadTimeOut(true);
+    }
+
+    /*
+     * Queues the task of the given command.
+     *
+     * @throws RejectedExecutionException if the queue is full or the executor is shut down.
+     */
+    void execute(String command, final Runnable task) {
+        final CommandStats commandStats = statsOf(command);
+        final long queuedAt = System.nanoTime();
+        try {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    long startedAt = System.nanoTime();
+                    commandStats.queueWait.record(startedAt - queuedAt);
+                    try {
+                        task.run();
+                    } finally {
+                        commandStats.latency.record(System.nanoTime() - startedAt);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            commandStats.rejections.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /*
+     * Runs the task of the given command on the calling thread.
+     */
+    void executeInline(String command, Runnable task) {
+        CommandStats commandStats = statsOf(command);
+        long startedAt = System.nanoTime();
+        commandStats.queueWait.record(0);
+        try {
+            task.run();
+        } finally {
+            commandStats.latency.record(System.nanoTime() - startedAt);
+        }
+    }
+
+    void recordFailure(String command) {
+        statsOf(command).failures.incrementAndGet();
+    }
+
+    void resetStats() {
+        stats.clear();
+    }
+
+    JSONObject statsToJSON() throws JSONException {
+        JSONObject commands = new JSONObject();
+        for (Map.Entry<String, CommandStats> entry : stats.entrySet()) {
+            commands.put(entry.getKey(), entry.getValue().toJSON());
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("threads", getMaximumPoolSize());
+        json.put("activeThreads", getActiveCount());
+        json.put("queueCapacity", queueCapacity);
+        json.put("queued", getQueue().size());
+        json.put("commands", commands);
+        return json;
+    }
+
+    private CommandStats statsOf(String command) {
+        CommandStats commandStats = stats.get(command);
+        if (commandStats == null) {
+            CommandStats created = new CommandStats();
+            commandStats = stats.putIfAbsent(command, created);
+            if (commandStats == null) {
+                commandStats = created;
+            }
+        }
+        return commandStats;
+    }
+
+    private static final class CommandThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // same priority as the AsyncTask threads the commands used to run on
+                    android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "LocationManager-command-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
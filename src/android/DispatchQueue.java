@@ -0,0 +1,301 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Bounded work queue of the event executor.
+ *
+ * Events are kept in order. Only DroppableTasks (ranging results) count against the capacity
+ * limit in the sense that they are the ones given up when the queue is full: a newer result
+ * replaces a queued one of the same region, otherwise the oldest queued droppable task is
+ * dropped. Region enter/exit/state and all other events are never dropped, they are accepted
+ * even beyond the capacity.
+ */
+class DispatchQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    /*
+     * A task which may be dropped if the queue is full. Tasks with the same non null key
+     * supersede each other.
+     */
+    abstract static class DroppableTask implements Runnable {
+        final String key;
+
+        DroppableTask(String key) {
+            this.key = key;
+        }
+
+        /*
+         * Called instead of run() when the task is dropped, outside of the lock of the queue.
+         */
+        void onDropped() {
+        }
+    }
+
+    private final int capacity;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final AtomicLong droppedCount = new AtomicLong();
+    // guarded by lock
+    private int peakSize;
+
+    DispatchQueue(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+
+        DroppableTask dropped = null;
+        lock.lock();
+        try {
+            if (tasks.size() >= capacity && task instanceof DroppableTask) {
+                dropped = dropFor((DroppableTask) task);
+                if (dropped == null) {
+                    // nothing else may be dropped, so the newest result is given up
+                    dropped = (DroppableTask) task;
+                    return true;
+                }
+            }
+            tasks.offerLast(task);
+            if (tasks.size() > peakSize) {
+                peakSize = tasks.size();
+            }
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+            // the callbacks take locks of their own, producers and workers must not wait for them
+            if (dropped != null) {
+                droppedCount.incrementAndGet();
+                dropped.onDropped();
+            }
+        }
+    }
+
+    // Removes and returns a stale result of the same region or else the oldest droppable task,
+    // null if there is none.
+    private DroppableTask dropFor(DroppableTask task) {
+        Runnable oldest = null;
+        for (Iterator<Runnable> iterator = tasks.iterator(); iterator.hasNext(); ) {
+            Runnable queued = iterator.next();
+            if (!(queued instanceof DroppableTask)) {
+                continue;
+            }
+            if (task.key != null && task.key.equals(((DroppableTask) queued).key)) {
+                iterator.remove();
+                return (DroppableTask) queued;
+            }
+            if (oldest == null) {
+                oldest = queued;
+            }
+        }
+        if (oldest != null) {
+            tasks.removeFirstOccurrence(oldest);
+        }
+        return (DroppableTask) oldest;
+    }
+
+    @Override
+    public void put(Runnable task) {
+        offer(task);
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) {
+        return offer(task);
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (tasks.isEmpty()) {
+                notEmpty.await();
+            }
+            return tasks.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (tasks.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return tasks.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return tasks.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            return tasks.peekFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object task) {
+        lock.lock();
+        try {
+            return tasks.removeFirstOccurrence(task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        // non droppable tasks are always accepted
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> target) {
+        return drainTo(target, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> target, int maxElements) {
+        lock.lock();
+        try {
+            int count = 0;
+            while (count < maxElements && !tasks.isEmpty()) {
+                target.add(tasks.pollFirst());
+                count++;
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Moves all queued tasks to the target and queues the replacement in their place, so tasks
+     * offered meanwhile stay behind them. Returns the number of tasks moved, nothing is queued if
+     * there were none.
+     */
+    int drainInto(Collection<? super Runnable> target, Runnable replacement) {
+        lock.lock();
+        try {
+            int count = tasks.size();
+            if (count == 0) {
+                return 0;
+            }
+            target.addAll(tasks);
+            tasks.clear();
+            tasks.offerFirst(replacement);
+            notEmpty.signal();
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Iterates over a snapshot of the queued tasks.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        lock.lock();
+        try {
+            return new ArrayList<Runnable>(tasks).iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /*
+     * Number of ranging results dropped or superseded because the queue was full.
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /*
+     * Largest number of tasks queued at once since the queue was created or resetPeakSize() was called.
+     */
+    int getPeakSize() {
+        lock.lock();
+        try {
+            return peakSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void resetPeakSize() {
+        lock.lock();
+        try {
+            peakSize = tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
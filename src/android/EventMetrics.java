@@ -0,0 +1,112 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Counts the events on their way from the AltBeacon callbacks to the DOM, per event type.
+ *
+ * Ranging results are counted as didRangeBeaconsInRegion however they are delivered
+ * (full, delta or batched). Per type the following is recorded:
+ *  - received:   callbacks received from AltBeacon or the plugin itself
+ *  - coalesced:  results replaced by a newer result of the same region before being sent
+ *  - dropped:    results given up because the event queue was full
+ *  - suppressed: results which were processed but had nothing to send (an empty delta)
+ *  - sent:       events handed to the WebView, with the latency since they were received
+ */
+class EventMetrics {
+
+    static final class EventCounters {
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong coalesced = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong suppressed = new AtomicLong();
+        final AtomicLong sent = new AtomicLong();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("received", received.get());
+            json.put("coalesced", coalesced.get());
+            json.put("dropped", dropped.get());
+            json.put("suppressed", suppressed.get());
+            json.put("sent", sent.get());
+            json.put("latency", latency.toJSON());
+            return json;
+        }
+    }
+
+    private final ConcurrentHashMap<String, EventCounters> events = new ConcurrentHashMap<String, EventCounters>();
+
+    /*
+     * Records a received event and returns the time stamp to pass to sent().
+     */
+    long received(String eventType) {
+        countersOf(eventType).received.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    void coalesced(String eventType) {
+        countersOf(eventType).coalesced.incrementAndGet();
+    }
+
+    void dropped(String eventType, int count) {
+        countersOf(eventType).dropped.addAndGet(count);
+    }
+
+    void suppressed(String eventType, int count) {
+        countersOf(eventType).suppressed.addAndGet(count);
+    }
+
+    void sent(String eventType, long receivedAt) {
+        EventCounters counters = countersOf(eventType);
+        counters.sent.incrementAndGet();
+        counters.latency.record(System.nanoTime() - receivedAt);
+    }
+
+    void reset() {
+        events.clear();
+    }
+
+    JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, EventCounters> entry : events.entrySet()) {
+            json.put(entry.getKey(), entry.getValue().toJSON());
+        }
+        return json;
+    }
+
+    private EventCounters countersOf(String eventType) {
+        EventCounters counters = events.get(eventType);
+        if (counters == null) {
+            EventCounters created = new EventCounters();
+            counters = events.putIfAbsent(eventType, created);
+            if (counters == null) {
+                counters = created;
+            }
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Identifier;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Interns Identifiers and their string form, shared by the parsing of regions coming from
+ * the DOM and the serialisation of ranging results going to it.
+ *
+ * Identifier.parse() and Identifier.toString() both allocate on every call, while apps keep
+ * passing the same regions and the same beacons are ranged every cycle. Equal identifiers
+ * parsed from different texts (e.g. upper and lower case uuids) share one instance.
+ *
+ * The event lanes look up identifiers concurrently, so the tables are concurrent maps read
+ * without locking. A table that reaches MAX_ENTRIES is cleared and filled up again, like the
+ * identifier cache of RangingBinaryWriter.
+ */
+final class IdentifierCache {
+
+    static final int MAX_ENTRIES = 1024;
+
+    private static final ConcurrentHashMap<Identifier, Identifier> identifiers = new ConcurrentHashMap<Identifier, Identifier>();
+    private static final ConcurrentHashMap<Identifier, String> strings = new ConcurrentHashMap<Identifier, String>();
+    private static final ConcurrentHashMap<String, Identifier> parsed = new ConcurrentHashMap<String, Identifier>();
+
+    private IdentifierCache() {
+    }
+
+    /*
+     * Identifier.parse() of the text, throws the same IllegalArgumentException for invalid ones.
+     */
+    static Identifier parse(String text) {
+        Identifier identifier = parsed.get(text);
+        if (identifier != null) {
+            return identifier;
+        }
+
+        identifier = Identifier.parse(text);
+        if (identifiers.size() >= MAX_ENTRIES) {
+            identifiers.clear();
+        }
+        Identifier interned = identifiers.putIfAbsent(identifier, identifier);
+        if (interned != null) {
+            identifier = interned;
+        }
+        if (parsed.size() >= MAX_ENTRIES) {
+            parsed.clear();
+        }
+        parsed.put(text, identifier);
+        return identifier;
+    }
+
+    /*
+     * Identifier.toString() of the identifier.
+     */
+    static String stringOf(Identifier identifier) {
+        String string = strings.get(identifier);
+        if (string == null) {
+            if (strings.size() >= MAX_ENTRIES) {
+                strings.clear();
+            }
+            // computed twice at worst when two lanes miss at once, both results are equal
+            string = identifier.toString();
+            strings.put(identifier, string);
+        }
+        return string;
+    }
+
+    static void clear() {
+        identifiers.clear();
+        strings.clear();
+        parsed.clear();
+    }
+}
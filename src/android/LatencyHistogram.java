@@ -0,0 +1,128 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Lock free histogram of durations with power of two buckets.
+ *
+ * Bucket 0 counts durations below one microsecond, bucket i (i > 0) the durations from
+ * 2^(i-1) up to 2^i microseconds. The last bucket also takes everything longer than that.
+ * Percentiles are therefore reported as the upper bound of the bucket they fall into.
+ */
+final class LatencyHistogram {
+
+    static final int BUCKET_COUNT = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketOf(nanos / 1000));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /*
+     * The histogram as {count, meanMs, maxMs, p50Ms, p90Ms, p99Ms, buckets}. The values are
+     * read one by one, so a snapshot taken while samples are recorded may be slightly off.
+     */
+    JSONObject toJSON() throws JSONException {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        JSONArray bucketArray = new JSONArray();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketArray.put(counts[i]);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("count", total);
+        json.put("meanMs", total == 0 ? 0 : millis(totalNanos.get() / (double) count.get()));
+        json.put("maxMs", millis(maxNanos.get()));
+        json.put("p50Ms", percentileMs(counts, total, 0.50));
+        json.put("p90Ms", percentileMs(counts, total, 0.90));
+        json.put("p99Ms", percentileMs(counts, total, 0.99));
+        json.put("buckets", bucketArray);
+        return json;
+    }
+
+    private static double percentileMs(long[] counts, long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBoundMicros(i) / 1000.0;
+            }
+        }
+        return upperBoundMicros(BUCKET_COUNT - 1) / 1000.0;
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    private static long upperBoundMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    private static double millis(double nanos) {
+        return Math.round(nanos / 10000.0) / 100.0;
+    }
+}
@@ -32,7 +32,6 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Handler;
 import android.os.RemoteException;
@@ -43,7 +42,6 @@ import org.altbeacon.beacon.BeaconConsumer;
 import org.altbeacon.beacon.BeaconManager;
 import org.altbeacon.beacon.BeaconParser;
 import org.altbeacon.beacon.BleNotAvailableException;
-import org.altbeacon.beacon.Identifier;
 import org.altbeacon.beacon.MonitorNotifier;
 import org.altbeacon.beacon.RangeNotifier;
 import org.altbeacon.beacon.Region;
@@ -73,20 +71,28 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.RemoteException;
 import android.util.Log;
 
+import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.security.InvalidKeyException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
 public class LocationManager extends CordovaPlugin implements BeaconConsumer {
@@ -95,12 +101,32 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
     private static final int PERMISSION_REQUEST_COARSE_LOCATION = 1;
     private static final String FOREGROUND_BETWEEN_SCAN_PERIOD_NAME = "com.unarin.cordova.beacon.android.altbeacon.ForegroundBetweenScanPeriod";
     private static final int DEFAULT_FOREGROUND_BETWEEN_SCAN_PERIOD = 5000;
+    private static final String EVENT_QUEUE_CAPACITY_NAME = "com.unarin.cordova.beacon.android.EventQueueCapacity";
+    private static final int DEFAULT_EVENT_QUEUE_CAPACITY = 256;
+    private static final String EVENT_THREADS_NAME = "com.unarin.cordova.beacon.android.EventThreads";
+    private static final String COMMAND_THREADS_NAME = "com.unarin.cordova.beacon.android.CommandThreads";
+    // one thread keeps the commands in the order they were called, like AsyncTask.execute() did
+    private static final int DEFAULT_COMMAND_THREADS = 1;
+    private static final String COMMAND_QUEUE_CAPACITY_NAME = "com.unarin.cordova.beacon.android.CommandQueueCapacity";
+    private static final int DEFAULT_COMMAND_QUEUE_CAPACITY = 64;
+    private static final String SIGHTING_CAPACITY_NAME = "com.unarin.cordova.beacon.android.SightingCapacity";
+    // no sightings are recorded unless a capacity is set
+    private static final int DEFAULT_SIGHTING_CAPACITY = 0;
+    private static final long DEFAULT_SIGHTING_WINDOW_MS = 10 * 60 * 1000;
+    private static final long DEFAULT_SIGHTING_MAX_GAP_MS = 30 * 1000;
+    private static final String VISIBLE_BEACON_MISSED_CYCLES_NAME = "com.unarin.cordova.beacon.android.VisibleBeaconMissedCycles";
+    private static final int DEFAULT_VISIBLE_BEACON_MISSED_CYCLES = 2;
+    private static final String RESULT_CHUNK_SIZE_NAME = "com.unarin.cordova.beacon.android.ResultChunkSize";
     private static int CDV_LOCATION_MANAGER_DOM_DELEGATE_TIMEOUT = 30;
     private static final int BUILD_VERSION_CODES_M = 23;
+    private static final String METRICS_EVENT_TYPE = "didUpdateMetrics";
 
     private BeaconManager iBeaconManager;
-    private BlockingQueue<Runnable> queue;
-    private PausableThreadPoolExecutor threadPoolExecutor;
+    private int eventQueueCapacity = DEFAULT_EVENT_QUEUE_CAPACITY;
+    private int foregroundBetweenScanPeriod = DEFAULT_FOREGROUND_BETWEEN_SCAN_PERIOD;
+    private int eventThreads = Runtime.getRuntime().availableProcessors();
+    private StripedDispatcher eventDispatcher;
+    private CommandExecutor commandExecutor;
     
     private boolean debugEnabled = false;
     private IBeaconServiceNotifier beaconServiceNotifier; 
@@ -109,9 +135,69 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 	private BroadcastReceiver broadcastReceiver; 
 	private BluetoothAdapter bluetoothAdapter;
 	
-	private BackgroundBeaconService backgroundBeaconService;
+	private volatile BackgroundBeaconService backgroundBeaconService;
+	// Commands needing BackgroundBeaconService issued before it was bound. Guarded by itself.
+	private final List<Runnable> pendingServiceCommands = new ArrayList<Runnable>();
+
+	// set once the delegate is registered
+	private volatile MonitorNotifier monitorNotifier;
+
+    // The ranging and monitoring notifier, sends the events of the regions to the delegate
+    private RegionEventDispatcher regionEventDispatcher;
+    // null unless the SightingCapacity preference is set
+    private SightingStore sightingStore;
+    private VisibleBeaconIndex visibleBeacons;
+    private final RangingSubscriptions rangingSubscriptions = new RangingSubscriptions();
+    // guarded by this
+    private TraceReplayer traceReplayer;
+    // A trace is replayed into the notifiers registered at the time of each event, they are
+    // replaced when the delegate is registered again
+    private final RangeNotifier traceRangeNotifier = new RangeNotifier() {
+        @Override
+        public void didRangeBeaconsInRegion(Collection<Beacon> beacons, Region region) {
+            RangeNotifier rangeNotifier = iBeaconManager.getRangingNotifier();
+            if (rangeNotifier != null) {
+                rangeNotifier.didRangeBeaconsInRegion(beacons, region);
+            }
+        }
+    };
+    private final MonitorNotifier traceMonitorNotifier = new MonitorNotifier() {
+        @Override
+        public void didEnterRegion(Region region) {
+            MonitorNotifier notifier = monitorNotifier;
+            if (notifier != null) {
+                notifier.didEnterRegion(region);
+            }
+        }
+
+        @Override
+        public void didExitRegion(Region region) {
+            MonitorNotifier notifier = monitorNotifier;
+            if (notifier != null) {
+                notifier.didExitRegion(region);
+            }
+        }
 
-	private MonitorNotifier monitorNotifier;
+        @Override
+        public void didDetermineStateForRegion(int state, Region region) {
+            MonitorNotifier notifier = monitorNotifier;
+            if (notifier != null) {
+                notifier.didDetermineStateForRegion(state, region);
+            }
+        }
+    };
+    // Regions ranged only for subscriptions, their results are not sent to the delegate.
+    // Changed while holding rangingSubscriptions.
+    private final Set<String> subscriptionOnlyRegions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // Number of items per chunk of streamed results
+    private int resultChunkSize = ResultStream.DEFAULT_CHUNK_SIZE;
+
+    private final EventMetrics eventMetrics = new EventMetrics();
+    private volatile CallbackContext delegateCallbackContext;
+    private ScheduledExecutorService metricsTimer;
+    private ScheduledFuture<?> metricsFuture;
+    // set while a didUpdateMetrics event waits in the event queue, so a paused queue holds at most one
+    private final AtomicBoolean metricsEventPending = new AtomicBoolean();
 	
     /**
      * Constructor.
@@ -131,7 +217,7 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
         final Activity cordovaActivity = cordova.getActivity();
 
-        final int foregroundBetweenScanPeriod = this.preferences.getInteger(
+        foregroundBetweenScanPeriod = this.preferences.getInteger(
                 FOREGROUND_BETWEEN_SCAN_PERIOD_NAME, DEFAULT_FOREGROUND_BETWEEN_SCAN_PERIOD);
 
         Log.i(TAG, "Determined config value FOREGROUND_BETWEEN_SCAN_PERIOD: " +
@@ -139,9 +225,33 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
         iBeaconManager = BeaconManager.getInstanceForApplication(cordovaActivity);
         iBeaconManager.setForegroundBetweenScanPeriod(foregroundBetweenScanPeriod);
+
+        eventQueueCapacity = this.preferences.getInteger(EVENT_QUEUE_CAPACITY_NAME, DEFAULT_EVENT_QUEUE_CAPACITY);
+        Log.i(TAG, "Determined config value EVENT_QUEUE_CAPACITY: " + String.valueOf(eventQueueCapacity));
+
+        eventThreads = this.preferences.getInteger(EVENT_THREADS_NAME, Runtime.getRuntime().availableProcessors());
+        Log.i(TAG, "Determined config value EVENT_THREADS: " + String.valueOf(eventThreads));
+
+        final int commandThreads = this.preferences.getInteger(COMMAND_THREADS_NAME, DEFAULT_COMMAND_THREADS);
+        final int commandQueueCapacity = this.preferences.getInteger(COMMAND_QUEUE_CAPACITY_NAME, DEFAULT_COMMAND_QUEUE_CAPACITY);
+        Log.i(TAG, "Determined config values COMMAND_THREADS: " + String.valueOf(commandThreads) +
+                ", COMMAND_QUEUE_CAPACITY: " + String.valueOf(commandQueueCapacity));
+        commandExecutor = new CommandExecutor(commandThreads, commandQueueCapacity);
+
+        final int sightingCapacity = this.preferences.getInteger(SIGHTING_CAPACITY_NAME, DEFAULT_SIGHTING_CAPACITY);
+        Log.i(TAG, "Determined config value SIGHTING_CAPACITY: " + String.valueOf(sightingCapacity));
+        sightingStore = sightingCapacity > 0 ? new SightingStore(sightingCapacity) : null;
+
+        final int visibleBeaconMissedCycles = this.preferences.getInteger(VISIBLE_BEACON_MISSED_CYCLES_NAME, DEFAULT_VISIBLE_BEACON_MISSED_CYCLES);
+        Log.i(TAG, "Determined config value VISIBLE_BEACON_MISSED_CYCLES: " + String.valueOf(visibleBeaconMissedCycles));
+        visibleBeacons = new VisibleBeaconIndex(visibleBeaconMissedCycles);
+
+        resultChunkSize = this.preferences.getInteger(RESULT_CHUNK_SIZE_NAME, ResultStream.DEFAULT_CHUNK_SIZE);
+        Log.i(TAG, "Determined config value RESULT_CHUNK_SIZE: " + String.valueOf(resultChunkSize));
 	
         initBluetoothListener();
         initEventQueue();
+        initRegionEventDispatcher();
         pauseEventPropagationToDom(); // Before the DOM is loaded we'll just keep collecting the events and fire them later.
 
         initLocationManager();
@@ -170,6 +280,29 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
     @Override
     public void onDestroy() {
     	iBeaconManager.unbind(this);
+
+        regionEventDispatcher.shutdown();
+
+        commandExecutor.shutdown();
+
+        synchronized (pendingServiceCommands) {
+            pendingServiceCommands.clear();
+        }
+
+        synchronized (this) {
+            if (traceReplayer != null) {
+                traceReplayer.stop();
+                traceReplayer = null;
+            }
+        }
+
+        synchronized (eventMetrics) {
+            if (metricsTimer != null) {
+                metricsTimer.shutdownNow();
+                metricsTimer = null;
+                metricsFuture = null;
+            }
+        }
     	
     	if (broadcastReceiver != null) {
     		cordova.getActivity().unregisterReceiver(broadcastReceiver);
@@ -184,13 +317,28 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
     	
     	super.onDestroy(); 
     }
+
+    /**
+     * The page is reloaded, the callbacks of the subscriptions are gone with it.
+     */
+    @Override
+    public void onReset() {
+        synchronized (rangingSubscriptions) {
+            rangingSubscriptions.removeAll();
+            for (String regionId : subscriptionOnlyRegions) {
+                stopRangingQuietly(regionId);
+            }
+            subscriptionOnlyRegions.clear();
+        }
+        super.onReset();
+    }
 	
     @Override
     public void onPause(boolean multitasking) {
         super.onPause(multitasking);
 		
 		debugLog("Cordova Paused. Enabling BeaconManager BackgroundMode.");
-		iBeaconManager.setBackgroundMode(true);
+		setBackgroundMode(true);
     }
 
     @Override
@@ -198,9 +346,19 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
         super.onResume(multitasking);
 		
 		debugLog("Cordova Resumed. Disabling BeaconManager BackgroundMode.");
-		iBeaconManager.setBackgroundMode(false);
+		setBackgroundMode(false);
     }	
 
+    // Goes through BackgroundBeaconService if bound, so its scan scheduler knows the mode
+    private void setBackgroundMode(boolean backgroundMode) {
+        BackgroundBeaconService service = backgroundBeaconService;
+        if (service != null) {
+            service.setBackgroundMode(backgroundMode);
+        } else {
+            iBeaconManager.setBackgroundMode(backgroundMode);
+        }
+    }
+
     /** Defines callbacks for service binding, passed to bindService() */
     private ServiceConnection backgroundBeaconServiceConnection = new ServiceConnection() {
 
@@ -209,9 +367,10 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 			debugLog("BackgroundBeaconService connected");
             // We've bound to BackgroundBeaconService, cast the IBinder and get BackgroundBeaconService instance
             BackgroundBeaconService.BackgroundBeaconServiceBinder binder = (BackgroundBeaconService.BackgroundBeaconServiceBinder) service;
-            backgroundBeaconService = binder.getService();
+            BackgroundBeaconService boundService = binder.getService();
+            boundService.getScanScheduler().setStaticForegroundBetweenScanPeriod(foregroundBetweenScanPeriod);
 			
-			backgroundBeaconService.setMonitorNotifier(new MonitorNotifier() {
+			boundService.setMonitorNotifier(new MonitorNotifier() {
 				@Override
 				public void didEnterRegion(Region region) {
 					if(monitorNotifier != null) {
@@ -233,6 +392,15 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 					}
 				}
 			});
+
+            // Publish the service and queue the commands issued before it was bound, in their order
+            synchronized (pendingServiceCommands) {
+                backgroundBeaconService = boundService;
+                for (Runnable pending : pendingServiceCommands) {
+                    pending.run();
+                }
+                pendingServiceCommands.clear();
+            }
         }
 
         @Override
@@ -282,9 +450,9 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
         } else if (action.equals("requestAlwaysAuthorization")) {
             requestAlwaysAuthorization(callbackContext);
         } else if (action.equals("getMonitoredRegions")) {
-            getMonitoredRegions(callbackContext);
+            getMonitoredRegions(args.optJSONObject(0), callbackContext);
         } else if (action.equals("getRangedRegions")) {
-            getRangedRegions(callbackContext);
+            getRangedRegions(args.optJSONObject(0), callbackContext);
         } else if (action.equals("requestStateForRegion")) {
             requestStateForRegion(args.optJSONObject(0), callbackContext);
         } else if (action.equals("registerDelegateCallbackId")) {
@@ -293,6 +461,32 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
         	isMonitoringAvailableForClass(args.optJSONObject(0),callbackContext);
         } else if (action.equals("setNotificationOptions")) {
         	setNotificationOptions(args.optJSONObject(0), callbackContext);
+        } else if (action.equals("setRangingOptions")) {
+            setRangingOptions(args.optJSONObject(0), callbackContext);
+        } else if (action.equals("getCommandStats")) {
+            getCommandStats(args.optJSONObject(0), callbackContext);
+        } else if (action.equals("setScanOptions")) {
+            setScanOptions(args.optJSONObject(0), callbackContext);
+        } else if (action.equals("subscribeRanging")) {
+            subscribeRanging(args.optJSONObject(0), args.optJSONObject(1), callbackContext);
+        } else if (action.equals("unsubscribeRanging")) {
+            unsubscribeRanging(args.optJSONObject(0), callbackContext);
+        } else if (action.equals("startTraceReplay")) {
+            startTraceReplay(args.optJSONObject(0), callbackContext);
+        } else if (action.equals("stopTraceReplay")) {
+            stopTraceReplay(callbackContext);
+        } else if (action.equals("getVisibleBeacons")) {
+            getVisibleBeacons(args.optJSONObject(0), callbackContext);
+        } else if (action.equals("getBeaconSightings")) {
+            getBeaconSightings(args.optJSONObject(0), callbackContext);
+        } else if (action.equals("setBackgroundRecorderOptions")) {
+            setBackgroundRecorderOptions(args.optJSONObject(0), callbackContext);
+        } else if (action.equals("drainBackgroundSightings")) {
+            drainBackgroundSightings(args.optJSONObject(0), callbackContext);
+        } else if (action.equals("getMetrics")) {
+            getMetrics(args.optJSONObject(0), callbackContext);
+        } else if (action.equals("setMetricsOptions")) {
+            setMetricsOptions(args.optJSONObject(0), callbackContext);
         } else if (action.equals("isAdvertisingAvailable")) {
             isAdvertisingAvailable(callbackContext);
         } else if (action.equals("isAdvertising")) {
@@ -426,12 +620,12 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
     private void pauseEventPropagationToDom() {
         checkEventQueue();
-        threadPoolExecutor.pause();
+        eventDispatcher.pause();
     }
 
     private void resumeEventPropagationToDom() {
         checkEventQueue();
-        threadPoolExecutor.resume();
+        eventDispatcher.resume();
     }
 	
 	private void initBluetoothListener() {
@@ -513,9 +707,10 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 	}
 	
 	private void initEventQueue() {
-		//queue is limited to one thread at a time
-	    queue = new LinkedBlockingQueue<Runnable>();
-	    threadPoolExecutor = new PausableThreadPoolExecutor(queue);
+		// events of a region stay in order on one lane of the dispatcher
+	    eventDispatcher = new StripedDispatcher(eventThreads, eventQueueCapacity);
+	    // the events held back until the DOM is ready or the app resumes are sent in one go
+	    eventDispatcher.setDrainOnResume(true);
 	    
 	    //Add a timeout check
 	    new Handler().postDelayed(new Runnable() {
@@ -526,17 +721,45 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 	    }, CDV_LOCATION_MANAGER_DOM_DELEGATE_TIMEOUT*1000);	    
 	}
 	
+	private void initRegionEventDispatcher() {
+        regionEventDispatcher = new RegionEventDispatcher(eventDispatcher, eventMetrics, sightingStore, visibleBeacons,
+                rangingSubscriptions, subscriptionOnlyRegions, new RegionEventDispatcher.Host() {
+            @Override
+            public void onBeaconsRanged(Region region, Collection<Beacon> beacons) {
+                BackgroundBeaconService service = backgroundBeaconService;
+                if (service != null) {
+                    service.getScanScheduler().onBeaconsRanged(region, beacons);
+                }
+            }
+
+            @Override
+            public boolean isDebugEnabled() {
+                return debugEnabled;
+            }
+
+            @Override
+            public void debugLog(String message) {
+                LocationManager.this.debugLog(message);
+            }
+
+            @Override
+            public void errorLog(String message) {
+                Log.e(TAG, message);
+            }
+        });
+	}
+
 	private void checkEventQueue() {
-		if (threadPoolExecutor != null && queue != null)
+		if (eventDispatcher != null)
 			return;
 		
 		debugWarn("WARNING event queue should not be null.");
-		queue = new LinkedBlockingQueue<Runnable>();
-	    threadPoolExecutor = new PausableThreadPoolExecutor(queue);
+	    eventDispatcher = new StripedDispatcher(eventThreads, eventQueueCapacity);
+	    eventDispatcher.setDrainOnResume(true);
 	}
 	
     private void checkIfDomSignaldDelegateReady() {
-        if (threadPoolExecutor != null && !threadPoolExecutor.isPaused())
+        if (eventDispatcher != null && !eventDispatcher.isPaused())
             return;
 
         String warning = "WARNING did not receive delegate ready callback from DOM after " + CDV_LOCATION_MANAGER_DOM_DELEGATE_TIMEOUT + " seconds!";
@@ -547,136 +770,45 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 	
 	///////// CALLBACKS ////////////////////////////
 	
-	private void createMonitorCallbacks(final CallbackContext callbackContext) {
-		
-		//Monitor callbacks
-		monitorNotifier = new MonitorNotifier() {
-            @Override
-            public void didEnterRegion(Region region) {
-                debugLog("didEnterRegion INSIDE for " + region.getUniqueId());
-                dispatchMonitorState("didEnterRegion", MonitorNotifier.INSIDE, region, callbackContext);
-            }
-
-            @Override
-            public void didExitRegion(Region region) {
-                debugLog("didExitRegion OUTSIDE for " + region.getUniqueId());
-                dispatchMonitorState("didExitRegion", MonitorNotifier.OUTSIDE, region, callbackContext);
-            }
-
-            @Override
-            public void didDetermineStateForRegion(int state, Region region) {
-                debugLog("didDetermineStateForRegion '" + nameOfRegionState(state) + "' for region: " + region.getUniqueId());
-                dispatchMonitorState("didDetermineStateForRegion", state, region, callbackContext);
-            }
-
-            // Send state to JS callback until told to stop
-            private void dispatchMonitorState(final String eventType, final int state, final Region region, final CallbackContext callbackContext) {
-
-                threadPoolExecutor.execute(new Runnable() {
-                    public void run() {
-                        try {
-                            JSONObject data = new JSONObject();
-                            data.put("eventType", eventType);
-                            data.put("region", mapOfRegion(region));
-
-                            if (eventType.equals("didDetermineStateForRegion")) {
-                                String stateName = nameOfRegionState(state);
-                                data.put("state", stateName);
-                            }
-                            //send and keep reference to callback
-                            PluginResult result = new PluginResult(PluginResult.Status.OK, data);
-                            result.setKeepCallback(true);
-                            callbackContext.sendPluginResult(result);
-
-                        } catch (Exception e) {
-                            Log.e(TAG, "'monitoringDidFailForRegion' exception " + e.getCause());
-                            beaconServiceNotifier.monitoringDidFailForRegion(region, e);
-
-                        }
-                    }
-                });
-            }
-        };
-	
-	}
-
-    private void createRangingCallbacks(final CallbackContext callbackContext) {
-
-        iBeaconManager.setRangeNotifier(new RangeNotifier() {
-            @Override
-            public void didRangeBeaconsInRegion(final Collection<Beacon> iBeacons, final Region region) {
-
-                threadPoolExecutor.execute(new Runnable() {
-                    public void run() {
-
-                        try {
-                            JSONObject data = new JSONObject();
-                            JSONArray beaconData = new JSONArray();
-                            for (Beacon beacon : iBeacons) {
-                                beaconData.put(mapOfBeacon(beacon));
-                            }
-                            data.put("eventType", "didRangeBeaconsInRegion");
-                            data.put("region", mapOfRegion(region));
-                            data.put("beacons", beaconData);
-
-                            debugLog("didRangeBeacons: " + data.toString());
-
-                            //send and keep reference to callback
-                            PluginResult result = new PluginResult(PluginResult.Status.OK, data);
-                            result.setKeepCallback(true);
-                            callbackContext.sendPluginResult(result);
-
-                        } catch (Exception e) {
-                            Log.e(TAG, "'rangingBeaconsDidFailForRegion' exception " + e.getCause());
-                            beaconServiceNotifier.rangingBeaconsDidFailForRegion(region, e);
-                        }
-                    }
-                });
-            }
-
-        });
-
-    }
-
     private void createManagerCallbacks(final CallbackContext callbackContext) {
         beaconServiceNotifier = new IBeaconServiceNotifier() {
 
             @Override
             public void rangingBeaconsDidFailForRegion(final Region region, final Exception exception) {
-                threadPoolExecutor.execute(new Runnable() {
+                final long receivedAt = eventMetrics.received("rangingBeaconsDidFailForRegion");
+                eventDispatcher.execute(region.getUniqueId(), new Runnable() {
                     public void run() {
 
-                        sendFailEvent("rangingBeaconsDidFailForRegion", region, exception, callbackContext);
+                        sendFailEvent("rangingBeaconsDidFailForRegion", receivedAt, region, exception, callbackContext);
                     }
                 });
             }
 
             @Override
             public void monitoringDidFailForRegion(final Region region, final Exception exception) {
-                threadPoolExecutor.execute(new Runnable() {
+                final long receivedAt = eventMetrics.received("monitoringDidFailForRegionWithError");
+                eventDispatcher.execute(region.getUniqueId(), new Runnable() {
                     public void run() {
 
-                        sendFailEvent("monitoringDidFailForRegionWithError", region, exception, callbackContext);
+                        sendFailEvent("monitoringDidFailForRegionWithError", receivedAt, region, exception, callbackContext);
                     }
                 });
             }
 
             @Override
             public void didStartMonitoringForRegion(final Region region) {
-                threadPoolExecutor.execute(new Runnable() {
+                final long receivedAt = eventMetrics.received("didStartMonitoringForRegion");
+                eventDispatcher.execute(region.getUniqueId(), new Runnable() {
                     public void run() {
 
                         try {
                             JSONObject data = new JSONObject();
                             data.put("eventType", "didStartMonitoringForRegion");
-                            data.put("region", mapOfRegion(region));
+                            data.put("region", RegionJson.mapOfRegion(region));
 
                             debugLog("didStartMonitoringForRegion: " + data.toString());
 
-                            //send and keep reference to callback
-                            PluginResult result = new PluginResult(PluginResult.Status.OK, data);
-                            result.setKeepCallback(true);
-                            callbackContext.sendPluginResult(result);
+                            sendEvent("didStartMonitoringForRegion", receivedAt, data, callbackContext);
 
                         } catch (Exception e) {
                             Log.e(TAG, "'startMonitoringForRegion' exception " + e.getCause());
@@ -688,7 +820,8 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
             @Override
             public void didChangeAuthorizationStatus(final String status) {
-                threadPoolExecutor.execute(new Runnable() {
+                final long receivedAt = eventMetrics.received("didChangeAuthorizationStatus");
+                eventDispatcher.execute(new Runnable() {
                     public void run() {
 
                         try {
@@ -697,10 +830,7 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
                             data.put("authorizationStatus", status);
                             debugLog("didChangeAuthorizationStatus: " + data.toString());
 
-                            //send and keep reference to callback
-                            PluginResult result = new PluginResult(PluginResult.Status.OK, data);
-                            result.setKeepCallback(true);
-                            callbackContext.sendPluginResult(result);
+                            sendEvent("didChangeAuthorizationStatus", receivedAt, data, callbackContext);
 
                         } catch (Exception e) {
                             callbackContext.error("didChangeAuthorizationStatus error: " + e.getMessage());
@@ -709,16 +839,14 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
                 });
             }
 
-            private void sendFailEvent(String eventType, Region region, Exception exception, final CallbackContext callbackContext) {
+            private void sendFailEvent(String eventType, long receivedAt, Region region, Exception exception, final CallbackContext callbackContext) {
                 try {
                     JSONObject data = new JSONObject();
                     data.put("eventType", eventType);//not perfect mapping, but it's very unlikely to happen here
-                    data.put("region", mapOfRegion(region));
+                    data.put("region", RegionJson.mapOfRegion(region));
                     data.put("error", exception.getMessage());
 
-                    PluginResult result = new PluginResult(PluginResult.Status.OK, data);
-                    result.setKeepCallback(true);
-                    callbackContext.sendPluginResult(result);
+                    sendEvent(eventType, receivedAt, data, callbackContext);
                 } catch (Exception e) {
                     //still failing, so kill all further event dispatch
                     Log.e(TAG, eventType + " error " + e.getMessage());
@@ -728,6 +856,61 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
         };
     }
 
+    // Sends an event to the delegate and keeps the reference to the callback
+    private void sendEvent(String eventType, long receivedAt, JSONObject data, CallbackContext callbackContext) {
+        sendEvent(eventType, receivedAt, new PluginResult(PluginResult.Status.OK, data), callbackContext);
+    }
+
+    private void sendEvent(String eventType, long receivedAt, PluginResult result, CallbackContext callbackContext) {
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+        eventMetrics.sent(eventType, receivedAt);
+    }
+
+    // Queues a didUpdateMetrics event, unless the previous one has not been sent yet
+    private void dispatchMetrics() {
+        final CallbackContext callbackContext = delegateCallbackContext;
+        if (callbackContext == null || !metricsEventPending.compareAndSet(false, true)) {
+            return;
+        }
+
+        eventDispatcher.execute(new Runnable() {
+            public void run() {
+                metricsEventPending.set(false);
+                try {
+                    JSONObject data = new JSONObject();
+                    data.put("eventType", METRICS_EVENT_TYPE);
+                    data.put("metrics", metricsToJSON());
+
+                    PluginResult result = new PluginResult(PluginResult.Status.OK, data);
+                    result.setKeepCallback(true);
+                    callbackContext.sendPluginResult(result);
+                } catch (Exception e) {
+                    Log.e(TAG, "'" + METRICS_EVENT_TYPE + "' exception " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private JSONObject metricsToJSON() throws JSONException {
+        JSONObject queueMetrics = new JSONObject();
+        queueMetrics.put("depth", eventDispatcher.size());
+        queueMetrics.put("peakDepth", eventDispatcher.getPeakSize());
+        queueMetrics.put("capacity", eventDispatcher.getCapacity());
+        queueMetrics.put("dropped", eventDispatcher.getDroppedCount());
+        queueMetrics.put("paused", eventDispatcher.isPaused());
+        queueMetrics.put("lanes", eventDispatcher.getLaneCount());
+
+        JSONObject metrics = new JSONObject();
+        metrics.put("queue", queueMetrics);
+        metrics.put("events", eventMetrics.toJSON());
+        BackgroundBeaconService service = backgroundBeaconService;
+        if (service != null) {
+            metrics.put("scan", service.getScanScheduler().toJSON());
+        }
+        return metrics;
+    }
+
     //--------------------------------------------------------------------------
     // PLUGIN METHODS
     //--------------------------------------------------------------------------
@@ -746,7 +929,7 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
      */
     private void onDomDelegateReady(CallbackContext callbackContext) {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "onDomDelegateReady", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
@@ -758,7 +941,7 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
     private void isBluetoothEnabled(CallbackContext callbackContext) {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "isBluetoothEnabled", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
@@ -778,7 +961,7 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
     private void enableBluetooth(CallbackContext callbackContext) {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "enableBluetooth", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
@@ -797,7 +980,7 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
     private void disableBluetooth(CallbackContext callbackContext) {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "disableBluetooth", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
@@ -816,7 +999,7 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
     private void disableDebugNotifications(CallbackContext callbackContext) {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "disableDebugNotifications", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
@@ -829,7 +1012,7 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
     }
 
     private void enableDebugNotifications(CallbackContext callbackContext) {
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "enableDebugNotifications", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
@@ -844,7 +1027,7 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
     private void disableDebugLogs(CallbackContext callbackContext) {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "disableDebugLogs", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
@@ -857,7 +1040,7 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
     }
 
     private void enableDebugLogs(CallbackContext callbackContext) {
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "enableDebugLogs", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
@@ -870,7 +1053,7 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
     }
 
     private void appendToDeviceLog(final String message, CallbackContext callbackContext) {
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "appendToDeviceLog", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
@@ -887,16 +1070,16 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
     private void startMonitoringForRegion(final JSONObject arguments, final CallbackContext callbackContext) {
         
-		_handleCallSafely(callbackContext, new ILocationManagerCommand() {
+		_handleServiceCallSafely(callbackContext, "startMonitoringForRegion", new IBackgroundServiceCommand() {
 
 			@Override
-			public PluginResult run() {
+			public PluginResult run(BackgroundBeaconService service) {
 				
 				Region region = null;
 				try {
-					region = parseRegion(arguments);
-					// Replace this with a call into the BackgroundBeaconService
-//					iBeaconManager.startMonitoringBeaconsInRegion(region);
+					region = RegionJson.parseRegion(arguments);
+
+					service.startMonitoringForRegion(region);
 					
 					PluginResult result = new PluginResult(PluginResult.Status.OK);
 					result.setKeepCallback(true);
@@ -916,16 +1099,15 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
    
     private void stopMonitoringForRegion(final JSONObject arguments, final CallbackContext callbackContext) {
     	
-		_handleCallSafely(callbackContext, new ILocationManagerCommand() {
+		_handleServiceCallSafely(callbackContext, "stopMonitoringForRegion", new IBackgroundServiceCommand() {
 
 			@Override
-			public PluginResult run() {
+			public PluginResult run(BackgroundBeaconService service) {
 
 				try {
-					Region region = parseRegion(arguments);
-					
-					// Replace this with a call into the BackgroundBeaconService
-//					iBeaconManager.stopMonitoringBeaconsInRegion(region);
+					Region region = RegionJson.parseRegion(arguments);
+
+					service.stopMonitoringForRegion(region);
 					
 					PluginResult result = new PluginResult(PluginResult.Status.OK);
 					result.setKeepCallback(true);
@@ -943,14 +1125,17 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
     private void startRangingBeaconsInRegion(final JSONObject arguments, final CallbackContext callbackContext) {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "startRangingBeaconsInRegion", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
 
                 try {
-                    Region region = parseRegion(arguments);
-                    iBeaconManager.startRangingBeaconsInRegion(region);
+                    Region region = RegionJson.parseRegion(arguments);
+                    synchronized (rangingSubscriptions) {
+                        iBeaconManager.startRangingBeaconsInRegion(region);
+                        subscriptionOnlyRegions.remove(region.getUniqueId());
+                    }
 
                     PluginResult result = new PluginResult(PluginResult.Status.OK);
                     result.setKeepCallback(true);
@@ -968,14 +1153,22 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
     }
 
     private void stopRangingBeaconsInRegion(final JSONObject arguments, CallbackContext callbackContext) {
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "stopRangingBeaconsInRegion", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
 
                 try {
-                    Region region = parseRegion(arguments);
-                    iBeaconManager.stopRangingBeaconsInRegion(region);
+                    Region region = RegionJson.parseRegion(arguments);
+                    synchronized (rangingSubscriptions) {
+                        if (rangingSubscriptions.isSubscribed(region.getUniqueId())) {
+                            // keeps ranging for the subscriptions of the region
+                            subscriptionOnlyRegions.add(region.getUniqueId());
+                        } else {
+                            stopRanging(region);
+                        }
+                    }
+                    regionEventDispatcher.forget(region);
 
                     PluginResult result = new PluginResult(PluginResult.Status.OK);
                     result.setKeepCallback(true);
@@ -994,8 +1187,116 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
     }
 
 
+    private void stopRanging(Region region) throws RemoteException {
+        iBeaconManager.stopRangingBeaconsInRegion(region);
+        visibleBeacons.forget(region);
+        BackgroundBeaconService service = backgroundBeaconService;
+        if (service != null) {
+            service.getScanScheduler().onRangingStopped(region);
+        }
+    }
+
+    private void stopRangingQuietly(String regionId) {
+        for (Region region : iBeaconManager.getRangedRegions()) {
+            if (region.getUniqueId().equals(regionId)) {
+                try {
+                    stopRanging(region);
+                } catch (RemoteException e) {
+                    Log.e(TAG, "'stopRangingBeaconsInRegion' service error: " + e.getCause());
+                }
+                return;
+            }
+        }
+    }
+
+    /*
+     * Subscribes the callback to the ranging results of a region, ranging it if it is not ranged yet.
+     * The first result holds the id of the subscription, the ranging results follow on the same callback.
+     */
+    private void subscribeRanging(final JSONObject regionArguments, final JSONObject arguments, final CallbackContext callbackContext) {
+        _handleCallSafely(callbackContext, "subscribeRanging", new ILocationManagerCommand() {
+
+            @Override
+            public PluginResult run() {
+                JSONObject options = arguments != null ? arguments : new JSONObject();
+
+                try {
+                    Region region = RegionJson.parseRegion(regionArguments);
+                    double maxRateHz = options.optDouble("maxRateHz", 0);
+                    long minIntervalMs = maxRateHz > 0 ? Math.round(1000 / maxRateHz) : 0;
+                    int fields = RangingSubscriptions.fieldsOf(options.optJSONArray("fields"));
+
+                    RangingSubscriptions.Subscription subscription;
+                    synchronized (rangingSubscriptions) {
+                        if (!iBeaconManager.getRangedRegions().contains(region)) {
+                            iBeaconManager.startRangingBeaconsInRegion(region);
+                            subscriptionOnlyRegions.add(region.getUniqueId());
+                        }
+                        subscription = rangingSubscriptions.add(region, minIntervalMs, fields, callbackContext);
+                    }
+
+                    JSONObject data = new JSONObject();
+                    data.put("subscriptionId", subscription.id);
+                    PluginResult result = new PluginResult(PluginResult.Status.OK, data);
+                    result.setKeepCallback(true);
+                    return result;
+
+                } catch (RemoteException e) {
+                    Log.e(TAG, "'subscribeRanging' service error: " + e.getCause());
+                    return new PluginResult(PluginResult.Status.ERROR, e.getMessage());
+                } catch (Exception e) {
+                    debugWarn("'subscribeRanging' exception " + e.getMessage());
+                    return new PluginResult(PluginResult.Status.ERROR, e.getMessage());
+                }
+            }
+        });
+    }
+
+    /*
+     * Ends a subscription, its callback receives a last result marked as ended. The region stops
+     * being ranged with its last subscription, unless the delegate ranges it too.
+     */
+    private void unsubscribeRanging(final JSONObject arguments, final CallbackContext callbackContext) {
+        _handleCallSafely(callbackContext, "unsubscribeRanging", new ILocationManagerCommand() {
+
+            @Override
+            public PluginResult run() {
+                try {
+                    int subscriptionId = arguments != null ? arguments.optInt("subscriptionId", -1) : -1;
+
+                    RangingSubscriptions.Subscription subscription;
+                    synchronized (rangingSubscriptions) {
+                        subscription = rangingSubscriptions.remove(subscriptionId);
+                        if (subscription == null) {
+                            return new PluginResult(PluginResult.Status.ERROR, "Unknown ranging subscription " + subscriptionId);
+                        }
+
+                        String regionId = subscription.region.getUniqueId();
+                        if (!rangingSubscriptions.isSubscribed(regionId) && subscriptionOnlyRegions.remove(regionId)) {
+                            stopRanging(subscription.region);
+                        }
+                    }
+
+                    JSONObject data = new JSONObject();
+                    data.put("subscriptionId", subscription.id);
+                    data.put("ended", true);
+                    subscription.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, data));
+
+                    return new PluginResult(PluginResult.Status.OK);
+
+                } catch (RemoteException e) {
+                    Log.e(TAG, "'unsubscribeRanging' service error: " + e.getCause());
+                    return new PluginResult(PluginResult.Status.ERROR, e.getMessage());
+                } catch (Exception e) {
+                    debugWarn("'unsubscribeRanging' exception " + e.getMessage());
+                    return new PluginResult(PluginResult.Status.ERROR, e.getMessage());
+                }
+            }
+        });
+    }
+
     private void getAuthorizationStatus(CallbackContext callbackContext) {
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "getAuthorizationStatus", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
@@ -1028,7 +1329,7 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
     }
 
     private void requestWhenInUseAuthorization(CallbackContext callbackContext) {
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "requestWhenInUseAuthorization", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
@@ -1038,7 +1339,7 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
     }
 
     private void requestAlwaysAuthorization(CallbackContext callbackContext) {
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "requestAlwaysAuthorization", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
@@ -1048,20 +1349,20 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
     }
 
 
-    private void getMonitoredRegions(CallbackContext callbackContext) {
+    private void getMonitoredRegions(final JSONObject arguments, final CallbackContext callbackContext) {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleServiceCallSafely(callbackContext, "getMonitoredRegions", new IBackgroundServiceCommand() {
 
             @Override
-            public PluginResult run() {
+            public PluginResult run(BackgroundBeaconService service) {
                 try {
-                    Collection<Region> regions = iBeaconManager.getMonitoredRegions();
-                    JSONArray regionArray = new JSONArray();
+                    Collection<Region> regions = service.getMonitoredRegions();
+                    ResultStream result = ResultStream.of(arguments, callbackContext, resultChunkSize);
                     for (Region region : regions) {
-                        regionArray.put(mapOfRegion(region));
+                        result.put(RegionJson.mapOfRegion(region));
                     }
 
-                    return new PluginResult(PluginResult.Status.OK, regionArray);
+                    return result.end();
                 } catch (JSONException e) {
                     debugWarn("'getMonitoredRegions' exception: " + e.getMessage());
                     return new PluginResult(PluginResult.Status.ERROR, e.getMessage());
@@ -1071,20 +1372,20 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
     }
 
-    private void getRangedRegions(CallbackContext callbackContext) {
+    private void getRangedRegions(final JSONObject arguments, final CallbackContext callbackContext) {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "getRangedRegions", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
                 try {
                     Collection<Region> regions = iBeaconManager.getRangedRegions();
-                    JSONArray regionArray = new JSONArray();
+                    ResultStream result = ResultStream.of(arguments, callbackContext, resultChunkSize);
                     for (Region region : regions) {
-                        regionArray.put(mapOfRegion(region));
+                        result.put(RegionJson.mapOfRegion(region));
                     }
 
-                    return new PluginResult(PluginResult.Status.OK, regionArray);
+                    return result.end();
                 } catch (JSONException e) {
                     debugWarn("'getRangedRegions' exception: " + e.getMessage());
                     return new PluginResult(PluginResult.Status.ERROR, e.getMessage());
@@ -1095,23 +1396,14 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
 	private void requestStateForRegion(final JSONObject arguments, CallbackContext callbackContext) {
     	
-		_handleCallSafely(callbackContext, new ILocationManagerCommand() {
+		_handleServiceCallSafely(callbackContext, "requestStateForRegion", new IBackgroundServiceCommand() {
     		@Override
-			public PluginResult run() {
+			public PluginResult run(BackgroundBeaconService service) {
 				try {
-					Region region = parseRegion(arguments);
-					
-					PluginResult result = null;
-					
-					if (backgroundBeaconService != null) {
-						backgroundBeaconService.requestStateForRegion(region);
-						
-						result = new PluginResult(PluginResult.Status.OK);
-					}		
-					else {
-						result = new PluginResult(PluginResult.Status.ERROR, "Background beacon service is not bound yet Android");
-					}
+					Region region = RegionJson.parseRegion(arguments);
+					service.requestStateForRegion(region);
 
+					PluginResult result = new PluginResult(PluginResult.Status.OK);
 					result.setKeepCallback(true);
 					return result;
 				} catch (JSONException e) {
@@ -1127,7 +1419,7 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
     private void isRangingAvailable(CallbackContext callbackContext) {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "isRangingAvailable", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
@@ -1151,16 +1443,18 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 
     private void registerDelegateCallbackId(JSONObject arguments, final CallbackContext callbackContext) {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "registerDelegateCallbackId", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
                 debugLog("Registering delegate callback ID: " + callbackContext.getCallbackId());
                 //delegateCallbackId = callbackContext.getCallbackId();
+                delegateCallbackContext = callbackContext;
 
-                createMonitorCallbacks(callbackContext);
-                createRangingCallbacks(callbackContext);
                 createManagerCallbacks(callbackContext);
+                regionEventDispatcher.setDelegate(callbackContext, beaconServiceNotifier);
+                monitorNotifier = regionEventDispatcher;
+                iBeaconManager.setRangeNotifier(regionEventDispatcher);
 
                 PluginResult result = new PluginResult(PluginResult.Status.OK);
                 result.setKeepCallback(true);
@@ -1174,14 +1468,14 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
      * Checks if the region is supported, both for type and content
      */
     private void isMonitoringAvailableForClass(final JSONObject arguments, final CallbackContext callbackContext) {
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
+        _handleCallSafely(callbackContext, "isMonitoringAvailableForClass", new ILocationManagerCommand() {
 
             @Override
             public PluginResult run() {
 
                 boolean isValid = true;
                 try {
-                    parseRegion(arguments);
+                    RegionJson.parseRegion(arguments);
                 } catch (Exception e) {
                     //will fail is the region is circular or some expected structure is missing
                     isValid = false;
@@ -1199,21 +1493,14 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
 	 * Sets notification options
 	 */
 	private void setNotificationOptions(final JSONObject arguments, final CallbackContext callbackContext) {
-		_handleCallSafely(callbackContext, new ILocationManagerCommand() {
+		_handleServiceCallSafely(callbackContext, "setNotificationOptions", new IBackgroundServiceCommand() {
 
     		@Override
-			public PluginResult run() {
+			public PluginResult run(BackgroundBeaconService service) {
     			try {
-					PluginResult result = null;
-					
-					if(backgroundBeaconService != null) {
-						backgroundBeaconService.setNotificationOptions(arguments);
-						result = new PluginResult(PluginResult.Status.OK);
-					}
-					else {
-						result = new PluginResult(PluginResult.Status.ERROR, "Background beacon service is not bound yet Android");
-					}
-					
+					service.setNotificationOptions(arguments);
+
+					PluginResult result = new PluginResult(PluginResult.Status.OK);
 					result.setKeepCallback(true);
 					return result;
 			
@@ -1225,235 +1512,382 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
     	});		
 	}
 	
-    private void isAdvertisingAvailable(CallbackContext callbackContext) {
+    /*
+     * Sets the options controlling how ranging results are delivered, like batching
+     */
+    private void setRangingOptions(final JSONObject arguments, final CallbackContext callbackContext) {
+        _handleCallSafely(callbackContext, "setRangingOptions", new ILocationManagerCommand() {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
             @Override
             public PluginResult run() {
+                RangingOptions rangingOptions = new RangingOptions(arguments);
+                debugLog("Setting rangingOptions to " + rangingOptions.toString());
+                regionEventDispatcher.setRangingOptions(rangingOptions);
 
-                //not supported at Android yet (see Android L)
-                PluginResult result = new PluginResult(PluginResult.Status.OK, false);
-                result.setKeepCallback(true);
-                return result;
-
+                return new PluginResult(PluginResult.Status.OK);
             }
         });
-
     }
 
-    private void isAdvertising(CallbackContext callbackContext) {
+    /*
+     * Sets whether and within which limits the time between scans adapts to the activity
+     */
+    private void setScanOptions(final JSONObject arguments, final CallbackContext callbackContext) {
+        _handleServiceCallSafely(callbackContext, "setScanOptions", new IBackgroundServiceCommand() {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
             @Override
-            public PluginResult run() {
-
-                //not supported on Android
-                PluginResult result = new PluginResult(PluginResult.Status.OK, false);
-                result.setKeepCallback(true);
-                return result;
-
+            public PluginResult run(BackgroundBeaconService service) {
+                try {
+                    AdaptiveScanScheduler scanScheduler = service.getScanScheduler();
+                    scanScheduler.setOptions(arguments);
+                    debugLog("Setting scanOptions to " + arguments);
+                    return new PluginResult(PluginResult.Status.OK, scanScheduler.toJSON());
+                } catch (JSONException e) {
+                    debugWarn("'setScanOptions' exception " + e.getMessage());
+                    return new PluginResult(PluginResult.Status.ERROR, e.getMessage());
+                }
             }
         });
-
     }
 
-    private void startAdvertising(JSONObject arguments, CallbackContext callbackContext) {
+    /*
+     * Sets whether the background service records sightings while the app is not running
+     */
+    private void setBackgroundRecorderOptions(final JSONObject arguments, final CallbackContext callbackContext) {
+        _handleServiceCallSafely(callbackContext, "setBackgroundRecorderOptions", new IBackgroundServiceCommand() {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
             @Override
-            public PluginResult run() {
-
-                //not supported on Android
-                PluginResult result = new PluginResult(PluginResult.Status.ERROR, "iBeacon Advertising is not supported on Android");
-                result.setKeepCallback(true);
-                return result;
+            public PluginResult run(BackgroundBeaconService service) {
+                try {
+                    service.setRecorderOptions(arguments != null ? arguments : new JSONObject());
+                    SightingLog sightingLog = service.getSightingLog();
+
+                    JSONObject status = new JSONObject();
+                    status.put("enabled", service.isRecorderEnabled());
+                    status.put("recording", service.isRecording());
+                    status.put("files", sightingLog.getFileCount());
+                    status.put("bytes", sightingLog.getSizeOnDisk());
+                    return new PluginResult(PluginResult.Status.OK, status);
+                } catch (JSONException e) {
+                    debugWarn("'setBackgroundRecorderOptions' exception " + e.getMessage());
+                    return new PluginResult(PluginResult.Status.ERROR, e.getMessage());
+                }
             }
         });
-
     }
 
-    private void stopAdvertising(CallbackContext callbackContext) {
+    /*
+     * Replays a BeaconTrace file into the ranging and monitoring callbacks of the plugin, in place
+     * of the AltBeacon service, to exercise the event pipeline without physical beacons.
+     * A relative path is resolved against the files directory of the app.
+     */
+    private void startTraceReplay(final JSONObject arguments, final CallbackContext callbackContext) {
+        _handleCallSafely(callbackContext, "startTraceReplay", new ILocationManagerCommand() {
 
-        _handleCallSafely(callbackContext, new ILocationManagerCommand() {
             @Override
             public PluginResult run() {
+                JSONObject options = arguments != null ? arguments : new JSONObject();
+                String path = options.optString("path", "");
+                if (path.length() == 0) {
+                    return new PluginResult(PluginResult.Status.ERROR, "The path of the trace is missing");
+                }
 
-                //not supported on Android
-                PluginResult result = new PluginResult(PluginResult.Status.ERROR, "iBeacon Advertising is not supported on Android");
-                result.setKeepCallback(true);
-                return result;
+                File trace = new File(path);
+                if (!trace.isAbsolute()) {
+                    trace = new File(cordova.getActivity().getFilesDir(), path);
+                }
+                if (!trace.isFile()) {
+                    return new PluginResult(PluginResult.Status.ERROR, "Trace " + trace + " not found");
+                }
+
+                synchronized (LocationManager.this) {
+                    if (traceReplayer != null && traceReplayer.isRunning()) {
+                        return new PluginResult(PluginResult.Status.ERROR, "A trace is being replayed already");
+                    }
 
+                    traceReplayer = new TraceReplayer(trace, options.optDouble("speed", 1), options.optBoolean("loop", false),
+                            traceRangeNotifier, traceMonitorNotifier, new TraceReplayer.Listener() {
+                        @Override
+                        public void onReplayEnded(TraceReplayer replayer, Exception error) {
+                            if (error != null) {
+                                Log.e(TAG, "Trace replay failed: " + error.getMessage());
+                            }
+                            debugLog("Trace replay ended after " + replayer.getEventCount() + " events");
+                        }
+                    });
+                    traceReplayer.start();
+                }
+                debugLog("Replaying trace " + trace);
+                return new PluginResult(PluginResult.Status.OK);
             }
         });
     }
 
+    private void stopTraceReplay(final CallbackContext callbackContext) {
+        _handleCallSafely(callbackContext, "stopTraceReplay", new ILocationManagerCommand() {
 
-    /////////// SERIALISATION /////////////////////
-
-    private Region parseRegion(JSONObject json) throws JSONException, InvalidKeyException, UnsupportedOperationException {
-
-        if (!json.has("typeName"))
-            throw new InvalidKeyException("'typeName' is missing, cannot parse Region.");
+            @Override
+            public PluginResult run() {
+                TraceReplayer replayer;
+                synchronized (LocationManager.this) {
+                    replayer = traceReplayer;
+                    traceReplayer = null;
+                }
 
-        if (!json.has("identifier"))
-            throw new InvalidKeyException("'identifier' is missing, cannot parse Region.");
+                try {
+                    JSONObject result = new JSONObject();
+                    if (replayer != null) {
+                        replayer.stop();
+                        replayer.await(1, TimeUnit.SECONDS);
+                        result.put("events", replayer.getEventCount());
+                    } else {
+                        result.put("events", 0);
+                    }
+                    return new PluginResult(PluginResult.Status.OK, result);
+                } catch (Exception e) {
+                    debugWarn("'stopTraceReplay' exception " + e.getMessage());
+                    return new PluginResult(PluginResult.Status.ERROR, e.getMessage());
+                }
+            }
+        });
+    }
 
-        String typeName = json.getString("typeName");
-        if (typeName.equals("BeaconRegion")) {
-            return parseBeaconRegion(json);
-        } else if (typeName.equals("CircularRegion")) {
-            return parseCircularRegion(json);
+    /*
+     * Streams the sightings recorded by the background service to JS and deletes them afterwards
+     */
+    private void drainBackgroundSightings(final JSONObject arguments, final CallbackContext callbackContext) {
+        _handleServiceCallSafely(callbackContext, "drainBackgroundSightings", new IBackgroundServiceCommand() {
 
-        } else {
-            throw new UnsupportedOperationException("Unsupported region type");
-        }
+            @Override
+            public PluginResult run(BackgroundBeaconService service) {
+                int chunkSize = arguments != null ? arguments.optInt("chunkSize", resultChunkSize) : resultChunkSize;
+                ResultStream result = ResultStream.streamed(callbackContext, chunkSize);
 
+                try {
+                    SightingLog sightingLog = service.getSightingLog();
+                    List<File> files = sightingLog.seal();
+                    for (File file : files) {
+                        SightingLog.read(file, result);
+                    }
+                    PluginResult lastChunk = result.end();
+                    sightingLog.delete(files);
+                    return lastChunk;
+                } catch (Exception e) {
+                    debugWarn("'drainBackgroundSightings' exception " + e.getMessage());
+                    return new PluginResult(PluginResult.Status.ERROR, e.getMessage());
+                }
+            }
+        });
     }
 
-    /* NOT SUPPORTED, a possible enhancement later */
-    private Region parseCircularRegion(JSONObject json) throws JSONException, InvalidKeyException, UnsupportedOperationException {
-
-        if (!json.has("latitude"))
-            throw new InvalidKeyException("'latitude' is missing, cannot parse CircularRegion.");
+    /*
+     * Returns per beacon when it was first and last seen, how often, with which mean RSSI and
+     * for how long within the requested time window
+     */
+    private void getBeaconSightings(final JSONObject arguments, final CallbackContext callbackContext) {
+        _handleCallSafely(callbackContext, "getBeaconSightings", new ILocationManagerCommand() {
 
-        if (!json.has("longitude"))
-            throw new InvalidKeyException("'longitude' is missing, cannot parse CircularRegion.");
+            @Override
+            public PluginResult run() {
+                if (sightingStore == null) {
+                    return new PluginResult(PluginResult.Status.ERROR,
+                            "Beacon sightings are not recorded, set the preference " + SIGHTING_CAPACITY_NAME);
+                }
 
-        if (!json.has("radius"))
-            throw new InvalidKeyException("'radius' is missing, cannot parse CircularRegion.");
+                JSONObject options = arguments != null ? arguments : new JSONObject();
+                long windowMs = Math.max(0, options.optLong("windowMs", DEFAULT_SIGHTING_WINDOW_MS));
+                long maxGapMs = Math.max(0, options.optLong("maxGapMs", DEFAULT_SIGHTING_MAX_GAP_MS));
 
-     	/*String identifier = json.getString("identifier");
-         double latitude = json.getDouble("latitude");
-     	double longitude = json.getDouble("longitude");
-     	double radius = json.getDouble("radius");
-    	*/
-        throw new UnsupportedOperationException("Circular regions are not supported at present");
+                try {
+                    JSONObject regionArguments = options.optJSONObject("region");
+                    Region region = regionArguments != null ? RegionJson.parseRegion(regionArguments) : null;
+                    List<JSONObject> sightings = sightingStore.query(System.currentTimeMillis() - windowMs, region, maxGapMs);
+                    // streamed without holding the store, ranging keeps recording meanwhile
+                    ResultStream result = ResultStream.of(options, callbackContext, resultChunkSize);
+                    for (JSONObject sighting : sightings) {
+                        result.put(sighting);
+                    }
+                    return result.end();
+                } catch (Exception e) {
+                    debugWarn("'getBeaconSightings' exception " + e.getMessage());
+                    return new PluginResult(PluginResult.Status.ERROR, e.getMessage());
+                }
+            }
+        });
     }
 
-    private Region parseBeaconRegion(JSONObject json) throws JSONException, UnsupportedOperationException {
-
-        String identifier = json.getString("identifier");
-
-        //For Android, uuid can be null when scanning for all beacons (I think)
-        String uuid = json.has("uuid") && !json.isNull("uuid") ? json.getString("uuid") : null;
-        String major = json.has("major") && !json.isNull("major") ? json.getString("major") : null;
-        String minor = json.has("minor") && !json.isNull("minor") ? json.getString("minor") : null;
+    /*
+     * Returns the beacons currently visible in the ranged regions from the index kept up to date by
+     * the ranging results, without waiting for the next ones.
+     */
+    private void getVisibleBeacons(final JSONObject arguments, final CallbackContext callbackContext) {
+        _handleCallSafely(callbackContext, "getVisibleBeacons", new ILocationManagerCommand() {
 
-        if (major == null && minor != null)
-            throw new UnsupportedOperationException("Unsupported combination of 'major' and 'minor' parameters.");
+            @Override
+            public PluginResult run() {
+                JSONObject options = arguments != null ? arguments : new JSONObject();
 
-        Identifier id1 = uuid != null ? Identifier.parse(uuid) : null;
-        Identifier id2 = major != null ? Identifier.parse(major) : null;
-        Identifier id3 = minor != null ? Identifier.parse(minor) : null;
-        return new Region(identifier, id1, id2, id3);
+                try {
+                    JSONObject regionArguments = options.optJSONObject("region");
+                    Region region = regionArguments != null ? RegionJson.parseRegion(regionArguments) : null;
+                    String sortBy = options.optString("sortBy", VisibleBeaconIndex.SORT_BY_RSSI);
+                    int limit = Math.max(0, options.optInt("limit", 0));
+                    ResultStream result = ResultStream.of(options, callbackContext, resultChunkSize);
+                    visibleBeacons.query(region, sortBy, limit, result);
+                    return result.end();
+                } catch (Exception e) {
+                    debugWarn("'getVisibleBeacons' exception " + e.getMessage());
+                    return new PluginResult(PluginResult.Status.ERROR, e.getMessage());
+                }
+            }
+        });
     }
 
+    private void getCommandStats(final JSONObject arguments, final CallbackContext callbackContext) {
+        // answered right away, so the statistics can also be read while the command threads are busy
+        _handleCallSafely(callbackContext, "getCommandStats", new ILocationManagerCommand() {
 
-    private String nameOfRegionState(int state) {
-        switch (state) {
-            case MonitorNotifier.INSIDE:
-                return "CLRegionStateInside";
-            case MonitorNotifier.OUTSIDE:
-                return "CLRegionStateOutside";
-            /*case MonitorNotifier.UNKNOWN:
-                return "CLRegionStateUnknown";*/
-            default:
-                return "ErrorUnknownCLRegionStateObjectReceived";
-        }
+            @Override
+            public PluginResult run() {
+                try {
+                    JSONObject stats = commandExecutor.statsToJSON();
+                    if (arguments != null && arguments.optBoolean("reset", false)) {
+                        commandExecutor.resetStats();
+                    }
+                    return new PluginResult(PluginResult.Status.OK, stats);
+                } catch (JSONException e) {
+                    debugWarn("'getCommandStats' exception " + e.getMessage());
+                    return new PluginResult(PluginResult.Status.ERROR, e.getMessage());
+                }
+            }
+        }, false);
     }
 
-    private JSONObject mapOfRegion(Region region) throws JSONException {
-
-        //NOTE: NOT SUPPORTING CIRCULAR REGIONS
-        return mapOfBeaconRegion(region);
+    /*
+     * Returns the counters and latencies of the events sent to the DOM and the state of the event queue
+     */
+    private void getMetrics(final JSONObject arguments, final CallbackContext callbackContext) {
+        // answered right away, like getCommandStats
+        _handleCallSafely(callbackContext, "getMetrics", new ILocationManagerCommand() {
 
+            @Override
+            public PluginResult run() {
+                try {
+                    JSONObject metrics = metricsToJSON();
+                    if (arguments != null && arguments.optBoolean("reset", false)) {
+                        eventMetrics.reset();
+                        eventDispatcher.resetPeakSize();
+                    }
+                    return new PluginResult(PluginResult.Status.OK, metrics);
+                } catch (JSONException e) {
+                    debugWarn("'getMetrics' exception " + e.getMessage());
+                    return new PluginResult(PluginResult.Status.ERROR, e.getMessage());
+                }
+            }
+        }, false);
     }
 
-    private JSONObject mapOfBeaconRegion(Region region) throws JSONException {
-        JSONObject dict = new JSONObject();
+    /*
+     * Starts or stops pushing the metrics to the delegate as didUpdateMetrics events
+     */
+    private void setMetricsOptions(final JSONObject arguments, final CallbackContext callbackContext) {
+        _handleCallSafely(callbackContext, "setMetricsOptions", new ILocationManagerCommand() {
 
-        // identifier
-        if (region.getUniqueId() != null) {
-            dict.put("identifier", region.getUniqueId());
-        }
+            @Override
+            public PluginResult run() {
+                long intervalMs = arguments != null ? arguments.optLong("intervalMs", 0) : 0;
+                if (arguments != null && arguments.optBoolean("reset", false)) {
+                    eventMetrics.reset();
+                    eventDispatcher.resetPeakSize();
+                }
 
-        dict.put("uuid", region.getId1());
+                synchronized (eventMetrics) {
+                    if (metricsFuture != null) {
+                        metricsFuture.cancel(false);
+                        metricsFuture = null;
+                    }
+                    if (intervalMs > 0) {
+                        if (metricsTimer == null) {
+                            metricsTimer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("LocationManager-metrics"));
+                        }
+                        metricsFuture = metricsTimer.scheduleAtFixedRate(new Runnable() {
+                            @Override
+                            public void run() {
+                                dispatchMetrics();
+                            }
+                        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+                    }
+                }
 
-        if (region.getId2() != null) {
-            dict.put("major", region.getId2());
-        }
+                debugLog("Metrics push interval set to " + intervalMs + " ms");
+                return new PluginResult(PluginResult.Status.OK);
+            }
+        });
+    }
 
-        if (region.getId3() != null) {
-            dict.put("minor", region.getId3());
-        }
+    private void isAdvertisingAvailable(CallbackContext callbackContext) {
+
+        _handleCallSafely(callbackContext, "isAdvertisingAvailable", new ILocationManagerCommand() {
+            @Override
+            public PluginResult run() {
 
-        dict.put("typeName", "BeaconRegion");
+                //not supported at Android yet (see Android L)
+                PluginResult result = new PluginResult(PluginResult.Status.OK, false);
+                result.setKeepCallback(true);
+                return result;
 
-        return dict;
+            }
+        });
 
     }
 
-    /* NOT SUPPORTED */
-    /*private JSONObject mapOfCircularRegion(Region region) throws JSONException {
-        JSONObject dict = new JSONObject();
+    private void isAdvertising(CallbackContext callbackContext) {
 
-        // identifier
-        if (region.getUniqueId() != null) {
-       	 dict.put("identifier", region.getUniqueId());
-       }
+        _handleCallSafely(callbackContext, "isAdvertising", new ILocationManagerCommand() {
+            @Override
+            public PluginResult run() {
 
-       //NOT SUPPORTING CIRCULAR REGIONS
-       //dict.put("radius", region.getRadius());
-       //JSONObject coordinates = new JSONObject();
-       //coordinates.put("latitude", 0.0d);
-       //coordinates.put("longitude", 0.0d);
-       //dict.put("center", coordinates);
-       //dict.put("typeName", "CircularRegion");
+                //not supported on Android
+                PluginResult result = new PluginResult(PluginResult.Status.OK, false);
+                result.setKeepCallback(true);
+                return result;
 
-       return dict;
+            }
+        });
 
-    }*/
+    }
 
-    private JSONObject mapOfBeacon(Beacon region) throws JSONException {
-        JSONObject dict = new JSONObject();
+    private void startAdvertising(JSONObject arguments, CallbackContext callbackContext) {
 
-        //beacon id
-        dict.put("uuid", region.getId1());
-        dict.put("major", region.getId2());
-        dict.put("minor", region.getId3());
+        _handleCallSafely(callbackContext, "startAdvertising", new ILocationManagerCommand() {
+            @Override
+            public PluginResult run() {
 
-        // proximity
-        dict.put("proximity", nameOfProximity(region.getDistance()));
+                //not supported on Android
+                PluginResult result = new PluginResult(PluginResult.Status.ERROR, "iBeacon Advertising is not supported on Android");
+                result.setKeepCallback(true);
+                return result;
+            }
+        });
 
-        // signal strength and transmission power
-        dict.put("rssi", region.getRssi());
-        dict.put("tx", region.getTxPower());
+    }
 
-        // accuracy = rough distance estimate limited to two decimal places (in metres)
-        // NO NOT ASSUME THIS IS ACCURATE - it is effected by radio interference and obstacles
-        dict.put("accuracy", Math.round(region.getDistance() * 100.0) / 100.0);
+    private void stopAdvertising(CallbackContext callbackContext) {
 
-        return dict;
-    }
+        _handleCallSafely(callbackContext, "stopAdvertising", new ILocationManagerCommand() {
+            @Override
+            public PluginResult run() {
 
-    private String nameOfProximity(double accuracy) {
+                //not supported on Android
+                PluginResult result = new PluginResult(PluginResult.Status.ERROR, "iBeacon Advertising is not supported on Android");
+                result.setKeepCallback(true);
+                return result;
 
-        if (accuracy < 0) {
-            return "ProximityUnknown";
-            // is this correct?  does proximity only show unknown when accuracy is negative?  I have seen cases where it returns unknown when
-            // accuracy is -1;
-        }
-        if (accuracy < 0.5) {
-            return "ProximityImmediate";
-        }
-        // forums say 3.0 is the near/far threshold, but it looks to be based on experience that this is 4.0
-        if (accuracy <= 4.0) {
-            return "ProximityNear";
-        }
-        // if it is > 4.0 meters, call it far
-        return "ProximityFar";
+            }
+        });
     }
 
+
     private boolean hasBlueToothPermission() {
         Context context = cordova.getActivity();
         int access = context.checkCallingOrSelfPermission(Manifest.permission.BLUETOOTH);
@@ -1462,34 +1896,74 @@ public class LocationManager extends CordovaPlugin implements BeaconConsumer {
         return (access == PackageManager.PERMISSION_GRANTED) && (adminAccess == PackageManager.PERMISSION_GRANTED);
     }
 
-    //////// Async Task Handling ////////////////////////////////
+    /*
+     * Runs a command which needs BackgroundBeaconService. The service is bound asynchronously
+     * after initialize(), a command issued before is kept and queued once the service is connected,
+     * in the order the commands were issued, instead of holding up the command thread meanwhile.
+     */
+    private void _handleServiceCallSafely(final CallbackContext callbackContext, final String command,
+                                          final IBackgroundServiceCommand task) {
+        final ILocationManagerCommand serviceTask = new ILocationManagerCommand() {
+            @Override
+            public PluginResult run() {
+                BackgroundBeaconService service = backgroundBeaconService;
+                if (service == null) {
+                    // disconnected since the command was queued
+                    return new PluginResult(PluginResult.Status.ERROR, "Background beacon service is not bound");
+                }
+                return task.run(service);
+            }
+        };
 
-    private void _handleCallSafely(CallbackContext callbackContext, final ILocationManagerCommand task) {
-        _handleCallSafely(callbackContext, task, true);
+        synchronized (pendingServiceCommands) {
+            if (backgroundBeaconService == null) {
+                debugLog("Deferring '" + command + "' until BackgroundBeaconService is bound");
+                pendingServiceCommands.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        _handleCallSafely(callbackContext, command, serviceTask);
+                    }
+                });
+                return;
+            }
+        }
+        _handleCallSafely(callbackContext, command, serviceTask);
     }
 
-    private void _handleCallSafely(final CallbackContext callbackContext, final ILocationManagerCommand task, boolean runInBackground) {
-        if (runInBackground) {
-            new AsyncTask<Void, Void, Void>() {
+    //////// Async Task Handling ////////////////////////////////
 
-                @Override
-                protected Void doInBackground(final Void... params) {
+    private void _handleCallSafely(CallbackContext callbackContext, String command, final ILocationManagerCommand task) {
+        _handleCallSafely(callbackContext, command, task, true);
+    }
 
-                    try {
-                        _sendResultOfCommand(callbackContext, task.run());
-                    } catch (Exception ex) {
-                        _handleExceptionOfCommand(callbackContext, ex);
+    private void _handleCallSafely(final CallbackContext callbackContext, final String command, final ILocationManagerCommand task, boolean runInBackground) {
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    PluginResult pluginResult = task.run();
+                    if (pluginResult.getStatus() != PluginResult.Status.OK.ordinal()) {
+                        commandExecutor.recordFailure(command);
                     }
-                    return null;
+                    _sendResultOfCommand(callbackContext, pluginResult);
+                } catch (Exception ex) {
+                    commandExecutor.recordFailure(command);
+                    _handleExceptionOfCommand(callbackContext, ex);
                 }
+            }
+        };
 
-            }.execute();
-        } else {
+        if (runInBackground) {
             try {
-                _sendResultOfCommand(callbackContext, task.run());
-            } catch (Exception ex) {
-                _handleExceptionOfCommand(callbackContext, ex);
+                commandExecutor.execute(command, runnable);
+            } catch (RejectedExecutionException ex) {
+                Log.e(TAG, "Command '" + command + "' rejected, too many commands pending");
+                if (callbackContext != null) {
+                    callbackContext.error("Command '" + command + "' rejected, too many commands pending");
+                }
             }
+        } else {
+            commandExecutor.executeInline(command, runnable);
         }
     }
 
@@ -0,0 +1,147 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Follows the nearest beacon of each ranged region, the one with the strongest RSSI.
+ *
+ * Another beacon only takes over once it is stronger than the current nearest one by the RSSI
+ * margin and has stayed so for the debounce window, so two beacons at about the same distance
+ * do not flip back and forth. The region has no nearest beacon after it saw none for the
+ * debounce window. Smoothed readings, if given, are compared instead of the raw ones.
+ * Each region must only be updated from one thread at a time.
+ */
+class NearestBeaconTracker {
+
+    static final String EVENT_TYPE = "didChangeNearestBeacon";
+
+    /*
+     * A change of the nearest beacon of a region, either of them null for none.
+     */
+    static final class Change {
+        final Beacon nearest;
+        final Beacon previous;
+
+        Change(Beacon nearest, Beacon previous) {
+            this.nearest = nearest;
+            this.previous = previous;
+        }
+    }
+
+    private static final class RegionState {
+        Beacon nearest;
+        // the beacon about to take over, null for none, valid while pending
+        Beacon candidate;
+        boolean pending;
+        long candidateSinceMs;
+    }
+
+    private final ConcurrentHashMap<String, RegionState> regions = new ConcurrentHashMap<String, RegionState>();
+
+    /*
+     * Feeds a ranging result of the region, returns the change of its nearest beacon or null if
+     * it stays the same.
+     */
+    Change update(Region region, Collection<Beacon> beacons, RssiFilterBank.Readings readings,
+                  long nowMs, long debounceMs, double rssiMargin) {
+        RegionState state = regions.get(region.getUniqueId());
+        if (state == null) {
+            state = new RegionState();
+            regions.put(region.getUniqueId(), state);
+        }
+
+        Beacon strongest = null;
+        double strongestRssi = Double.NEGATIVE_INFINITY;
+        double nearestRssi = Double.NaN;
+        for (Beacon beacon : beacons) {
+            double rssi = rssiOf(beacon, readings);
+            if (beacon.equals(state.nearest)) {
+                nearestRssi = rssi;
+            }
+            if (strongest == null || rssi > strongestRssi) {
+                strongest = beacon;
+                strongestRssi = rssi;
+            }
+        }
+
+        Beacon contender = strongest;
+        if (strongest != null && !Double.isNaN(nearestRssi) && strongestRssi < nearestRssi + rssiMargin) {
+            // still in sight and not beaten by the margin
+            contender = state.nearest;
+        }
+
+        if (same(contender, state.nearest)) {
+            state.pending = false;
+            state.candidate = null;
+            return null;
+        }
+        if (!state.pending || !same(contender, state.candidate)) {
+            state.pending = true;
+            state.candidate = contender;
+            state.candidateSinceMs = nowMs;
+        }
+        if (nowMs - state.candidateSinceMs < debounceMs) {
+            return null;
+        }
+
+        Change change = new Change(contender, state.nearest);
+        state.nearest = contender;
+        state.pending = false;
+        state.candidate = null;
+        return change;
+    }
+
+    void forget(Region region) {
+        regions.remove(region.getUniqueId());
+    }
+
+    void clear() {
+        regions.clear();
+    }
+
+    /*
+     * The didChangeNearestBeacon event of a change, with the readings of the update that
+     * returned it. The previous beacon is only identified.
+     */
+    static JSONObject eventOf(Region region, Change change, RssiFilterBank.Readings readings) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("eventType", EVENT_TYPE);
+        json.put("region", RegionJson.mapOfRegion(region));
+        json.put("beacon", change.nearest != null ? RegionJson.mapOfBeacon(change.nearest, readings) : JSONObject.NULL);
+        json.put("previous", change.previous != null ? RegionJson.mapOfBeaconIdentifiers(change.previous) : JSONObject.NULL);
+        return json;
+    }
+
+    private static double rssiOf(Beacon beacon, RssiFilterBank.Readings readings) {
+        int slot = readings != null ? readings.slotOf(beacon) : -1;
+        return slot != -1 ? readings.rssi(slot) : beacon.getRssi();
+    }
+
+    private static boolean same(Beacon a, Beacon b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -18,33 +18,53 @@
 */
 package com.unarin.cordova.beacon;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
-
+import java.util.concurrent.locks.LockSupport;
 
+/*
+ * A single thread runs the tasks, in the order of the queue. StripedDispatcher runs several
+ * of these for parallelism.
+ *
+ * While running, a task only reads the volatile paused flag before it starts. The thread parks
+ * only once paused, and resume() unparks it. With drain on resume, the tasks queued meanwhile are
+ * handed to the thread as a single batch, in their order, taking the place of the queued tasks.
+ */
 class PausableThreadPoolExecutor extends ThreadPoolExecutor {
 
-    private static int NUMBER_OF_CORES = 1; //Runtime.getRuntime().availableProcessors();
+    private static int NUMBER_OF_CORES = 1;
     private static int KEEP_ALIVE_SECONDS = 30;
-    private boolean paused;
-    private ReentrantLock pauseLock = new ReentrantLock();
-    private Condition unpaused = pauseLock.newCondition();
+    private volatile boolean paused;
+    private volatile boolean drainOnResume;
+    private final ConcurrentLinkedQueue<Thread> parkedThreads = new ConcurrentLinkedQueue<Thread>();
+
     public PausableThreadPoolExecutor(BlockingQueue<Runnable> workQueue) {
         super(NUMBER_OF_CORES, NUMBER_OF_CORES, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, workQueue);
     }
 
     protected void beforeExecute(Thread t, Runnable r) {
         super.beforeExecute(t, r);
-        pauseLock.lock();
+        awaitResumed(t);
+    }
+
+    // Parks the thread while paused, returns early if it is interrupted
+    private void awaitResumed(Thread t) {
+        if (!paused) {
+            return;
+        }
+
+        parkedThreads.add(t);
         try {
-            while (paused) unpaused.await();
-        } catch (InterruptedException ie) {
-            t.interrupt();
+            // paused is read again after adding the thread, so a resume() in between is not missed
+            while (paused && !t.isInterrupted()) {
+                LockSupport.park(this);
+            }
         } finally {
-            pauseLock.unlock();
+            parkedThreads.remove(t);
         }
     }
 
@@ -53,21 +73,50 @@ class PausableThreadPoolExecutor extends ThreadPoolExecutor {
     }
 
     public void pause() {
-        pauseLock.lock();
-        try {
-            paused = true;
-        } finally {
-            pauseLock.unlock();
-        }
+        paused = true;
     }
 
     public void resume() {
-        pauseLock.lock();
-        try {
-            paused = false;
-            unpaused.signalAll();
-        } finally {
-            pauseLock.unlock();
+        if (drainOnResume && paused && getQueue() instanceof DispatchQueue) {
+            Batch batch = new Batch();
+            ((DispatchQueue) getQueue()).drainInto(batch.tasks, batch);
+        }
+
+        paused = false;
+        for (Thread thread : parkedThreads) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /*
+     * Whether resume() hands the queued tasks over as one batch. Queued in a batch, the tasks no
+     * longer count as queued and are not dropped when the queue is full.
+     */
+    public void setDrainOnResume(boolean drainOnResume) {
+        this.drainOnResume = drainOnResume;
+    }
+
+    // Tasks run in order by one worker, pausing in between like separate tasks
+    private final class Batch implements Runnable {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void run() {
+            RuntimeException failure = null;
+            Thread thread = Thread.currentThread();
+            for (Runnable task : tasks) {
+                awaitResumed(thread);
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
         }
     }
-}
\ No newline at end of file
+}
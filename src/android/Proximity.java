@@ -0,0 +1,70 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+/*
+ * Maps distance estimates to the CLProximity names used by the DOM.
+ */
+final class Proximity {
+
+    static final String UNKNOWN = "ProximityUnknown";
+    static final String IMMEDIATE = "ProximityImmediate";
+    static final String NEAR = "ProximityNear";
+    static final String FAR = "ProximityFar";
+
+    // Codes of the names in binary ranging events
+    static final int UNKNOWN_CODE = 0;
+    static final int IMMEDIATE_CODE = 1;
+    static final int NEAR_CODE = 2;
+    static final int FAR_CODE = 3;
+
+    private Proximity() {
+    }
+
+    static int codeOf(String name) {
+        if (IMMEDIATE.equals(name)) {
+            return IMMEDIATE_CODE;
+        }
+        if (NEAR.equals(name)) {
+            return NEAR_CODE;
+        }
+        if (FAR.equals(name)) {
+            return FAR_CODE;
+        }
+        return UNKNOWN_CODE;
+    }
+
+    static String nameOf(double accuracy) {
+
+        if (accuracy < 0) {
+            return UNKNOWN;
+            // is this correct?  does proximity only show unknown when accuracy is negative?  I have seen cases where it returns unknown when
+            // accuracy is -1;
+        }
+        if (accuracy < 0.5) {
+            return IMMEDIATE;
+        }
+        // forums say 3.0 is the near/far threshold, but it looks to be based on experience that this is 4.0
+        if (accuracy <= 4.0) {
+            return NEAR;
+        }
+        // if it is > 4.0 meters, call it far
+        return FAR;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import java.util.Arrays;
+
+/*
+ * Assigns the proximity of beacons from their distance, with hysteresis.
+ *
+ * The hysteresis is a fraction of the thresholds: with 0.2 a beacon only moves to a farther
+ * bucket once its distance exceeds the threshold by 20%, and to a closer one once it is 20%
+ * below the threshold. Distance estimates scale with the distance, so do the bands. A new
+ * bucket is reported once the beacon stayed in it for minDwellMs, so a beacon hovering
+ * around a threshold keeps its proximity.
+ *
+ * The state is kept per slot of a BeaconSlotIndex owned by the caller. Not thread safe.
+ */
+final class ProximityClassifier {
+
+    static final double DEFAULT_IMMEDIATE_THRESHOLD = 0.5;
+    static final double DEFAULT_NEAR_THRESHOLD = 4.0;
+
+    private static final int UNKNOWN = 0;
+    private static final int IMMEDIATE = 1;
+    private static final int NEAR = 2;
+    private static final int FAR = 3;
+    private static final String[] NAMES = {Proximity.UNKNOWN, Proximity.IMMEDIATE, Proximity.NEAR, Proximity.FAR};
+
+    private final double immediateThreshold;
+    private final double nearThreshold;
+    private final double hysteresis;
+    private final long minDwellMs;
+
+    private boolean[] known = new boolean[0];
+    private int[] buckets = new int[0];
+    private int[] candidates = new int[0];
+    private long[] candidatesSince = new long[0];
+
+    ProximityClassifier(double immediateThreshold, double nearThreshold, double hysteresis, long minDwellMs) {
+        this.immediateThreshold = immediateThreshold;
+        this.nearThreshold = nearThreshold;
+        this.hysteresis = hysteresis;
+        this.minDwellMs = minDwellMs;
+    }
+
+    boolean hasSameSettings(double immediateThreshold, double nearThreshold, double hysteresis, long minDwellMs) {
+        return this.immediateThreshold == immediateThreshold && this.nearThreshold == nearThreshold
+                && this.hysteresis == hysteresis && this.minDwellMs == minDwellMs;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (buckets.length < capacity) {
+            known = Arrays.copyOf(known, capacity);
+            buckets = Arrays.copyOf(buckets, capacity);
+            candidates = Arrays.copyOf(candidates, capacity);
+            candidatesSince = Arrays.copyOf(candidatesSince, capacity);
+        }
+    }
+
+    /*
+     * Classifies the distance of the beacon in the slot and returns the proximity to report.
+     * The first distance of a beacon is taken as is.
+     */
+    String classify(int slot, double distance, long nowMs) {
+        if (!known[slot]) {
+            int bucket = bucketOf(distance, 1);
+            known[slot] = true;
+            buckets[slot] = bucket;
+            candidates[slot] = bucket;
+            return NAMES[bucket];
+        }
+
+        int current = buckets[slot];
+        int target;
+        if (distance < 0 || current == UNKNOWN) {
+            target = bucketOf(distance, 1);
+        } else {
+            target = bucketOf(distance, 1 + hysteresis);
+            if (target < current) {
+                // only accept a closer bucket once the distance is below the threshold by the hysteresis
+                target = Math.max(target, bucketOf(distance, 1 - hysteresis));
+                if (target > current) {
+                    target = current;
+                }
+            }
+        }
+
+        if (target == current) {
+            candidates[slot] = current;
+        } else if (candidates[slot] != target) {
+            candidates[slot] = target;
+            candidatesSince[slot] = nowMs;
+            if (minDwellMs == 0) {
+                buckets[slot] = target;
+            }
+        } else if (nowMs - candidatesSince[slot] >= minDwellMs) {
+            buckets[slot] = target;
+        }
+        return NAMES[buckets[slot]];
+    }
+
+    /*
+     * Forgets the beacon in the slot, called before the slot is reused.
+     */
+    void forget(int slot) {
+        known[slot] = false;
+    }
+
+    // Bucket of the distance with the thresholds scaled by scale
+    private int bucketOf(double distance, double scale) {
+        if (distance < 0) {
+            return UNKNOWN;
+        }
+        if (distance < immediateThreshold * scale) {
+            return IMMEDIATE;
+        }
+        if (distance <= nearThreshold * scale) {
+            return NEAR;
+        }
+        return FAR;
+    }
+}
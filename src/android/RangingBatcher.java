@@ -0,0 +1,129 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Collects the ranging results of all regions and hands them over in batches.
+ *
+ * A batch is flushed as soon as it holds results for maxBatchSize regions or the oldest
+ * result in it has waited maxLingerMs. If a region is ranged again before the batch is
+ * flushed, its previous result is replaced by the newer one.
+ *
+ * Flushing only tells the listener that a batch is ready, the batch itself is taken with
+ * drain() once it is actually dispatched. Until then results keep being collected, so a
+ * paused dispatcher receives a single batch with the latest result of each region.
+ */
+class RangingBatcher {
+
+    interface BatchListener {
+        void onBatchReady(RangingBatcher batcher);
+    }
+
+    // One timer thread for all batchers, a new batcher is created whenever the delegate registers
+    private static final ScheduledExecutorService TIMER =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("LocationManager-batcher"));
+
+    private final BatchListener listener;
+    private final LinkedHashMap<String, RangingResult> pending = new LinkedHashMap<String, RangingResult>();
+    private ScheduledFuture<?> lingerFuture;
+    private boolean dispatchPending;
+
+    private int maxBatchSize = RangingOptions.DEFAULT_MAX_BATCH_SIZE;
+    private long maxLingerMs = RangingOptions.DEFAULT_MAX_LINGER_MS;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    RangingBatcher(BatchListener listener) {
+        this.listener = listener;
+    }
+
+    synchronized void setLimits(int maxBatchSize, long maxLingerMs) {
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerMs = maxLingerMs;
+    }
+
+    /*
+     * Adds the result of the region, returns true if it replaced a result still waiting in the batch.
+     */
+    boolean add(Region region, Collection<Beacon> beacons, long receivedAt) {
+        boolean replaced;
+        boolean full;
+        synchronized (this) {
+            replaced = pending.put(region.getUniqueId(), new RangingResult(region, beacons, receivedAt)) != null;
+            full = pending.size() >= maxBatchSize;
+            if (!full && lingerFuture == null) {
+                lingerFuture = TIMER.schedule(flushTask, maxLingerMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) {
+            flush();
+        }
+        return replaced;
+    }
+
+    void flush() {
+        synchronized (this) {
+            if (lingerFuture != null) {
+                lingerFuture.cancel(false);
+                lingerFuture = null;
+            }
+            if (pending.isEmpty() || dispatchPending) {
+                return;
+            }
+            dispatchPending = true;
+        }
+        listener.onBatchReady(this);
+    }
+
+    /*
+     * Takes the collected results, called by the dispatch task announced through onBatchReady().
+     */
+    synchronized List<RangingResult> drain() {
+        dispatchPending = false;
+        if (lingerFuture != null) {
+            lingerFuture.cancel(false);
+            lingerFuture = null;
+        }
+        List<RangingResult> batch = new ArrayList<RangingResult>(pending.values());
+        pending.clear();
+        return batch;
+    }
+
+    // The shared timer keeps running, flush() cancelled the pending linger of this batcher
+    void shutdown() {
+        flush();
+    }
+}
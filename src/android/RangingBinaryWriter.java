@@ -0,0 +1,258 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.Region;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+/*
+ * Writes ranging events in a compact binary form, sent to the DOM as an ArrayBuffer and
+ * decoded by LocationManager.js into the same objects the JSON events hold.
+ *
+ * All numbers are big endian. An event starts with
+ *     u8 version, u8 event (EVENT_*), u16 number of regions
+ * followed by the regions, each made of
+ *     u8 flags (REGION_*), u16 length + UTF-8 bytes of the identifier,
+ *     16 bytes uuid, u16 major, u16 minor (each only if its flag is set)
+ * and then either u16 number of beacons + beacons, or with REGION_DELTA the added, changed
+ * and removed beacons each preceded by their u16 number. A beacon takes BEACON_LENGTH bytes:
+ *     16 bytes uuid, u16 major, u16 minor, s8 rssi, s8 raw rssi, s8 tx, u8 proximity code,
+ *     f32 accuracy
+ * A removed beacon only takes the first REMOVED_BEACON_LENGTH bytes, its identifiers.
+ *
+ * Instances are not thread safe, every dispatching thread should use its own writer.
+ */
+final class RangingBinaryWriter {
+
+    static final int VERSION = 1;
+
+    static final int EVENT_RANGING = 0;
+    static final int EVENT_RANGING_DELTA = 1;
+    static final int EVENT_RANGING_BATCH = 2;
+
+    static final int REGION_UUID = 1;
+    static final int REGION_MAJOR = 2;
+    static final int REGION_MINOR = 4;
+    // rssi, accuracy and proximity are taken from RssiFilterBank readings
+    static final int REGION_SMOOTHED = 8;
+    static final int REGION_DELTA = 16;
+
+    static final int BEACON_LENGTH = 28;
+    static final int REMOVED_BEACON_LENGTH = 20;
+
+    private static final int UUID_LENGTH = 16;
+    private static final int MAX_CACHED_IDENTIFIERS = 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private byte[] buffer = new byte[4096];
+    private int position;
+    private int regionCount;
+
+    // Identifier.toByteArray() and String.getBytes() copy on every call, the same beacons are written every cycle
+    private final HashMap<Identifier, byte[]> identifierBytes = new HashMap<Identifier, byte[]>();
+    private final HashMap<String, byte[]> regionIdBytes = new HashMap<String, byte[]>();
+
+    byte[] rangingEvent(Region region, Collection<Beacon> beacons, RssiFilterBank.Readings readings) {
+        begin(EVENT_RANGING);
+        rangingEntry(region, beacons, readings);
+        return end();
+    }
+
+    byte[] rangingDeltaEvent(Region region, RangingDeltaTracker.Delta delta, RssiFilterBank.Readings readings) {
+        begin(EVENT_RANGING_DELTA);
+        deltaEntry(region, delta, readings);
+        return end();
+    }
+
+    RangingBinaryWriter beginBatch() {
+        begin(EVENT_RANGING_BATCH);
+        return this;
+    }
+
+    RangingBinaryWriter batchEntry(Region region, Collection<Beacon> beacons, RssiFilterBank.Readings readings) {
+        rangingEntry(region, beacons, readings);
+        return this;
+    }
+
+    RangingBinaryWriter batchDeltaEntry(Region region, RangingDeltaTracker.Delta delta, RssiFilterBank.Readings readings) {
+        deltaEntry(region, delta, readings);
+        return this;
+    }
+
+    byte[] endBatch() {
+        return end();
+    }
+
+    private void begin(int event) {
+        position = 0;
+        regionCount = 0;
+        putByte(VERSION);
+        putByte(event);
+        putShort(0);
+    }
+
+    private byte[] end() {
+        // patch in the number of regions
+        buffer[2] = (byte) (regionCount >>> 8);
+        buffer[3] = (byte) regionCount;
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void rangingEntry(Region region, Collection<Beacon> beacons, RssiFilterBank.Readings readings) {
+        region(region, readings != null ? REGION_SMOOTHED : 0);
+        beacons(beacons, readings);
+    }
+
+    private void deltaEntry(Region region, RangingDeltaTracker.Delta delta, RssiFilterBank.Readings readings) {
+        region(region, REGION_DELTA | (readings != null ? REGION_SMOOTHED : 0));
+        beacons(delta.added, readings);
+        beacons(delta.changed, readings);
+        ensureCapacity(2 + delta.removed.size() * REMOVED_BEACON_LENGTH);
+        putShort(delta.removed.size());
+        for (Beacon beacon : delta.removed) {
+            beaconIdentifiers(beacon);
+        }
+    }
+
+    private void region(Region region, int flags) {
+        regionCount++;
+        if (region.getId1() != null) {
+            flags |= REGION_UUID;
+        }
+        if (region.getId2() != null) {
+            flags |= REGION_MAJOR;
+        }
+        if (region.getId3() != null) {
+            flags |= REGION_MINOR;
+        }
+
+        byte[] id = regionIdBytesOf(region.getUniqueId());
+        ensureCapacity(1 + 2 + id.length + UUID_LENGTH + 4);
+        putByte(flags);
+        putShort(id.length);
+        System.arraycopy(id, 0, buffer, position, id.length);
+        position += id.length;
+        if (region.getId1() != null) {
+            putUuid(region.getId1());
+        }
+        if (region.getId2() != null) {
+            putShort(region.getId2().toInt());
+        }
+        if (region.getId3() != null) {
+            putShort(region.getId3().toInt());
+        }
+    }
+
+    private void beacons(Collection<Beacon> beacons, RssiFilterBank.Readings readings) {
+        ensureCapacity(2 + beacons.size() * BEACON_LENGTH);
+        putShort(beacons.size());
+        for (Beacon beacon : beacons) {
+            int slot = readings != null ? readings.slotOf(beacon) : -1;
+            double distance = slot != -1 ? readings.distance(slot) : beacon.getDistance();
+            String proximity = slot != -1 ? readings.proximity(slot) : Proximity.nameOf(distance);
+            int rssi = slot != -1 ? (int) Math.round(readings.rssi(slot)) : beacon.getRssi();
+
+            beaconIdentifiers(beacon);
+            putByte(clampToByte(rssi));
+            putByte(clampToByte(beacon.getRssi()));
+            putByte(clampToByte(beacon.getTxPower()));
+            putByte(Proximity.codeOf(proximity));
+            putInt(Float.floatToIntBits((float) distance));
+        }
+    }
+
+    private void beaconIdentifiers(Beacon beacon) {
+        putUuid(beacon.getId1());
+        putShort(beacon.getId2() != null ? beacon.getId2().toInt() : 0);
+        putShort(beacon.getId3() != null ? beacon.getId3().toInt() : 0);
+    }
+
+    // Identifiers of another length are cut or padded with zeros to 16 bytes.
+    private void putUuid(Identifier identifier) {
+        byte[] bytes = identifier != null ? identifierBytesOf(identifier) : null;
+        int length = bytes != null ? Math.min(bytes.length, UUID_LENGTH) : 0;
+        if (length > 0) {
+            System.arraycopy(bytes, 0, buffer, position, length);
+        }
+        Arrays.fill(buffer, position + length, position + UUID_LENGTH, (byte) 0);
+        position += UUID_LENGTH;
+    }
+
+    private byte[] identifierBytesOf(Identifier identifier) {
+        byte[] bytes = identifierBytes.get(identifier);
+        if (bytes == null) {
+            if (identifierBytes.size() >= MAX_CACHED_IDENTIFIERS) {
+                identifierBytes.clear();
+            }
+            bytes = identifier.toByteArray();
+            identifierBytes.put(identifier, bytes);
+        }
+        return bytes;
+    }
+
+    private byte[] regionIdBytesOf(String uniqueId) {
+        String id = uniqueId != null ? uniqueId : "";
+        byte[] bytes = regionIdBytes.get(id);
+        if (bytes == null) {
+            if (regionIdBytes.size() >= MAX_CACHED_IDENTIFIERS) {
+                regionIdBytes.clear();
+            }
+            bytes = id.getBytes(UTF_8);
+            if (bytes.length > 0xffff) {
+                bytes = Arrays.copyOf(bytes, 0xffff);
+            }
+            regionIdBytes.put(id, bytes);
+        }
+        return bytes;
+    }
+
+    private static int clampToByte(int value) {
+        return Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, value));
+    }
+
+    //////// Low level writing ////////////////////////////////
+
+    private void ensureCapacity(int length) {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+        }
+    }
+
+    private void putByte(int value) {
+        buffer[position++] = (byte) value;
+    }
+
+    private void putShort(int value) {
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putInt(int value) {
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+}
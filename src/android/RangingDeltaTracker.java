@@ -0,0 +1,137 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Remembers the beacons last delivered to the DOM per region and works out which of them
+ * were added, changed or removed by a new ranging result.
+ *
+ * A beacon counts as changed when its proximity bucket differs from the one last delivered
+ * or its RSSI moved by more than the threshold since then. Smoothed readings, if given, are
+ * compared instead of the raw ones.
+ * Each region must only be updated from one thread at a time.
+ */
+class RangingDeltaTracker {
+
+    /*
+     * The changes of one region. The instance is reused by the next update of the same region.
+     */
+    static final class Delta {
+        final ArrayList<Beacon> added = new ArrayList<Beacon>();
+        final ArrayList<Beacon> changed = new ArrayList<Beacon>();
+        final ArrayList<Beacon> removed = new ArrayList<Beacon>();
+
+        boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+
+        private void clear() {
+            added.clear();
+            changed.clear();
+            removed.clear();
+        }
+    }
+
+    private static final class RegionState {
+        final BeaconSlotIndex index = new BeaconSlotIndex();
+        final Delta delta = new Delta();
+        Beacon[] beacons = new Beacon[0];
+        String[] proximities = new String[0];
+        int[] rssis = new int[0];
+        int[] generations = new int[0];
+        int generation;
+
+        void ensureCapacity() {
+            int capacity = index.capacity();
+            if (beacons.length < capacity) {
+                beacons = Arrays.copyOf(beacons, capacity);
+                proximities = Arrays.copyOf(proximities, capacity);
+                rssis = Arrays.copyOf(rssis, capacity);
+                generations = Arrays.copyOf(generations, capacity);
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<String, RegionState> regions = new ConcurrentHashMap<String, RegionState>();
+
+    Delta update(Region region, Collection<Beacon> beacons, int rssiThreshold, RssiFilterBank.Readings readings) {
+        RegionState state = regions.get(region.getUniqueId());
+        if (state == null) {
+            state = new RegionState();
+            regions.put(region.getUniqueId(), state);
+        }
+
+        Delta delta = state.delta;
+        delta.clear();
+        int generation = ++state.generation;
+
+        for (Beacon beacon : beacons) {
+            int readingSlot = readings != null ? readings.slotOf(beacon) : -1;
+            String proximity = readingSlot != -1 ? readings.proximity(readingSlot) : Proximity.nameOf(beacon.getDistance());
+            int rssi = readingSlot != -1 ? (int) Math.round(readings.rssi(readingSlot)) : beacon.getRssi();
+
+            int slot = state.index.find(beacon);
+            if (slot == -1) {
+                slot = state.index.add(beacon.getId1(), beacon.getId2(), beacon.getId3());
+                state.ensureCapacity();
+                delta.added.add(beacon);
+            } else if (!proximity.equals(state.proximities[slot])
+                    || Math.abs(rssi - state.rssis[slot]) > rssiThreshold) {
+                delta.changed.add(beacon);
+            } else {
+                // unchanged, keep comparing against the values last delivered
+                state.beacons[slot] = beacon;
+                state.generations[slot] = generation;
+                continue;
+            }
+
+            state.beacons[slot] = beacon;
+            state.proximities[slot] = proximity;
+            state.rssis[slot] = rssi;
+            state.generations[slot] = generation;
+        }
+
+        for (int slot = 0, limit = state.index.slotLimit(); slot < limit; slot++) {
+            if (state.index.isUsed(slot) && state.generations[slot] != generation) {
+                delta.removed.add(state.beacons[slot]);
+                state.beacons[slot] = null;
+                state.proximities[slot] = null;
+                state.index.remove(slot);
+            }
+        }
+
+        return delta;
+    }
+
+    void forget(Region region) {
+        regions.remove(region.getUniqueId());
+    }
+
+    void clear() {
+        regions.clear();
+    }
+}
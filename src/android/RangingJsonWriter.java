@@ -0,0 +1,372 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.Region;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collection;
+
+/*
+ * Writes ranging events straight into a reusable buffer instead of building a JSONObject
+ * tree per beacon. The output is identical to the one produced through org.json.
+ *
+ * With readings of the RssiFilterBank the rssi, accuracy and proximity of a beacon are taken
+ * from them and the RSSI of the last packet is added as rawRssi.
+ *
+ * Instances are not thread safe, every dispatching thread should use its own writer.
+ */
+final class RangingJsonWriter {
+
+    // Beacon fields of subscription events
+    static final int FIELD_UUID = 1;
+    static final int FIELD_MAJOR = 2;
+    static final int FIELD_MINOR = 4;
+    static final int FIELD_PROXIMITY = 8;
+    static final int FIELD_RSSI = 16;
+    static final int FIELD_TX = 32;
+    static final int FIELD_ACCURACY = 64;
+    static final int ALL_FIELDS = 127;
+
+    private static final int MAX_NESTING = 8;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final StringBuilder buffer = new StringBuilder(4096);
+    private final boolean[] needsComma = new boolean[MAX_NESTING];
+    private int depth;
+
+    /*
+     * Wraps an already serialised JSON object, so it can be handed to PluginResult without
+     * being parsed or serialised again.
+     */
+    static final class Payload extends JSONObject {
+        private final String json;
+
+        Payload(String json) {
+            this.json = json;
+        }
+
+        @Override
+        public String toString() {
+            return json;
+        }
+    }
+
+    Payload rangingEvent(Region region, Collection<Beacon> beacons) throws JSONException {
+        return rangingEvent(region, beacons, null);
+    }
+
+    Payload rangingEvent(Region region, Collection<Beacon> beacons, RssiFilterBank.Readings readings) throws JSONException {
+        beginEvent("didRangeBeaconsInRegion");
+        rangingFields(region, beacons, readings);
+        return endEvent();
+    }
+
+    Payload rangingDeltaEvent(Region region, RangingDeltaTracker.Delta delta, RssiFilterBank.Readings readings) throws JSONException {
+        beginEvent("didRangeBeaconsInRegionDelta");
+        deltaFields(region, delta, readings);
+        return endEvent();
+    }
+
+    /*
+     * The ranging result of a region for a subscription, holding the number of beacons and, if
+     * any fields are asked for, those fields of each beacon. The raw readings are used.
+     */
+    Payload subscriptionEvent(int subscriptionId, Region region, Collection<Beacon> beacons, int fields) throws JSONException {
+        beginEvent("didRangeBeaconsForSubscription");
+        name("subscriptionId").value(subscriptionId);
+        name("region");
+        region(region);
+        name("count").value(beacons.size());
+        if (fields != 0) {
+            name("beacons");
+            beginArray();
+            for (Beacon beacon : beacons) {
+                beaconFields(beacon, fields);
+            }
+            endArray();
+        }
+        return endEvent();
+    }
+
+    /*
+     * Starts an event whose fields are written by the caller, finished by endEvent().
+     */
+    RangingJsonWriter beginEvent(String eventType) {
+        reset();
+        beginObject();
+        name("eventType").value(eventType);
+        return this;
+    }
+
+    Payload endEvent() {
+        endObject();
+        return new Payload(buffer.toString());
+    }
+
+    RangingJsonWriter beginBatch() {
+        name("batch");
+        beginArray();
+        return this;
+    }
+
+    RangingJsonWriter endBatch() {
+        endArray();
+        return this;
+    }
+
+    RangingJsonWriter batchEntry(Region region, Collection<Beacon> beacons, RssiFilterBank.Readings readings) throws JSONException {
+        beginObject();
+        rangingFields(region, beacons, readings);
+        endObject();
+        return this;
+    }
+
+    RangingJsonWriter batchDeltaEntry(Region region, RangingDeltaTracker.Delta delta, RssiFilterBank.Readings readings) throws JSONException {
+        beginObject();
+        deltaFields(region, delta, readings);
+        endObject();
+        return this;
+    }
+
+    private void rangingFields(Region region, Collection<Beacon> beacons, RssiFilterBank.Readings readings) throws JSONException {
+        name("region");
+        region(region);
+        name("beacons");
+        beacons(beacons, readings);
+    }
+
+    private void deltaFields(Region region, RangingDeltaTracker.Delta delta, RssiFilterBank.Readings readings) throws JSONException {
+        name("region");
+        region(region);
+        name("added");
+        beacons(delta.added, readings);
+        name("changed");
+        beacons(delta.changed, readings);
+        name("removed");
+        beginArray();
+        for (Beacon beacon : delta.removed) {
+            beginObject();
+            beaconIdentifiers(beacon);
+            endObject();
+        }
+        endArray();
+    }
+
+    private void region(Region region) {
+        beginObject();
+        if (region.getUniqueId() != null) {
+            name("identifier").value(region.getUniqueId());
+        }
+        optionalIdentifier("uuid", region.getId1());
+        optionalIdentifier("major", region.getId2());
+        optionalIdentifier("minor", region.getId3());
+        name("typeName").value("BeaconRegion");
+        endObject();
+    }
+
+    private void beacons(Collection<Beacon> beacons, RssiFilterBank.Readings readings) throws JSONException {
+        beginArray();
+        for (Beacon beacon : beacons) {
+            beacon(beacon, readings);
+        }
+        endArray();
+    }
+
+    private void beacon(Beacon beacon, RssiFilterBank.Readings readings) throws JSONException {
+        int slot = readings != null ? readings.slotOf(beacon) : -1;
+        double distance = slot != -1 ? readings.distance(slot) : beacon.getDistance();
+
+        beginObject();
+        beaconIdentifiers(beacon);
+        name("proximity").value(slot != -1 ? readings.proximity(slot) : Proximity.nameOf(distance));
+        if (slot != -1) {
+            name("rssi").value((int) Math.round(readings.rssi(slot)));
+            name("rawRssi").value(beacon.getRssi());
+        } else {
+            name("rssi").value(beacon.getRssi());
+        }
+        name("tx").value(beacon.getTxPower());
+        // accuracy = rough distance estimate limited to two decimal places (in metres)
+        name("accuracy").valueRoundedToCents(distance);
+        endObject();
+    }
+
+    private void beaconFields(Beacon beacon, int fields) throws JSONException {
+        beginObject();
+        if ((fields & FIELD_UUID) != 0) {
+            optionalIdentifier("uuid", beacon.getId1());
+        }
+        if ((fields & FIELD_MAJOR) != 0) {
+            optionalIdentifier("major", beacon.getId2());
+        }
+        if ((fields & FIELD_MINOR) != 0) {
+            optionalIdentifier("minor", beacon.getId3());
+        }
+        if ((fields & (FIELD_PROXIMITY | FIELD_ACCURACY)) != 0) {
+            double distance = beacon.getDistance();
+            if ((fields & FIELD_PROXIMITY) != 0) {
+                name("proximity").value(Proximity.nameOf(distance));
+            }
+            if ((fields & FIELD_ACCURACY) != 0) {
+                name("accuracy").valueRoundedToCents(distance);
+            }
+        }
+        if ((fields & FIELD_RSSI) != 0) {
+            name("rssi").value(beacon.getRssi());
+        }
+        if ((fields & FIELD_TX) != 0) {
+            name("tx").value(beacon.getTxPower());
+        }
+        endObject();
+    }
+
+    private void beaconIdentifiers(Beacon beacon) {
+        optionalIdentifier("uuid", beacon.getId1());
+        optionalIdentifier("major", beacon.getId2());
+        optionalIdentifier("minor", beacon.getId3());
+    }
+
+    // org.json drops keys with null values, so do we
+    private void optionalIdentifier(String name, Identifier identifier) {
+        if (identifier != null) {
+            name(name).value(IdentifierCache.stringOf(identifier));
+        }
+    }
+
+    //////// Low level writing ////////////////////////////////
+
+    private void reset() {
+        buffer.setLength(0);
+        depth = 0;
+    }
+
+    private void beginObject() {
+        separate();
+        buffer.append('{');
+        needsComma[++depth] = false;
+    }
+
+    private void endObject() {
+        buffer.append('}');
+        depth--;
+    }
+
+    private void beginArray() {
+        separate();
+        buffer.append('[');
+        needsComma[++depth] = false;
+    }
+
+    private void endArray() {
+        buffer.append(']');
+        depth--;
+    }
+
+    private RangingJsonWriter name(String name) {
+        separate();
+        string(name);
+        buffer.append(':');
+        // the value following the name must not be separated again
+        needsComma[depth] = false;
+        return this;
+    }
+
+    private void value(String value) {
+        separate();
+        string(value);
+    }
+
+    private void value(int value) {
+        separate();
+        buffer.append(value);
+    }
+
+    // Same output as JSONObject.numberToString(Math.round(value * 100.0) / 100.0), without boxing
+    private void valueRoundedToCents(double value) throws JSONException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new JSONException("Forbidden numeric value: " + value);
+        }
+        separate();
+        long cents = Math.round(value * 100.0);
+        if (cents < 0) {
+            buffer.append('-');
+            cents = -cents;
+        }
+        buffer.append(cents / 100);
+        int fraction = (int) (cents % 100);
+        if (fraction != 0) {
+            buffer.append('.');
+            buffer.append((char) ('0' + fraction / 10));
+            if (fraction % 10 != 0) {
+                buffer.append((char) ('0' + fraction % 10));
+            }
+        }
+    }
+
+    private void separate() {
+        if (depth == 0) {
+            return;
+        }
+        if (needsComma[depth]) {
+            buffer.append(',');
+        }
+        needsComma[depth] = true;
+    }
+
+    private void string(String value) {
+        buffer.append('"');
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    buffer.append('\\').append(c);
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                case '\b':
+                    buffer.append("\\b");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\f':
+                    buffer.append("\\f");
+                    break;
+                default:
+                    if (c <= 0x1F) {
+                        buffer.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        buffer.append(c);
+                    }
+                    break;
+            }
+        }
+        buffer.append('"');
+    }
+}
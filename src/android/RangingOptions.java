@@ -0,0 +1,253 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.json.JSONObject;
+
+/**
+ * Options controlling how ranging results are delivered to the DOM.
+ *
+ * Instances are immutable, a new set of options replaces the previous one as a whole.
+ */
+class RangingOptions {
+
+    static final int DEFAULT_MAX_BATCH_SIZE = 20;
+    static final long DEFAULT_MAX_LINGER_MS = 250;
+    static final int DEFAULT_DELTA_RSSI_THRESHOLD = 5;
+    static final int DEFAULT_FILTER_WINDOW_SIZE = 5;
+    static final int MAX_FILTER_WINDOW_SIZE = 64;
+    static final double DEFAULT_KALMAN_PROCESS_NOISE = 0.5;
+    static final double DEFAULT_KALMAN_MEASUREMENT_NOISE = 9.0;
+    static final double DEFAULT_ARMA_COEFFICIENT = 0.1;
+    static final double MAX_PROXIMITY_HYSTERESIS = 0.9;
+    static final long DEFAULT_NEAREST_DEBOUNCE_MS = 1000;
+    static final double DEFAULT_NEAREST_RSSI_MARGIN = 3.0;
+
+    // The original JSON object
+    private final JSONObject options;
+
+    private final JSONObject batch;
+    private final JSONObject delta;
+    private final JSONObject filter;
+    private final JSONObject proximity;
+    private final JSONObject topK;
+    private final JSONObject nearest;
+
+    /**
+     * Constructor
+     *
+     * @param options
+     *      JSON properties, null falls back to the defaults
+     */
+    RangingOptions(JSONObject options) {
+        this.options = options != null ? options : new JSONObject();
+        this.batch = optObject(this.options, "batch");
+        this.delta = optObject(this.options, "delta");
+        this.filter = optObject(this.options, "filter");
+        this.proximity = optObject(this.options, "proximity");
+        this.topK = optObject(this.options, "topK");
+        this.nearest = optObject(this.options, "nearest");
+    }
+
+    /**
+     * Whether ranging results of all regions are coalesced into
+     * didRangeBeaconsInRegionBatch events.
+     */
+    boolean isBatchEnabled() {
+        return batch.optBoolean("enabled", false);
+    }
+
+    /**
+     * Number of regions after which a batch is flushed immediately.
+     */
+    int getMaxBatchSize() {
+        return Math.max(1, batch.optInt("maxBatchSize", DEFAULT_MAX_BATCH_SIZE));
+    }
+
+    /**
+     * Maximum time a ranging result waits in a batch before it is flushed.
+     */
+    long getMaxLingerMs() {
+        return Math.max(0, batch.optLong("maxLingerMs", DEFAULT_MAX_LINGER_MS));
+    }
+
+    /**
+     * Whether only the added, changed and removed beacons of a region are delivered, as
+     * didRangeBeaconsInRegionDelta events.
+     */
+    boolean isDeltaEnabled() {
+        return delta.optBoolean("enabled", false);
+    }
+
+    /**
+     * RSSI change in dBm a beacon has to exceed to be reported as changed.
+     */
+    int getDeltaRssiThreshold() {
+        return Math.max(0, delta.optInt("rssiThreshold", DEFAULT_DELTA_RSSI_THRESHOLD));
+    }
+
+    /**
+     * The RSSI smoothing algorithm, one of the RssiFilterBank types. Unknown types turn
+     * smoothing off.
+     */
+    String getFilterType() {
+        String type = filter.optString("type", RssiFilterBank.NONE);
+        if (RssiFilterBank.KALMAN.equals(type) || RssiFilterBank.MEDIAN.equals(type) || RssiFilterBank.ARMA.equals(type)) {
+            return type;
+        }
+        return RssiFilterBank.NONE;
+    }
+
+    /**
+     * Number of samples the running median is taken of.
+     */
+    int getFilterWindowSize() {
+        return Math.min(MAX_FILTER_WINDOW_SIZE, Math.max(1, filter.optInt("windowSize", DEFAULT_FILTER_WINDOW_SIZE)));
+    }
+
+    /**
+     * Variance (dBm^2) the RSSI is expected to drift by between two cycles.
+     */
+    double getKalmanProcessNoise() {
+        return Math.max(0, filter.optDouble("processNoise", DEFAULT_KALMAN_PROCESS_NOISE));
+    }
+
+    /**
+     * Variance (dBm^2) of the noise of a single RSSI reading.
+     */
+    double getKalmanMeasurementNoise() {
+        return Math.max(Double.MIN_VALUE, filter.optDouble("measurementNoise", DEFAULT_KALMAN_MEASUREMENT_NOISE));
+    }
+
+    /**
+     * Weight of a new RSSI reading in the moving average, between 0 and 1.
+     */
+    double getArmaCoefficient() {
+        return Math.min(1, Math.max(0, filter.optDouble("coefficient", DEFAULT_ARMA_COEFFICIENT)));
+    }
+
+    /**
+     * Distance in metres below which a beacon is immediate.
+     */
+    double getImmediateThreshold() {
+        return Math.max(0, proximity.optDouble("immediateThreshold", ProximityClassifier.DEFAULT_IMMEDIATE_THRESHOLD));
+    }
+
+    /**
+     * Distance in metres up to which a beacon is near, it is far beyond.
+     */
+    double getNearThreshold() {
+        return Math.max(getImmediateThreshold(), proximity.optDouble("nearThreshold", ProximityClassifier.DEFAULT_NEAR_THRESHOLD));
+    }
+
+    /**
+     * Fraction of a threshold a beacon has to pass it by to change its proximity.
+     */
+    double getProximityHysteresis() {
+        return Math.min(MAX_PROXIMITY_HYSTERESIS, Math.max(0, proximity.optDouble("hysteresis", 0)));
+    }
+
+    /**
+     * Time a beacon has to stay in a new proximity before it is reported.
+     */
+    long getProximityMinDwellMs() {
+        return Math.max(0, proximity.optLong("minDwellMs", 0));
+    }
+
+    /**
+     * Whether the proximity is the plain bucket of the current distance, as without a classifier.
+     */
+    boolean isDefaultProximity() {
+        return getImmediateThreshold() == ProximityClassifier.DEFAULT_IMMEDIATE_THRESHOLD
+                && getNearThreshold() == ProximityClassifier.DEFAULT_NEAR_THRESHOLD
+                && getProximityHysteresis() == 0
+                && getProximityMinDwellMs() == 0;
+    }
+
+    /**
+     * Whether only the k strongest or nearest beacons of a region are delivered, and only
+     * when they or their order changed.
+     */
+    boolean isTopKEnabled() {
+        return getTopK() > 0;
+    }
+
+    /**
+     * Number of beacons delivered per region in top-k mode, 0 turns the mode off.
+     */
+    int getTopK() {
+        return Math.max(0, topK.optInt("k", 0));
+    }
+
+    /**
+     * What the top-k beacons are ranked by, one of the TopKTracker orders.
+     */
+    String getTopKOrder() {
+        return TopKTracker.BY_ACCURACY.equals(topK.optString("by")) ? TopKTracker.BY_ACCURACY : TopKTracker.BY_RSSI;
+    }
+
+    /**
+     * Whether didChangeNearestBeacon events are sent when the nearest beacon of a region changes.
+     */
+    boolean isNearestEnabled() {
+        return nearest.optBoolean("enabled", false);
+    }
+
+    /**
+     * Time another beacon has to stay the nearest one before it is reported.
+     */
+    long getNearestDebounceMs() {
+        return Math.max(0, nearest.optLong("debounceMs", DEFAULT_NEAREST_DEBOUNCE_MS));
+    }
+
+    /**
+     * RSSI in dBm another beacon has to be stronger by than the nearest one to take over.
+     */
+    double getNearestRssiMargin() {
+        return Math.max(0, nearest.optDouble("rssiMargin", DEFAULT_NEAREST_RSSI_MARGIN));
+    }
+
+    /**
+     * Whether the ranging results themselves are sent. Without them only derived events like
+     * didChangeNearestBeacon reach the delegate.
+     */
+    boolean isRangingEventsEnabled() {
+        return options.optBoolean("rangingEvents", true);
+    }
+
+    /**
+     * Whether ranging events are sent as ArrayBuffers written by the RangingBinaryWriter
+     * instead of JSON.
+     */
+    boolean isBinaryEncoding() {
+        return "binary".equals(options.optString("encoding", "json"));
+    }
+
+    private static JSONObject optObject(JSONObject json, String name) {
+        JSONObject value = json.optJSONObject(name);
+        return value != null ? value : new JSONObject();
+    }
+
+    /**
+     * JSON object as string.
+     */
+    public String toString() {
+        return options.toString();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+
+import java.util.Collection;
+
+/*
+ * The beacons reported by one ranging cycle of a region.
+ */
+final class RangingResult {
+    final Region region;
+    final Collection<Beacon> beacons;
+    // System.nanoTime() at which the result was reported by AltBeacon
+    final long receivedAt;
+
+    RangingResult(Region region, Collection<Beacon> beacons, long receivedAt) {
+        this.region = region;
+        this.beacons = beacons;
+        this.receivedAt = receivedAt;
+    }
+}
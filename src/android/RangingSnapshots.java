@@ -0,0 +1,55 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Latest-wins slot per region for ranging results waiting to be dispatched.
+ *
+ * Only one dispatch task per region is queued at a time. Results arriving while it waits,
+ * e.g. while the executor is paused, replace the previous one, and the task sends whatever
+ * is the latest result when it finally runs.
+ */
+class RangingSnapshots {
+
+    private final ConcurrentHashMap<String, RangingResult> latest = new ConcurrentHashMap<String, RangingResult>();
+
+    /*
+     * Stores the result of the region, returns true if a dispatch task has to be queued for it.
+     */
+    boolean put(Region region, Collection<Beacon> beacons, long receivedAt) {
+        return latest.put(region.getUniqueId(), new RangingResult(region, beacons, receivedAt)) == null;
+    }
+
+    /*
+     * Takes the latest result of the region, null if it was already taken.
+     */
+    RangingResult take(String regionId) {
+        return latest.remove(regionId);
+    }
+
+    void clear() {
+        latest.clear();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Region;
+import org.apache.cordova.CallbackContext;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ * Ranging subscriptions of the DOM. Each one receives the results of a single region on its
+ * own callback, at most once per minIntervalMs and with only the beacon fields it asked for.
+ *
+ * The subscriptions of a region share its ranging. A result arriving before the interval of a
+ * subscription has passed is skipped for that subscription.
+ */
+class RangingSubscriptions {
+
+    static final class Subscription {
+        final int id;
+        final Region region;
+        final long minIntervalMs;
+        // RangingJsonWriter.FIELD_* bits
+        final int fields;
+        final CallbackContext callbackContext;
+
+        // guarded by the enclosing RangingSubscriptions
+        private boolean served;
+        private long servedAtMs;
+
+        Subscription(int id, Region region, long minIntervalMs, int fields, CallbackContext callbackContext) {
+            this.id = id;
+            this.region = region;
+            this.minIntervalMs = minIntervalMs;
+            this.fields = fields;
+            this.callbackContext = callbackContext;
+        }
+    }
+
+    private int nextId = 1;
+    private final HashMap<Integer, Subscription> subscriptions = new HashMap<Integer, Subscription>();
+    private final HashMap<String, ArrayList<Subscription>> subscriptionsByRegion = new HashMap<String, ArrayList<Subscription>>();
+
+    synchronized Subscription add(Region region, long minIntervalMs, int fields, CallbackContext callbackContext) {
+        Subscription subscription = new Subscription(nextId++, region, minIntervalMs, fields, callbackContext);
+        subscriptions.put(subscription.id, subscription);
+
+        ArrayList<Subscription> ofRegion = subscriptionsByRegion.get(region.getUniqueId());
+        if (ofRegion == null) {
+            ofRegion = new ArrayList<Subscription>();
+            subscriptionsByRegion.put(region.getUniqueId(), ofRegion);
+        }
+        ofRegion.add(subscription);
+        return subscription;
+    }
+
+    synchronized Subscription remove(int id) {
+        Subscription subscription = subscriptions.remove(id);
+        if (subscription == null) {
+            return null;
+        }
+
+        ArrayList<Subscription> ofRegion = subscriptionsByRegion.get(subscription.region.getUniqueId());
+        ofRegion.remove(subscription);
+        if (ofRegion.isEmpty()) {
+            subscriptionsByRegion.remove(subscription.region.getUniqueId());
+        }
+        return subscription;
+    }
+
+    synchronized List<Subscription> removeAll() {
+        List<Subscription> removed = new ArrayList<Subscription>(subscriptions.values());
+        subscriptions.clear();
+        subscriptionsByRegion.clear();
+        return removed;
+    }
+
+    synchronized boolean isSubscribed(String regionId) {
+        return subscriptionsByRegion.containsKey(regionId);
+    }
+
+    /*
+     * Returns the subscriptions of the region whose interval has passed and marks them as
+     * served at the given time.
+     */
+    synchronized List<Subscription> takeDue(String regionId, long nowMs) {
+        ArrayList<Subscription> ofRegion = subscriptionsByRegion.get(regionId);
+        if (ofRegion == null) {
+            return Collections.emptyList();
+        }
+
+        List<Subscription> due = null;
+        for (Subscription subscription : ofRegion) {
+            if (subscription.served && nowMs - subscription.servedAtMs < subscription.minIntervalMs) {
+                continue;
+            }
+            subscription.served = true;
+            subscription.servedAtMs = nowMs;
+            if (due == null) {
+                due = new ArrayList<Subscription>(ofRegion.size());
+            }
+            due.add(subscription);
+        }
+        return due != null ? due : Collections.<Subscription>emptyList();
+    }
+
+    /*
+     * The RangingJsonWriter.FIELD_* bits of the field names, all fields if names is null.
+     * The count of beacons is always delivered, "count" alone asks for nothing else.
+     */
+    static int fieldsOf(JSONArray names) throws JSONException {
+        if (names == null) {
+            return RangingJsonWriter.ALL_FIELDS;
+        }
+
+        int fields = 0;
+        for (int i = 0; i < names.length(); i++) {
+            String name = names.getString(i);
+            if ("uuid".equals(name)) {
+                fields |= RangingJsonWriter.FIELD_UUID;
+            } else if ("major".equals(name)) {
+                fields |= RangingJsonWriter.FIELD_MAJOR;
+            } else if ("minor".equals(name)) {
+                fields |= RangingJsonWriter.FIELD_MINOR;
+            } else if ("proximity".equals(name)) {
+                fields |= RangingJsonWriter.FIELD_PROXIMITY;
+            } else if ("rssi".equals(name)) {
+                fields |= RangingJsonWriter.FIELD_RSSI;
+            } else if ("tx".equals(name)) {
+                fields |= RangingJsonWriter.FIELD_TX;
+            } else if ("accuracy".equals(name)) {
+                fields |= RangingJsonWriter.FIELD_ACCURACY;
+            } else if (!"count".equals(name)) {
+                throw new IllegalArgumentException("Unknown ranging field '" + name + "'");
+            }
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Options of the background sighting recorder, persisted so the background service keeps
+ * recording after a restart.
+ */
+class RecorderOptions {
+
+    static final long DEFAULT_MAX_FILE_BYTES = 256 * 1024;
+    static final int DEFAULT_MAX_FILES = 8;
+
+    private static final long MIN_FILE_BYTES = 4 * 1024;
+    private static final int MIN_FILES = 2;
+    private static final String PREFERENCES_KEY = "recorderOptions";
+
+    // The original JSON object
+    private JSONObject options = new JSONObject();
+
+    private final SharedPreferences preferences;
+
+    /**
+     * Constructor, restores the options saved the last time.
+     *
+     * @param context
+     *      Application context
+     */
+    RecorderOptions(Context context) {
+        preferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        String recorderOptions = preferences.getString(PREFERENCES_KEY, "");
+        if (!recorderOptions.isEmpty()) {
+            try {
+                options = new JSONObject(recorderOptions);
+            } catch (JSONException e) {
+                Log.w(LocationManager.TAG, "Ignoring saved recorder options: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Replaces the options and saves them for the next time around.
+     *
+     * @param options
+     *      JSON properties
+     */
+    RecorderOptions parseAndSave(JSONObject options) {
+        this.options = options != null ? options : new JSONObject();
+
+        SharedPreferences.Editor editor = preferences.edit();
+        editor.putString(PREFERENCES_KEY, toString());
+        editor.commit();
+
+        return this;
+    }
+
+    /**
+     * Whether the monitored regions are ranged and recorded while the app is not running.
+     */
+    boolean isEnabled() {
+        return options.optBoolean("enabled", false);
+    }
+
+    /**
+     * Size a log file may grow to before the next one is started.
+     */
+    long getMaxFileBytes() {
+        return Math.max(MIN_FILE_BYTES, options.optLong("maxFileBytes", DEFAULT_MAX_FILE_BYTES));
+    }
+
+    /**
+     * Number of log files kept, the oldest one is deleted when another one is started.
+     */
+    int getMaxFiles() {
+        return Math.max(MIN_FILES, options.optInt("maxFiles", DEFAULT_MAX_FILES));
+    }
+
+    /**
+     * JSON object as string.
+     */
+    public String toString() {
+        return options.toString();
+    }
+}
@@ -0,0 +1,585 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.MonitorNotifier;
+import org.altbeacon.beacon.RangeNotifier;
+import org.altbeacon.beacon.Region;
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The RangeNotifier and MonitorNotifier of LocationManager: turns the ranging results and
+ * monitoring events of the AltBeacon service into the events of the delegate, sent from the
+ * lanes of the event dispatcher. It needs no Android framework, the benchmarks and the trace
+ * replay load test run it on a plain JVM.
+ */
+final class RegionEventDispatcher implements RangeNotifier, MonitorNotifier {
+
+    static final String RANGING_EVENT_TYPE = "didRangeBeaconsInRegion";
+    static final String SUBSCRIPTION_EVENT_TYPE = "didRangeBeaconsForSubscription";
+    static final String NEAREST_EVENT_TYPE = NearestBeaconTracker.EVENT_TYPE;
+
+    /*
+     * What the dispatcher needs from the plugin around it
+     */
+    interface Host {
+        // called with each ranging result on the thread of the notifier, before it is dispatched
+        void onBeaconsRanged(Region region, Collection<Beacon> beacons);
+
+        // events are only turned into strings for debugLog() while it is enabled
+        boolean isDebugEnabled();
+
+        void debugLog(String message);
+
+        void errorLog(String message);
+    }
+
+    private final StripedDispatcher eventDispatcher;
+    private final EventMetrics eventMetrics;
+    // null unless sightings are recorded
+    private final SightingStore sightingStore;
+    private final VisibleBeaconIndex visibleBeacons;
+    private final RangingSubscriptions rangingSubscriptions;
+    // Regions ranged only for subscriptions, their results are not sent to the delegate
+    private final Set<String> subscriptionOnlyRegions;
+    private final Host host;
+
+    private volatile RangingOptions rangingOptions = new RangingOptions(null);
+    private volatile CallbackContext callbackContext;
+    private volatile IBeaconServiceNotifier beaconServiceNotifier;
+    private volatile RangingBatcher rangingBatcher;
+
+    private final RangingDeltaTracker rangingDeltaTracker = new RangingDeltaTracker();
+    private final TopKTracker topKTracker = new TopKTracker();
+    private final NearestBeaconTracker nearestBeaconTracker = new NearestBeaconTracker();
+    // Per region, held while its filter and tracker state is used. The lane of the region is not the
+    // only one using it, batches run on the first lane and commands forget the state of a region.
+    private final ConcurrentHashMap<String, Object> rangingStateLocks = new ConcurrentHashMap<String, Object>();
+    private final RangingSnapshots rangingSnapshots = new RangingSnapshots();
+    private final RssiFilterBank rssiFilterBank = new RssiFilterBank();
+
+    // Ranging payloads are written into a buffer that is reused by each dispatching thread
+    private final ThreadLocal<RangingJsonWriter> rangingJsonWriter = new ThreadLocal<RangingJsonWriter>() {
+        @Override
+        protected RangingJsonWriter initialValue() {
+            return new RangingJsonWriter();
+        }
+    };
+    private final ThreadLocal<RangingBinaryWriter> rangingBinaryWriter = new ThreadLocal<RangingBinaryWriter>() {
+        @Override
+        protected RangingBinaryWriter initialValue() {
+            return new RangingBinaryWriter();
+        }
+    };
+
+    RegionEventDispatcher(StripedDispatcher eventDispatcher, EventMetrics eventMetrics, SightingStore sightingStore,
+                          VisibleBeaconIndex visibleBeacons, RangingSubscriptions rangingSubscriptions,
+                          Set<String> subscriptionOnlyRegions, Host host) {
+        this.eventDispatcher = eventDispatcher;
+        this.eventMetrics = eventMetrics;
+        this.sightingStore = sightingStore;
+        this.visibleBeacons = visibleBeacons;
+        this.rangingSubscriptions = rangingSubscriptions;
+        this.subscriptionOnlyRegions = subscriptionOnlyRegions;
+        this.host = host;
+    }
+
+    /*
+     * Sends the events to the callback of the delegate from now on. The results waiting for a batch
+     * are sent to the previous one.
+     */
+    synchronized void setDelegate(final CallbackContext callbackContext, IBeaconServiceNotifier beaconServiceNotifier) {
+        if (rangingBatcher != null) {
+            rangingBatcher.shutdown();
+        }
+        RangingBatcher batcher = new RangingBatcher(new RangingBatcher.BatchListener() {
+            @Override
+            public void onBatchReady(RangingBatcher batcher) {
+                dispatchRangingBatch(batcher, callbackContext);
+            }
+        });
+        batcher.setLimits(rangingOptions.getMaxBatchSize(), rangingOptions.getMaxLingerMs());
+        rangingSnapshots.clear();
+
+        this.beaconServiceNotifier = beaconServiceNotifier;
+        this.callbackContext = callbackContext;
+        rangingBatcher = batcher;
+    }
+
+    RangingOptions getRangingOptions() {
+        return rangingOptions;
+    }
+
+    synchronized void setRangingOptions(RangingOptions options) {
+        boolean wasDeltaEnabled = rangingOptions.isDeltaEnabled();
+        boolean wasNearestEnabled = rangingOptions.isNearestEnabled();
+        rangingOptions = options;
+
+        // the first delta after switching it on reports every beacon as added
+        if (wasDeltaEnabled != options.isDeltaEnabled()) {
+            rangingDeltaTracker.clear();
+        }
+        // the first result after changing the top-k options is always delivered
+        topKTracker.clear();
+        // after switching it on the nearest beacons are reported afresh
+        if (wasNearestEnabled != options.isNearestEnabled()) {
+            nearestBeaconTracker.clear();
+        }
+
+        if (rangingBatcher != null) {
+            rangingBatcher.setLimits(options.getMaxBatchSize(), options.getMaxLingerMs());
+            if (!options.isBatchEnabled()) {
+                rangingBatcher.flush();
+            }
+        }
+    }
+
+    /*
+     * Drops the filter and tracker state of a region no longer ranged
+     */
+    void forget(Region region) {
+        synchronized (rangingStateLockOf(region)) {
+            rangingDeltaTracker.forget(region);
+            topKTracker.forget(region);
+            nearestBeaconTracker.forget(region);
+            rssiFilterBank.forget(region);
+        }
+    }
+
+    // Sends the results waiting for a batch
+    synchronized void shutdown() {
+        if (rangingBatcher != null) {
+            rangingBatcher.shutdown();
+            rangingBatcher = null;
+        }
+    }
+
+    //////// RangeNotifier /////////////////////
+
+    @Override
+    public void didRangeBeaconsInRegion(Collection<Beacon> iBeacons, Region region) {
+        long now = System.currentTimeMillis();
+        if (sightingStore != null) {
+            sightingStore.record(iBeacons, now);
+        }
+        visibleBeacons.update(region, iBeacons, now);
+        host.onBeaconsRanged(region, iBeacons);
+
+        RangingBatcher batcher = rangingBatcher;
+        CallbackContext callbackContext = this.callbackContext;
+        if (batcher == null || callbackContext == null) {
+            // no delegate yet
+            return;
+        }
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        List<RangingSubscriptions.Subscription> due = rangingSubscriptions.takeDue(region.getUniqueId(), elapsedMs);
+        for (RangingSubscriptions.Subscription subscription : due) {
+            dispatchSubscription(subscription, region, iBeacons);
+        }
+        if (subscriptionOnlyRegions.contains(region.getUniqueId())) {
+            return;
+        }
+
+        long receivedAt = eventMetrics.received(RANGING_EVENT_TYPE);
+
+        if (rangingOptions.isBatchEnabled()) {
+            if (batcher.add(region, iBeacons, receivedAt)) {
+                eventMetrics.coalesced(RANGING_EVENT_TYPE);
+            }
+            return;
+        }
+
+        // only the latest result of a region is sent, however long the dispatch has to wait
+        if (rangingSnapshots.put(region, iBeacons, receivedAt)) {
+            dispatchRanging(region.getUniqueId(), callbackContext);
+        } else {
+            eventMetrics.coalesced(RANGING_EVENT_TYPE);
+        }
+    }
+
+    //////// MonitorNotifier /////////////////////
+
+    @Override
+    public void didEnterRegion(Region region) {
+        host.debugLog("didEnterRegion INSIDE for " + region.getUniqueId());
+        dispatchMonitorState("didEnterRegion", MonitorNotifier.INSIDE, region);
+    }
+
+    @Override
+    public void didExitRegion(Region region) {
+        host.debugLog("didExitRegion OUTSIDE for " + region.getUniqueId());
+        dispatchMonitorState("didExitRegion", MonitorNotifier.OUTSIDE, region);
+    }
+
+    @Override
+    public void didDetermineStateForRegion(int state, Region region) {
+        host.debugLog("didDetermineStateForRegion '" + RegionJson.nameOfRegionState(state) + "' for region: " + region.getUniqueId());
+        dispatchMonitorState("didDetermineStateForRegion", state, region);
+    }
+
+    // Send state to JS callback until told to stop
+    private void dispatchMonitorState(final String eventType, final int state, final Region region) {
+        final CallbackContext callbackContext = this.callbackContext;
+        if (callbackContext == null) {
+            return;
+        }
+
+        final long receivedAt = eventMetrics.received(eventType);
+        eventDispatcher.execute(region.getUniqueId(), new Runnable() {
+            public void run() {
+                try {
+                    JSONObject data = new JSONObject();
+                    data.put("eventType", eventType);
+                    data.put("region", RegionJson.mapOfRegion(region));
+
+                    if (eventType.equals("didDetermineStateForRegion")) {
+                        String stateName = RegionJson.nameOfRegionState(state);
+                        data.put("state", stateName);
+                    }
+                    sendEvent(eventType, receivedAt, data, callbackContext);
+
+                } catch (Exception e) {
+                    host.errorLog("'monitoringDidFailForRegion' exception " + e.getCause());
+                    beaconServiceNotifier.monitoringDidFailForRegion(region, e);
+                }
+            }
+        });
+    }
+
+    private void dispatchRanging(final String regionId, final CallbackContext callbackContext) {
+
+        eventDispatcher.execute(regionId, new DispatchQueue.DroppableTask(regionId) {
+            public void run() {
+
+                RangingResult latest = rangingSnapshots.take(regionId);
+                if (latest == null) {
+                    return;
+                }
+
+                try {
+                    RangingOptions options = rangingOptions;
+                    if (options.isBinaryEncoding()) {
+                        byte[] binaryData = rangingBinaryPayloadOf(latest, options, callbackContext);
+                        if (binaryData == null) {
+                            eventMetrics.suppressed(RANGING_EVENT_TYPE, 1);
+                            return;
+                        }
+
+                        host.debugLog("didRangeBeacons: " + binaryData.length + " bytes");
+                        sendEvent(RANGING_EVENT_TYPE, latest.receivedAt, binaryData, callbackContext);
+                        return;
+                    }
+
+                    JSONObject data = rangingPayloadOf(latest, options, callbackContext);
+                    if (data == null) {
+                        eventMetrics.suppressed(RANGING_EVENT_TYPE, 1);
+                        return;
+                    }
+
+                    if (host.isDebugEnabled()) {
+                        host.debugLog("didRangeBeacons: " + data.toString());
+                    }
+
+                    sendEvent(RANGING_EVENT_TYPE, latest.receivedAt, data, callbackContext);
+
+                } catch (Exception e) {
+                    host.errorLog("'rangingBeaconsDidFailForRegion' exception " + e.getCause());
+                    beaconServiceNotifier.rangingBeaconsDidFailForRegion(latest.region, e);
+                }
+            }
+
+            @Override
+            void onDropped() {
+                if (rangingSnapshots.take(regionId) != null) {
+                    eventMetrics.dropped(RANGING_EVENT_TYPE, 1);
+                }
+            }
+        });
+    }
+
+    // Sends a ranging result to a subscription, superseded by the next one of the subscription while queued
+    private void dispatchSubscription(final RangingSubscriptions.Subscription subscription, final Region region,
+                                      final Collection<Beacon> beacons) {
+
+        final long receivedAt = eventMetrics.received(SUBSCRIPTION_EVENT_TYPE);
+        eventDispatcher.execute(region.getUniqueId(), new DispatchQueue.DroppableTask("subscription:" + subscription.id) {
+            public void run() {
+                try {
+                    JSONObject data = rangingJsonWriter.get().subscriptionEvent(subscription.id, region, beacons, subscription.fields);
+                    sendEvent(SUBSCRIPTION_EVENT_TYPE, receivedAt, data, subscription.callbackContext);
+                } catch (Exception e) {
+                    host.errorLog("'" + SUBSCRIPTION_EVENT_TYPE + "' exception " + e.getCause());
+                }
+            }
+
+            @Override
+            void onDropped() {
+                eventMetrics.dropped(SUBSCRIPTION_EVENT_TYPE, 1);
+            }
+        });
+    }
+
+    // Sends the ranging results of several regions as a single event
+    private void dispatchRangingBatch(final RangingBatcher batcher, final CallbackContext callbackContext) {
+
+        eventDispatcher.execute(new DispatchQueue.DroppableTask(null) {
+            public void run() {
+
+                List<RangingResult> batch = batcher.drain();
+                if (batch.isEmpty()) {
+                    return;
+                }
+
+                try {
+                    RangingOptions options = rangingOptions;
+                    PluginResult result;
+                    if (options.isBinaryEncoding()) {
+                        byte[] data = rangingBinaryBatchPayloadOf(batch, options, callbackContext);
+                        if (data == null) {
+                            return;
+                        }
+                        result = new PluginResult(PluginResult.Status.OK, data);
+                    } else {
+                        JSONObject data = rangingBatchPayloadOf(batch, options, callbackContext);
+                        if (data == null) {
+                            return;
+                        }
+                        result = new PluginResult(PluginResult.Status.OK, data);
+                    }
+
+                    host.debugLog("didRangeBeaconsInRegionBatch: " + batch.size() + " regions");
+
+                    //send and keep reference to callback
+                    result.setKeepCallback(true);
+                    callbackContext.sendPluginResult(result);
+
+                    // each region of the batch counts as one ranging result sent
+                    for (RangingResult entry : batch) {
+                        eventMetrics.sent(RANGING_EVENT_TYPE, entry.receivedAt);
+                    }
+
+                } catch (Exception e) {
+                    host.errorLog("'rangingBeaconsDidFailForRegion' exception " + e.getCause());
+                    for (RangingResult entry : batch) {
+                        beaconServiceNotifier.rangingBeaconsDidFailForRegion(entry.region, e);
+                    }
+                }
+            }
+
+            @Override
+            void onDropped() {
+                eventMetrics.dropped(RANGING_EVENT_TYPE, batcher.drain().size());
+            }
+        });
+    }
+
+    // Returns null if ranging events are off, or if deltas or the top-k beacons are delivered and nothing
+    // changed in the region
+    private JSONObject rangingPayloadOf(RangingResult result, RangingOptions options, CallbackContext callbackContext) throws JSONException {
+        synchronized (rangingStateLockOf(result.region)) {
+            Region region = result.region;
+            Collection<Beacon> beacons = result.beacons;
+            RssiFilterBank.Readings readings = readingsOf(result, options, callbackContext);
+            if (!options.isRangingEventsEnabled()) {
+                return null;
+            }
+            if (options.isTopKEnabled()) {
+                beacons = topKTracker.update(region, beacons, options.getTopK(), options.getTopKOrder(), readings);
+                if (beacons == null) {
+                    return null;
+                }
+            }
+            if (!options.isDeltaEnabled()) {
+                return rangingJsonWriter.get().rangingEvent(region, beacons, readings);
+            }
+
+            RangingDeltaTracker.Delta delta = rangingDeltaTracker.update(region, beacons, options.getDeltaRssiThreshold(), readings);
+            return delta.isEmpty() ? null : rangingJsonWriter.get().rangingDeltaEvent(region, delta, readings);
+        }
+    }
+
+    // Returns null if ranging events are off, or if deltas or the top-k beacons are delivered and nothing
+    // changed in any of the regions. Regions without changes are removed from the batch.
+    private JSONObject rangingBatchPayloadOf(List<RangingResult> batch, RangingOptions options,
+                                             CallbackContext callbackContext) throws JSONException {
+        RangingJsonWriter writer = rangingJsonWriter.get().beginEvent("didRangeBeaconsInRegionBatch").beginBatch();
+
+        for (Iterator<RangingResult> iterator = batch.iterator(); iterator.hasNext(); ) {
+            RangingResult entry = iterator.next();
+            synchronized (rangingStateLockOf(entry.region)) {
+                RssiFilterBank.Readings readings = readingsOf(entry, options, callbackContext);
+                Collection<Beacon> beacons = beaconsToDeliver(entry, options, readings);
+                if (beacons == null) {
+                    eventMetrics.suppressed(RANGING_EVENT_TYPE, 1);
+                    iterator.remove();
+                    continue;
+                }
+                if (!options.isDeltaEnabled()) {
+                    writer.batchEntry(entry.region, beacons, readings);
+                    continue;
+                }
+
+                RangingDeltaTracker.Delta delta = rangingDeltaTracker.update(entry.region, beacons, options.getDeltaRssiThreshold(), readings);
+                if (!delta.isEmpty()) {
+                    writer.batchDeltaEntry(entry.region, delta, readings);
+                } else {
+                    eventMetrics.suppressed(RANGING_EVENT_TYPE, 1);
+                    iterator.remove();
+                }
+            }
+        }
+
+        return batch.isEmpty() ? null : writer.endBatch().endEvent();
+    }
+
+    // The binary counterpart of rangingPayloadOf()
+    private byte[] rangingBinaryPayloadOf(RangingResult result, RangingOptions options, CallbackContext callbackContext) {
+        synchronized (rangingStateLockOf(result.region)) {
+            Region region = result.region;
+            Collection<Beacon> beacons = result.beacons;
+            RssiFilterBank.Readings readings = readingsOf(result, options, callbackContext);
+            if (!options.isRangingEventsEnabled()) {
+                return null;
+            }
+            if (options.isTopKEnabled()) {
+                beacons = topKTracker.update(region, beacons, options.getTopK(), options.getTopKOrder(), readings);
+                if (beacons == null) {
+                    return null;
+                }
+            }
+            if (!options.isDeltaEnabled()) {
+                return rangingBinaryWriter.get().rangingEvent(region, beacons, readings);
+            }
+
+            RangingDeltaTracker.Delta delta = rangingDeltaTracker.update(region, beacons, options.getDeltaRssiThreshold(), readings);
+            return delta.isEmpty() ? null : rangingBinaryWriter.get().rangingDeltaEvent(region, delta, readings);
+        }
+    }
+
+    // The binary counterpart of rangingBatchPayloadOf()
+    private byte[] rangingBinaryBatchPayloadOf(List<RangingResult> batch, RangingOptions options,
+                                               CallbackContext callbackContext) {
+        RangingBinaryWriter writer = rangingBinaryWriter.get().beginBatch();
+
+        for (Iterator<RangingResult> iterator = batch.iterator(); iterator.hasNext(); ) {
+            RangingResult entry = iterator.next();
+            synchronized (rangingStateLockOf(entry.region)) {
+                RssiFilterBank.Readings readings = readingsOf(entry, options, callbackContext);
+                Collection<Beacon> beacons = beaconsToDeliver(entry, options, readings);
+                if (beacons == null) {
+                    eventMetrics.suppressed(RANGING_EVENT_TYPE, 1);
+                    iterator.remove();
+                    continue;
+                }
+                if (!options.isDeltaEnabled()) {
+                    writer.batchEntry(entry.region, beacons, readings);
+                    continue;
+                }
+
+                RangingDeltaTracker.Delta delta = rangingDeltaTracker.update(entry.region, beacons, options.getDeltaRssiThreshold(), readings);
+                if (!delta.isEmpty()) {
+                    writer.batchDeltaEntry(entry.region, delta, readings);
+                } else {
+                    eventMetrics.suppressed(RANGING_EVENT_TYPE, 1);
+                    iterator.remove();
+                }
+            }
+        }
+
+        return batch.isEmpty() ? null : writer.endBatch();
+    }
+
+    // The beacons of a batch entry to deliver, null if ranging events are off or its top-k beacons did not change
+    private Collection<Beacon> beaconsToDeliver(RangingResult entry, RangingOptions options, RssiFilterBank.Readings readings) {
+        if (!options.isRangingEventsEnabled()) {
+            return null;
+        }
+        if (!options.isTopKEnabled()) {
+            return entry.beacons;
+        }
+        return topKTracker.update(entry.region, entry.beacons, options.getTopK(), options.getTopKOrder(), readings);
+    }
+
+    // The locks are kept for the lifetime of the plugin, a region removed while held would not exclude anyone
+    private Object rangingStateLockOf(Region region) {
+        Object lock = rangingStateLocks.get(region.getUniqueId());
+        if (lock == null) {
+            Object created = new Object();
+            lock = rangingStateLocks.putIfAbsent(region.getUniqueId(), created);
+            if (lock == null) {
+                lock = created;
+            }
+        }
+        return lock;
+    }
+
+    // Smooths the readings of a ranging result and sends a didChangeNearestBeacon event if the nearest
+    // beacon of its region changed. Called while the result is turned into its event, so the nearest
+    // beacon events follow the order of the results.
+    private RssiFilterBank.Readings readingsOf(RangingResult result, RangingOptions options, CallbackContext callbackContext) {
+        RssiFilterBank.Readings readings = rssiFilterBank.update(result.region, result.beacons, options);
+        if (!options.isNearestEnabled()) {
+            return readings;
+        }
+
+        NearestBeaconTracker.Change change = nearestBeaconTracker.update(result.region, result.beacons, readings,
+                result.receivedAt / 1000000, options.getNearestDebounceMs(), options.getNearestRssiMargin());
+        if (change != null) {
+            eventMetrics.received(NEAREST_EVENT_TYPE);
+            try {
+                JSONObject data = NearestBeaconTracker.eventOf(result.region, change, readings);
+                if (host.isDebugEnabled()) {
+                    host.debugLog(NEAREST_EVENT_TYPE + ": " + data.toString());
+                }
+                sendEvent(NEAREST_EVENT_TYPE, result.receivedAt, data, callbackContext);
+            } catch (JSONException e) {
+                host.errorLog("'" + NEAREST_EVENT_TYPE + "' exception " + e.getCause());
+            }
+        }
+        return readings;
+    }
+
+    // Sends an event to the delegate and keeps the reference to the callback
+    private void sendEvent(String eventType, long receivedAt, JSONObject data, CallbackContext callbackContext) {
+        sendEvent(eventType, receivedAt, new PluginResult(PluginResult.Status.OK, data), callbackContext);
+    }
+
+    // Binary events arrive in the DOM as ArrayBuffers
+    private void sendEvent(String eventType, long receivedAt, byte[] data, CallbackContext callbackContext) {
+        sendEvent(eventType, receivedAt, new PluginResult(PluginResult.Status.OK, data), callbackContext);
+    }
+
+    private void sendEvent(String eventType, long receivedAt, PluginResult result, CallbackContext callbackContext) {
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+        eventMetrics.sent(eventType, receivedAt);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.Region;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/*
+ * The monitored regions, indexed by identifier and by the beacon identifiers they match.
+ *
+ * Regions are bucketed by uuid, then major, then minor, so the regions matching a beacon are
+ * found with at most three hash lookups regardless of how many regions are registered.
+ * Only regions without a uuid (matching any beacon) are kept in a list that is scanned.
+ * Not thread safe.
+ */
+final class RegionIndex {
+
+    private static final class MajorBucket {
+        final List<Region> anyMinor = new ArrayList<Region>();
+        final HashMap<Identifier, List<Region>> byMinor = new HashMap<Identifier, List<Region>>();
+
+        boolean isEmpty() {
+            return anyMinor.isEmpty() && byMinor.isEmpty();
+        }
+    }
+
+    private static final class UuidBucket {
+        final List<Region> anyMajor = new ArrayList<Region>();
+        final HashMap<Identifier, MajorBucket> byMajor = new HashMap<Identifier, MajorBucket>();
+
+        boolean isEmpty() {
+            return anyMajor.isEmpty() && byMajor.isEmpty();
+        }
+    }
+
+    private final LinkedHashMap<String, Region> byId = new LinkedHashMap<String, Region>();
+    private final HashMap<Identifier, UuidBucket> byUuid = new HashMap<Identifier, UuidBucket>();
+    private final List<Region> withoutUuid = new ArrayList<Region>();
+
+    /*
+     * Adds the region and returns the region with the same identifier it replaced, if any.
+     */
+    Region put(Region region) {
+        Region previous = remove(region.getUniqueId());
+        byId.put(region.getUniqueId(), region);
+
+        Identifier uuid = region.getId1();
+        if (uuid == null) {
+            withoutUuid.add(region);
+            return previous;
+        }
+
+        UuidBucket uuidBucket = byUuid.get(uuid);
+        if (uuidBucket == null) {
+            uuidBucket = new UuidBucket();
+            byUuid.put(uuid, uuidBucket);
+        }
+        Identifier major = region.getId2();
+        if (major == null) {
+            uuidBucket.anyMajor.add(region);
+            return previous;
+        }
+
+        MajorBucket majorBucket = uuidBucket.byMajor.get(major);
+        if (majorBucket == null) {
+            majorBucket = new MajorBucket();
+            uuidBucket.byMajor.put(major, majorBucket);
+        }
+        Identifier minor = region.getId3();
+        if (minor == null) {
+            majorBucket.anyMinor.add(region);
+            return previous;
+        }
+
+        List<Region> regions = majorBucket.byMinor.get(minor);
+        if (regions == null) {
+            regions = new ArrayList<Region>(1);
+            majorBucket.byMinor.put(minor, regions);
+        }
+        regions.add(region);
+        return previous;
+    }
+
+    /*
+     * Removes the region with the given identifier and returns it, or null if there was none.
+     */
+    Region remove(String uniqueId) {
+        Region region = byId.remove(uniqueId);
+        if (region == null) {
+            return null;
+        }
+
+        Identifier uuid = region.getId1();
+        if (uuid == null) {
+            withoutUuid.remove(region);
+            return region;
+        }
+
+        UuidBucket uuidBucket = byUuid.get(uuid);
+        Identifier major = region.getId2();
+        if (major == null) {
+            uuidBucket.anyMajor.remove(region);
+        } else {
+            MajorBucket majorBucket = uuidBucket.byMajor.get(major);
+            Identifier minor = region.getId3();
+            if (minor == null) {
+                majorBucket.anyMinor.remove(region);
+            } else {
+                List<Region> regions = majorBucket.byMinor.get(minor);
+                regions.remove(region);
+                if (regions.isEmpty()) {
+                    majorBucket.byMinor.remove(minor);
+                }
+            }
+            if (majorBucket.isEmpty()) {
+                uuidBucket.byMajor.remove(major);
+            }
+        }
+        if (uuidBucket.isEmpty()) {
+            byUuid.remove(uuid);
+        }
+        return region;
+    }
+
+    Region get(String uniqueId) {
+        return byId.get(uniqueId);
+    }
+
+    /*
+     * Adds the regions matching the beacon to the given collection.
+     */
+    void match(Beacon beacon, Collection<Region> matches) {
+        match(beacon.getId1(), beacon.getId2(), beacon.getId3(), matches);
+    }
+
+    void match(Identifier uuid, Identifier major, Identifier minor, Collection<Region> matches) {
+        for (Region region : withoutUuid) {
+            if (region.getId2() == null || region.getId2().equals(major)) {
+                if (region.getId3() == null || region.getId3().equals(minor)) {
+                    matches.add(region);
+                }
+            }
+        }
+
+        UuidBucket uuidBucket = uuid != null ? byUuid.get(uuid) : null;
+        if (uuidBucket == null) {
+            return;
+        }
+        matches.addAll(uuidBucket.anyMajor);
+
+        MajorBucket majorBucket = major != null ? uuidBucket.byMajor.get(major) : null;
+        if (majorBucket == null) {
+            return;
+        }
+        matches.addAll(majorBucket.anyMinor);
+
+        List<Region> regions = minor != null ? majorBucket.byMinor.get(minor) : null;
+        if (regions != null) {
+            matches.addAll(regions);
+        }
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    /*
+     * The regions in the order they were added.
+     */
+    List<Region> toList() {
+        return new ArrayList<Region>(byId.values());
+    }
+}
@@ -0,0 +1,251 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.MonitorNotifier;
+import org.altbeacon.beacon.Region;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.InvalidKeyException;
+
+/*
+ * Converts regions from and to the JSON representation used by the DOM.
+ *
+ * Only depends on org.json and the AltBeacon types, so it also runs on a plain JVM.
+ */
+final class RegionJson {
+
+    private static final int MAX_CACHED_REGIONS = 256;
+
+    /*
+     * A region parsed before together with the identifiers it was parsed from.
+     */
+    private static final class CachedRegion {
+        final String uuid;
+        final String major;
+        final String minor;
+        final Region region;
+
+        CachedRegion(String uuid, String major, String minor, Region region) {
+            this.uuid = uuid;
+            this.major = major;
+            this.minor = minor;
+            this.region = region;
+        }
+
+        boolean matches(String uuid, String major, String minor) {
+            return equal(this.uuid, uuid) && equal(this.major, major) && equal(this.minor, minor);
+        }
+    }
+
+    // Canonical regions by identifier, the same region is handed out again as long as the DOM
+    // passes the same identifiers. Guarded by itself.
+    private static final LruMap<String, CachedRegion> regions = new LruMap<String, CachedRegion>(MAX_CACHED_REGIONS);
+
+    private RegionJson() {
+    }
+
+    static Region parseRegion(JSONObject json) throws JSONException, InvalidKeyException, UnsupportedOperationException {
+
+        if (!json.has("typeName"))
+            throw new InvalidKeyException("'typeName' is missing, cannot parse Region.");
+
+        if (!json.has("identifier"))
+            throw new InvalidKeyException("'identifier' is missing, cannot parse Region.");
+
+        String typeName = json.getString("typeName");
+        if (typeName.equals("BeaconRegion")) {
+            return parseBeaconRegion(json);
+        } else if (typeName.equals("CircularRegion")) {
+            return parseCircularRegion(json);
+
+        } else {
+            throw new UnsupportedOperationException("Unsupported region type");
+        }
+
+    }
+
+    /* NOT SUPPORTED, a possible enhancement later */
+    private static Region parseCircularRegion(JSONObject json) throws JSONException, InvalidKeyException, UnsupportedOperationException {
+
+        if (!json.has("latitude"))
+            throw new InvalidKeyException("'latitude' is missing, cannot parse CircularRegion.");
+
+        if (!json.has("longitude"))
+            throw new InvalidKeyException("'longitude' is missing, cannot parse CircularRegion.");
+
+        if (!json.has("radius"))
+            throw new InvalidKeyException("'radius' is missing, cannot parse CircularRegion.");
+
+     	/*String identifier = json.getString("identifier");
+         double latitude = json.getDouble("latitude");
+     	double longitude = json.getDouble("longitude");
+     	double radius = json.getDouble("radius");
+    	*/
+        throw new UnsupportedOperationException("Circular regions are not supported at present");
+    }
+
+    static Region parseBeaconRegion(JSONObject json) throws JSONException, UnsupportedOperationException {
+
+        String identifier = json.getString("identifier");
+
+        //For Android, uuid can be null when scanning for all beacons (I think)
+        String uuid = json.has("uuid") && !json.isNull("uuid") ? json.getString("uuid") : null;
+        String major = json.has("major") && !json.isNull("major") ? json.getString("major") : null;
+        String minor = json.has("minor") && !json.isNull("minor") ? json.getString("minor") : null;
+
+        if (major == null && minor != null)
+            throw new UnsupportedOperationException("Unsupported combination of 'major' and 'minor' parameters.");
+
+        synchronized (regions) {
+            CachedRegion cached = regions.get(identifier);
+            if (cached != null && cached.matches(uuid, major, minor)) {
+                return cached.region;
+            }
+        }
+
+        Identifier id1 = uuid != null ? IdentifierCache.parse(uuid) : null;
+        Identifier id2 = major != null ? IdentifierCache.parse(major) : null;
+        Identifier id3 = minor != null ? IdentifierCache.parse(minor) : null;
+        Region region = new Region(identifier, id1, id2, id3);
+
+        synchronized (regions) {
+            regions.put(identifier, new CachedRegion(uuid, major, minor, region));
+        }
+        return region;
+    }
+
+
+    static String nameOfRegionState(int state) {
+        switch (state) {
+            case MonitorNotifier.INSIDE:
+                return "CLRegionStateInside";
+            case MonitorNotifier.OUTSIDE:
+                return "CLRegionStateOutside";
+            /*case MonitorNotifier.UNKNOWN:
+                return "CLRegionStateUnknown";*/
+            default:
+                return "ErrorUnknownCLRegionStateObjectReceived";
+        }
+    }
+
+    static JSONObject mapOfRegion(Region region) throws JSONException {
+
+        //NOTE: NOT SUPPORTING CIRCULAR REGIONS
+        return mapOfBeaconRegion(region);
+
+    }
+
+    static JSONObject mapOfBeaconRegion(Region region) throws JSONException {
+        JSONObject dict = new JSONObject();
+
+        // identifier
+        if (region.getUniqueId() != null) {
+            dict.put("identifier", region.getUniqueId());
+        }
+
+        if (region.getId1() != null) {
+            dict.put("uuid", IdentifierCache.stringOf(region.getId1()));
+        }
+
+        if (region.getId2() != null) {
+            dict.put("major", IdentifierCache.stringOf(region.getId2()));
+        }
+
+        if (region.getId3() != null) {
+            dict.put("minor", IdentifierCache.stringOf(region.getId3()));
+        }
+
+        dict.put("typeName", "BeaconRegion");
+
+        return dict;
+
+    }
+
+    /*
+     * The uuid, major and minor of a beacon, as far as it has them.
+     */
+    static JSONObject mapOfBeaconIdentifiers(Beacon beacon) throws JSONException {
+        JSONObject dict = new JSONObject();
+        int count = beacon.getIdentifiers().size();
+        putIdentifier(dict, "uuid", count > 0 ? beacon.getId1() : null);
+        putIdentifier(dict, "major", count > 1 ? beacon.getId2() : null);
+        putIdentifier(dict, "minor", count > 2 ? beacon.getId3() : null);
+        return dict;
+    }
+
+    /*
+     * A beacon as in the ranging events. The rssi, proximity and accuracy are based on the
+     * smoothed readings if given, the RSSI of the last packet is added as rawRssi then.
+     */
+    static JSONObject mapOfBeacon(Beacon beacon, RssiFilterBank.Readings readings) throws JSONException {
+        int slot = readings != null ? readings.slotOf(beacon) : -1;
+        double distance = slot != -1 ? readings.distance(slot) : beacon.getDistance();
+
+        JSONObject dict = mapOfBeaconIdentifiers(beacon);
+        dict.put("proximity", slot != -1 ? readings.proximity(slot) : Proximity.nameOf(distance));
+        if (slot != -1) {
+            dict.put("rssi", (int) Math.round(readings.rssi(slot)));
+            dict.put("rawRssi", beacon.getRssi());
+        } else {
+            dict.put("rssi", beacon.getRssi());
+        }
+        dict.put("tx", beacon.getTxPower());
+        // accuracy = rough distance estimate limited to two decimal places (in metres)
+        dict.put("accuracy", Math.round(distance * 100.0) / 100.0);
+        return dict;
+    }
+
+    /*
+     * Puts the string form of the identifier, nothing if it is null.
+     */
+    static void putIdentifier(JSONObject dict, String name, Identifier identifier) throws JSONException {
+        if (identifier != null) {
+            dict.put(name, IdentifierCache.stringOf(identifier));
+        }
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /* NOT SUPPORTED */
+    /*static JSONObject mapOfCircularRegion(Region region) throws JSONException {
+        JSONObject dict = new JSONObject();
+
+        // identifier
+        if (region.getUniqueId() != null) {
+       	 dict.put("identifier", region.getUniqueId());
+       }
+
+       //NOT SUPPORTING CIRCULAR REGIONS
+       //dict.put("radius", region.getRadius());
+       //JSONObject coordinates = new JSONObject();
+       //coordinates.put("latitude", 0.0d);
+       //coordinates.put("longitude", 0.0d);
+       //dict.put("center", coordinates);
+       //dict.put("typeName", "CircularRegion");
+
+       return dict;
+
+    }*/
+}
@@ -0,0 +1,469 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import android.util.Log;
+
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.Region;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/*
+ * Persists the monitored regions and their last known state in a small binary file.
+ *
+ * Changes are appended to the file as records, each framed by its length and a CRC32, so a
+ * write torn by the process being killed only loses the records after it. Writes are
+ * collected for FLUSH_DELAY_MS and then appended in one go on a background thread, the
+ * callers never wait for the disk. Once the file holds many superseded records it is
+ * rewritten with just the current content.
+ *
+ * The file is read once with load(), afterwards the in memory copy is authoritative.
+ */
+class RegionStore {
+
+    private static final String TAG = "com.unarin.beacon";
+
+    private static final int MAGIC = 0x52474e53; // "RGNS"
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = 5;
+    private static final int MAX_RECORD_LENGTH = 4096;
+
+    private static final byte RECORD_REGION = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final byte RECORD_STATE = 3;
+    private static final byte RECORD_CLEAR_STATES = 4;
+
+    private static final long FLUSH_DELAY_MS = 200;
+    private static final int MIN_RECORDS_TO_COMPACT = 64;
+
+    private final File file;
+    private final ScheduledExecutorService writer =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("LocationManager-region-store"));
+
+    private final LinkedHashMap<String, Region> regions = new LinkedHashMap<String, Region>();
+    private final HashMap<String, Integer> states = new HashMap<String, Integer>();
+
+    // records appended but not written yet
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+
+    // number of records in the file including the pending ones
+    private int recordCount;
+    private boolean flushScheduled;
+    private boolean rewriteRequired;
+    private boolean closed;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushNow();
+        }
+    };
+
+    RegionStore(File file) {
+        this.file = file;
+    }
+
+    /*
+     * Reads the file, dropping everything after the first incomplete or damaged record.
+     */
+    synchronized void load() {
+        regions.clear();
+        states.clear();
+        recordCount = 0;
+
+        if (!file.exists()) {
+            return;
+        }
+
+        long validLength = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                Log.w(TAG, "Ignoring unknown region store " + file);
+                rewriteRequired = true;
+                return;
+            }
+            validLength = HEADER_LENGTH;
+
+            byte[] buffer = new byte[MAX_RECORD_LENGTH];
+            while (true) {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                    break;
+                }
+                in.readFully(buffer, 0, length);
+                int checksum = in.readInt();
+
+                crc.reset();
+                crc.update(buffer, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                apply(new DataInputStream(new ByteArrayInputStream(buffer, 0, length)));
+                recordCount++;
+                validLength += 4 + length + 4;
+            }
+        } catch (EOFException e) {
+            // end of the file or a record torn by a crash
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read region store " + file + ": " + e.getMessage());
+        } finally {
+            closeQuietly(in);
+        }
+
+        if (validLength < file.length()) {
+            truncate(validLength);
+        }
+    }
+
+    synchronized List<Region> getRegions() {
+        return new ArrayList<Region>(regions.values());
+    }
+
+    synchronized Map<String, Integer> getStates() {
+        return new HashMap<String, Integer>(states);
+    }
+
+    /*
+     * Stores the region, unless its record would exceed MAX_RECORD_LENGTH. load() takes a longer
+     * record for a torn one and drops everything after it, so such a region is not persisted and
+     * a stored region with the same identifier is removed. Returns whether the region was stored.
+     */
+    synchronized boolean putRegion(Region region) {
+        try {
+            beginRecord(RECORD_REGION);
+            writeRegion(recordOut, region);
+        } catch (IOException e) {
+            // an identifier too long for writeUTF()
+            record.reset();
+        }
+        if (record.size() == 0 || record.size() > MAX_RECORD_LENGTH) {
+            Log.w(TAG, "Not storing region " + region.getUniqueId() + ", it exceeds " + MAX_RECORD_LENGTH + " bytes");
+            removeRegion(region.getUniqueId());
+            return false;
+        }
+
+        regions.put(region.getUniqueId(), region);
+        states.remove(region.getUniqueId());
+        try {
+            endRecord();
+        } catch (IOException e) {
+            rewriteRequired = true;
+        }
+        return true;
+    }
+
+    synchronized void removeRegion(String uniqueId) {
+        if (regions.remove(uniqueId) == null) {
+            return;
+        }
+        states.remove(uniqueId);
+        try {
+            beginRecord(RECORD_REMOVE);
+            recordOut.writeUTF(uniqueId);
+            endRecord();
+        } catch (IOException e) {
+            rewriteRequired = true;
+        }
+    }
+
+    synchronized void putState(String uniqueId, int state) {
+        if (!regions.containsKey(uniqueId)) {
+            return;
+        }
+        Integer previous = states.put(uniqueId, state);
+        if (previous != null && previous == state) {
+            return;
+        }
+        try {
+            beginRecord(RECORD_STATE);
+            recordOut.writeUTF(uniqueId);
+            recordOut.writeByte(state);
+            endRecord();
+        } catch (IOException e) {
+            rewriteRequired = true;
+        }
+    }
+
+    synchronized void clearStates() {
+        if (states.isEmpty()) {
+            return;
+        }
+        states.clear();
+        try {
+            beginRecord(RECORD_CLEAR_STATES);
+            endRecord();
+        } catch (IOException e) {
+            rewriteRequired = true;
+        }
+    }
+
+    /*
+     * Writes the pending changes and stops the writer thread once they are written.
+     */
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        writer.execute(flushTask);
+        writer.shutdown();
+    }
+
+    /*
+     * Waits until close() has written the pending changes, returns false on timeout.
+     */
+    boolean awaitClosed(long timeout, TimeUnit unit) throws InterruptedException {
+        return writer.awaitTermination(timeout, unit);
+    }
+
+    private void beginRecord(byte type) throws IOException {
+        record.reset();
+        recordOut.writeByte(type);
+    }
+
+    private void endRecord() throws IOException {
+        writeRecordTo(pendingOut);
+        recordCount++;
+
+        if (!flushScheduled && !closed) {
+            flushScheduled = true;
+            writer.schedule(flushTask, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Runs on the writer thread.
+    private void flushNow() {
+        byte[] data;
+        boolean rewrite;
+        synchronized (this) {
+            flushScheduled = false;
+            rewrite = rewriteRequired
+                    || (recordCount >= MIN_RECORDS_TO_COMPACT && recordCount > 2 * (regions.size() + states.size() + 1));
+            if (rewrite) {
+                data = snapshot();
+            } else if (pending.size() > 0) {
+                data = pending.toByteArray();
+            } else {
+                return;
+            }
+            pending.reset();
+            rewriteRequired = false;
+        }
+
+        try {
+            if (rewrite) {
+                rewrite(data);
+            } else {
+                append(data);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write region store " + file + ": " + e.getMessage());
+            synchronized (this) {
+                // the next flush writes everything again
+                rewriteRequired = true;
+            }
+        }
+    }
+
+    // Encodes the current content as a complete file. Must be called while holding the lock.
+    private byte[] snapshot() {
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(snapshot);
+        int count = 0;
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            for (Region region : regions.values()) {
+                beginRecord(RECORD_REGION);
+                writeRegion(recordOut, region);
+                writeRecordTo(out);
+                count++;
+
+                Integer state = states.get(region.getUniqueId());
+                if (state != null) {
+                    beginRecord(RECORD_STATE);
+                    recordOut.writeUTF(region.getUniqueId());
+                    recordOut.writeByte(state);
+                    writeRecordTo(out);
+                    count++;
+                }
+            }
+        } catch (IOException e) {
+            // not thrown by in memory streams
+            throw new IllegalStateException(e);
+        }
+        recordCount = count;
+        return snapshot.toByteArray();
+    }
+
+    // Frames the record built since beginRecord() with its length and checksum.
+    private void writeRecordTo(DataOutputStream out) throws IOException {
+        crc.reset();
+        crc.update(record.toByteArray());
+        out.writeInt(record.size());
+        record.writeTo(out);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private void append(byte[] data) throws IOException {
+        boolean newFile = !file.exists() || file.length() == 0;
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            if (newFile) {
+                DataOutputStream header = new DataOutputStream(out);
+                header.writeInt(MAGIC);
+                header.writeByte(VERSION);
+            }
+            out.write(data);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void rewrite(byte[] data) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(data);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private void truncate(long length) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(length);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not truncate region store " + file + ": " + e.getMessage());
+            rewriteRequired = true;
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    private void apply(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case RECORD_REGION:
+                Region region = readRegion(in);
+                regions.put(region.getUniqueId(), region);
+                states.remove(region.getUniqueId());
+                break;
+            case RECORD_REMOVE:
+                String removed = in.readUTF();
+                regions.remove(removed);
+                states.remove(removed);
+                break;
+            case RECORD_STATE:
+                String uniqueId = in.readUTF();
+                int state = in.readByte();
+                if (regions.containsKey(uniqueId)) {
+                    states.put(uniqueId, state);
+                }
+                break;
+            case RECORD_CLEAR_STATES:
+                states.clear();
+                break;
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    private static void writeRegion(DataOutputStream out, Region region) throws IOException {
+        out.writeUTF(region.getUniqueId());
+        writeIdentifier(out, region.getId1());
+        writeIdentifier(out, region.getId2());
+        writeIdentifier(out, region.getId3());
+    }
+
+    private static Region readRegion(DataInputStream in) throws IOException {
+        String uniqueId = in.readUTF();
+        Identifier id1 = readIdentifier(in);
+        Identifier id2 = readIdentifier(in);
+        Identifier id3 = readIdentifier(in);
+        return new Region(uniqueId, id1, id2, id3);
+    }
+
+    // An identifier is stored as its length in bytes followed by the bytes, 0 stands for null.
+    static void writeIdentifier(DataOutputStream out, Identifier identifier) throws IOException {
+        if (identifier == null) {
+            out.writeByte(0);
+            return;
+        }
+        byte[] bytes = identifier.toByteArray();
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+
+    static Identifier readIdentifier(DataInputStream in) throws IOException {
+        int length = in.readUnsignedByte();
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return Identifier.fromBytes(bytes, 0, length, false);
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/*
+ * Result of a command returning a list.
+ *
+ * Unless streaming was asked for, the items are collected and end() returns them as a single
+ * array like before. A streamed list is handed over to JS in chunks instead, so neither side
+ * has to keep the whole list in memory: every chunk is sent as {seq, items} on the callback of
+ * the command, kept open until the last chunk. The last chunk additionally holds end: true and
+ * the total count, it is the result returned by the command.
+ */
+class ResultStream {
+
+    static final int DEFAULT_CHUNK_SIZE = 100;
+
+    private final CallbackContext callbackContext;
+    private final boolean streamed;
+    private final int chunkSize;
+    private JSONArray items = new JSONArray();
+    private int seq;
+    private int count;
+
+    private ResultStream(CallbackContext callbackContext, boolean streamed, int chunkSize) {
+        this.callbackContext = callbackContext;
+        this.streamed = streamed;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /*
+     * A result streamed in chunks of the given size.
+     */
+    static ResultStream streamed(CallbackContext callbackContext, int chunkSize) {
+        return new ResultStream(callbackContext, true, chunkSize);
+    }
+
+    /*
+     * A result streamed if the command arguments hold stream: true, in chunks of their chunkSize
+     * or else the default size. Otherwise the result is a single array.
+     */
+    static ResultStream of(JSONObject arguments, CallbackContext callbackContext, int defaultChunkSize) {
+        if (arguments == null || !arguments.optBoolean("stream", false)) {
+            return new ResultStream(callbackContext, false, Integer.MAX_VALUE);
+        }
+        return streamed(callbackContext, arguments.optInt("chunkSize", defaultChunkSize));
+    }
+
+    void put(JSONObject item) throws JSONException {
+        items.put(item);
+        count++;
+        if (streamed && items.length() >= chunkSize) {
+            PluginResult result = new PluginResult(PluginResult.Status.OK, chunk(false));
+            result.setKeepCallback(true);
+            callbackContext.sendPluginResult(result);
+            items = new JSONArray();
+        }
+    }
+
+    /*
+     * The result carrying the last chunk, or all items if not streamed.
+     */
+    PluginResult end() throws JSONException {
+        if (!streamed) {
+            return new PluginResult(PluginResult.Status.OK, items);
+        }
+        return new PluginResult(PluginResult.Status.OK, chunk(true));
+    }
+
+    private JSONObject chunk(boolean end) throws JSONException {
+        JSONObject chunk = new JSONObject();
+        chunk.put("seq", seq++);
+        chunk.put("items", items);
+        if (end) {
+            chunk.put("end", true);
+            chunk.put("count", count);
+        }
+        return chunk;
+    }
+}
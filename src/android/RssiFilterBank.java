@@ -0,0 +1,260 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+import org.altbeacon.beacon.distance.DistanceCalculator;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Smooths the RSSI of each beacon over the ranging cycles of a region and derives the
+ * distance from the smoothed value, so a single noisy packet does not flip the proximity.
+ * The proximity itself is assigned by a ProximityClassifier per region.
+ *
+ * The filter state of a region is kept in primitive arrays indexed by the slot of the beacon
+ * in a BeaconSlotIndex, so updating a known beacon does not allocate. Beacons not seen for
+ * EXPIRY_CYCLES cycles are forgotten and start from scratch when they show up again.
+ * Each region must only be updated from one thread at a time.
+ */
+class RssiFilterBank {
+
+    static final String NONE = "none";
+    static final String KALMAN = "kalman";
+    static final String MEDIAN = "median";
+    static final String ARMA = "arma";
+
+    static final int EXPIRY_CYCLES = 5;
+
+    /*
+     * The smoothed readings of one region after an update, valid until its next update.
+     */
+    static final class Readings {
+        private final BeaconSlotIndex index = new BeaconSlotIndex();
+        private double[] rssis = new double[0];
+        private double[] distances = new double[0];
+        private String[] proximities = new String[0];
+
+        /*
+         * Slot of a beacon of the last update, for rssi() and distance().
+         */
+        int slotOf(Beacon beacon) {
+            return index.find(beacon);
+        }
+
+        double rssi(int slot) {
+            return rssis[slot];
+        }
+
+        /*
+         * Distance estimated from the smoothed RSSI.
+         */
+        double distance(int slot) {
+            return distances[slot];
+        }
+
+        String proximity(int slot) {
+            return proximities[slot];
+        }
+    }
+
+    private static final class RegionFilter {
+        final Readings readings = new Readings();
+        final String type;
+        final int windowSize;
+        ProximityClassifier classifier;
+
+        // kalman and arma: the current estimate, kalman: its error covariance
+        double[] estimates = new double[0];
+        double[] covariances = new double[0];
+
+        // median: ring buffer of windowSize samples per slot
+        int[] samples = new int[0];
+        int[] sampleCounts = new int[0];
+        int[] heads = new int[0];
+        final int[] sorted;
+
+        int[] lastSeen = new int[0];
+        int generation;
+
+        RegionFilter(String type, int windowSize, ProximityClassifier classifier) {
+            this.type = type;
+            this.windowSize = windowSize;
+            this.classifier = classifier;
+            this.sorted = new int[windowSize];
+        }
+
+        void ensureCapacity() {
+            int capacity = readings.index.capacity();
+            if (lastSeen.length < capacity) {
+                readings.rssis = Arrays.copyOf(readings.rssis, capacity);
+                readings.distances = Arrays.copyOf(readings.distances, capacity);
+                readings.proximities = Arrays.copyOf(readings.proximities, capacity);
+                classifier.ensureCapacity(capacity);
+                estimates = Arrays.copyOf(estimates, capacity);
+                covariances = Arrays.copyOf(covariances, capacity);
+                samples = Arrays.copyOf(samples, capacity * windowSize);
+                sampleCounts = Arrays.copyOf(sampleCounts, capacity);
+                heads = Arrays.copyOf(heads, capacity);
+                lastSeen = Arrays.copyOf(lastSeen, capacity);
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<String, RegionFilter> regions = new ConcurrentHashMap<String, RegionFilter>();
+
+    /*
+     * Feeds the RSSI of the beacons into the filters of the region and classifies their
+     * proximity. Returns null if neither smoothing nor a proximity classifier is set, the raw
+     * readings of the beacons apply then.
+     */
+    Readings update(Region region, Collection<Beacon> beacons, RangingOptions options) {
+        String type = options.getFilterType();
+        if (NONE.equals(type) && options.isDefaultProximity()) {
+            return null;
+        }
+
+        int windowSize = options.getFilterWindowSize();
+        RegionFilter filter = regions.get(region.getUniqueId());
+        if (filter == null || !filter.type.equals(type) || filter.windowSize != windowSize) {
+            // a different filter starts from scratch
+            filter = new RegionFilter(type, windowSize, classifierOf(options));
+            regions.put(region.getUniqueId(), filter);
+        } else if (!filter.classifier.hasSameSettings(options.getImmediateThreshold(), options.getNearThreshold(),
+                options.getProximityHysteresis(), options.getProximityMinDwellMs())) {
+            filter.classifier = classifierOf(options);
+            filter.classifier.ensureCapacity(filter.readings.index.capacity());
+        }
+
+        int generation = ++filter.generation;
+        BeaconSlotIndex index = filter.readings.index;
+        DistanceCalculator distanceCalculator = Beacon.getDistanceCalculator();
+        long nowMs = System.nanoTime() / 1000000;
+
+        for (Beacon beacon : beacons) {
+            int slot = index.find(beacon);
+            boolean first = slot == -1;
+            if (first) {
+                slot = index.add(beacon.getId1(), beacon.getId2(), beacon.getId3());
+                filter.ensureCapacity();
+            }
+
+            double distance;
+            if (NONE.equals(type)) {
+                filter.readings.rssis[slot] = beacon.getRssi();
+                distance = beacon.getDistance();
+            } else {
+                double rssi = filter(filter, slot, beacon.getRssi(), first, options);
+                filter.readings.rssis[slot] = rssi;
+                distance = distanceCalculator != null
+                        ? distanceCalculator.calculateDistance(beacon.getTxPower(), rssi)
+                        : beacon.getDistance();
+            }
+            filter.readings.distances[slot] = distance;
+            filter.readings.proximities[slot] = filter.classifier.classify(slot, distance, nowMs);
+            filter.lastSeen[slot] = generation;
+        }
+
+        for (int slot = 0, limit = index.slotLimit(); slot < limit; slot++) {
+            if (index.isUsed(slot) && generation - filter.lastSeen[slot] >= EXPIRY_CYCLES) {
+                index.remove(slot);
+                filter.classifier.forget(slot);
+                filter.readings.proximities[slot] = null;
+            }
+        }
+
+        return filter.readings;
+    }
+
+    private static ProximityClassifier classifierOf(RangingOptions options) {
+        return new ProximityClassifier(options.getImmediateThreshold(), options.getNearThreshold(),
+                options.getProximityHysteresis(), options.getProximityMinDwellMs());
+    }
+
+    void forget(Region region) {
+        regions.remove(region.getUniqueId());
+    }
+
+    void clear() {
+        regions.clear();
+    }
+
+    private static double filter(RegionFilter filter, int slot, int rssi, boolean first, RangingOptions options) {
+        if (KALMAN.equals(filter.type)) {
+            return kalman(filter, slot, rssi, first, options.getKalmanProcessNoise(), options.getKalmanMeasurementNoise());
+        } else if (MEDIAN.equals(filter.type)) {
+            return median(filter, slot, rssi, first);
+        } else {
+            return arma(filter, slot, rssi, first, options.getArmaCoefficient());
+        }
+    }
+
+    // One dimensional Kalman filter assuming the RSSI stays constant between samples
+    private static double kalman(RegionFilter filter, int slot, int rssi, boolean first, double processNoise, double measurementNoise) {
+        if (first) {
+            filter.estimates[slot] = rssi;
+            filter.covariances[slot] = measurementNoise;
+            return rssi;
+        }
+        double covariance = filter.covariances[slot] + processNoise;
+        double gain = covariance / (covariance + measurementNoise);
+        double estimate = filter.estimates[slot] + gain * (rssi - filter.estimates[slot]);
+        filter.estimates[slot] = estimate;
+        filter.covariances[slot] = (1 - gain) * covariance;
+        return estimate;
+    }
+
+    // Median of the last windowSize samples
+    private static double median(RegionFilter filter, int slot, int rssi, boolean first) {
+        int windowSize = filter.windowSize;
+        int offset = slot * windowSize;
+        if (first) {
+            filter.sampleCounts[slot] = 0;
+            filter.heads[slot] = 0;
+        }
+
+        filter.samples[offset + filter.heads[slot]] = rssi;
+        filter.heads[slot] = (filter.heads[slot] + 1) % windowSize;
+        int count = Math.min(filter.sampleCounts[slot] + 1, windowSize);
+        filter.sampleCounts[slot] = count;
+
+        // insertion sort of the window, it only holds a handful of samples
+        int[] sorted = filter.sorted;
+        for (int i = 0; i < count; i++) {
+            int sample = filter.samples[offset + i];
+            int j = i;
+            while (j > 0 && sorted[j - 1] > sample) {
+                sorted[j] = sorted[j - 1];
+                j--;
+            }
+            sorted[j] = sample;
+        }
+        return (count & 1) == 1 ? sorted[count / 2] : (sorted[count / 2 - 1] + sorted[count / 2]) / 2.0;
+    }
+
+    // Same auto regressive moving average as the ArmaRssiFilter of AltBeacon
+    private static double arma(RegionFilter filter, int slot, int rssi, boolean first, double coefficient) {
+        double estimate = first ? rssi : filter.estimates[slot] - coefficient * (filter.estimates[slot] - rssi);
+        filter.estimates[slot] = estimate;
+        return estimate;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Options of the adaptive scan scheduler, persisted so the background service applies them
+ * again after a restart.
+ */
+class ScanOptions {
+
+    static final long DEFAULT_FOREGROUND_FLOOR_MS = 1000;
+    static final long DEFAULT_FOREGROUND_CEILING_MS = 15000;
+    static final long DEFAULT_BACKGROUND_FLOOR_MS = 10000;
+    static final long DEFAULT_BACKGROUND_CEILING_MS = 300000;
+    static final double DEFAULT_BACKOFF_MULTIPLIER = 2.0;
+
+    private static final String PREFERENCES_KEY = "scanOptions";
+
+    // The original JSON object
+    private JSONObject options = new JSONObject();
+
+    private JSONObject foreground = new JSONObject();
+    private JSONObject background = new JSONObject();
+
+    private final SharedPreferences preferences;
+
+    /**
+     * Constructor, restores the options saved the last time.
+     *
+     * @param context
+     *      Application context
+     */
+    ScanOptions(Context context) {
+        preferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        String scanOptions = preferences.getString(PREFERENCES_KEY, "");
+        if (!scanOptions.isEmpty()) {
+            try {
+                set(new JSONObject(scanOptions));
+            } catch (JSONException e) {
+                Log.w(LocationManager.TAG, "Ignoring saved scan options: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Replaces the options and saves them for the next time around.
+     *
+     * @param options
+     *      JSON properties
+     */
+    ScanOptions parseAndSave(JSONObject options) {
+        set(options != null ? options : new JSONObject());
+
+        SharedPreferences.Editor editor = preferences.edit();
+        editor.putString(PREFERENCES_KEY, toString());
+        editor.commit();
+
+        return this;
+    }
+
+    /**
+     * Whether the scan periods are adapted to the activity at all.
+     */
+    boolean isAdaptive() {
+        return options.optBoolean("adaptive", false);
+    }
+
+    /**
+     * Shortest time between two foreground scans.
+     */
+    long getForegroundFloorMs() {
+        return Math.max(0, foreground.optLong("floorMs", DEFAULT_FOREGROUND_FLOOR_MS));
+    }
+
+    /**
+     * Longest time between two foreground scans.
+     */
+    long getForegroundCeilingMs() {
+        return Math.max(getForegroundFloorMs(), foreground.optLong("ceilingMs", DEFAULT_FOREGROUND_CEILING_MS));
+    }
+
+    /**
+     * Shortest time between two background scans.
+     */
+    long getBackgroundFloorMs() {
+        return Math.max(0, background.optLong("floorMs", DEFAULT_BACKGROUND_FLOOR_MS));
+    }
+
+    /**
+     * Longest time between two background scans.
+     */
+    long getBackgroundCeilingMs() {
+        return Math.max(getBackgroundFloorMs(), background.optLong("ceilingMs", DEFAULT_BACKGROUND_CEILING_MS));
+    }
+
+    /**
+     * Factor the time between scans grows by with every quiet scan cycle.
+     */
+    double getBackoffMultiplier() {
+        return Math.max(1.0, options.optDouble("backoffMultiplier", DEFAULT_BACKOFF_MULTIPLIER));
+    }
+
+    private void set(JSONObject options) {
+        this.options = options;
+        JSONObject foreground = options.optJSONObject("foreground");
+        JSONObject background = options.optJSONObject("background");
+        this.foreground = foreground != null ? foreground : new JSONObject();
+        this.background = background != null ? background : new JSONObject();
+    }
+
+    /**
+     * JSON object as string.
+     */
+    public String toString() {
+        return options.toString();
+    }
+}
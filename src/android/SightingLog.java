@@ -0,0 +1,371 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import android.util.Log;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/*
+ * Append only log of ranging results, written by the background service while no WebView
+ * is around to receive them.
+ *
+ * Each ranging cycle becomes one record framed by its length and a CRC32 like the records of
+ * the RegionStore, so a record torn by the process being killed is skipped when reading.
+ * Records are collected for FLUSH_DELAY_MS and appended in one go on a background thread.
+ * Once the current file would grow beyond maxFileBytes the next one is started, and only
+ * the newest maxFiles files are kept, which bounds the space taken on disk.
+ *
+ * seal() closes the current file so the files returned can be read and deleted while new
+ * records go to a new file.
+ */
+class SightingLog {
+
+    private static final String TAG = "com.unarin.beacon";
+
+    private static final int MAGIC = 0x5347544c; // "SGTL"
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = 5;
+    private static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+    private static final String FILE_PREFIX = "sightings-";
+    private static final String FILE_SUFFIX = ".log";
+    private static final long FLUSH_DELAY_MS = 5000;
+
+    private final File directory;
+    private final ScheduledExecutorService writer =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("LocationManager-sighting-log"));
+
+    private volatile long maxFileBytes;
+    private volatile int maxFiles;
+
+    // records appended but not written yet
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+    private boolean flushScheduled;
+    private boolean closed;
+
+    // the file appended to, only used on the writer thread
+    private long sequence;
+    private long currentLength;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushNow();
+        }
+    };
+
+    SightingLog(File directory, long maxFileBytes, int maxFiles) {
+        this.directory = directory;
+        setLimits(maxFileBytes, maxFiles);
+
+        // a file left by a killed process may end with a torn record, so always start a new one
+        List<File> files = listFiles();
+        if (!files.isEmpty()) {
+            sequence = sequenceOf(files.get(files.size() - 1)) + 1;
+        }
+    }
+
+    void setLimits(long maxFileBytes, int maxFiles) {
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+    }
+
+    /*
+     * Appends the beacons ranged in the region, cycles without any beacon are not recorded.
+     */
+    synchronized void append(Region region, Collection<Beacon> beacons, long time) {
+        if (closed || beacons.isEmpty()) {
+            return;
+        }
+
+        try {
+            record.reset();
+            recordOut.writeLong(time);
+            recordOut.writeUTF(region.getUniqueId());
+            recordOut.writeShort(beacons.size());
+            for (Beacon beacon : beacons) {
+                RegionStore.writeIdentifier(recordOut, beacon.getId1());
+                RegionStore.writeIdentifier(recordOut, beacon.getId2());
+                RegionStore.writeIdentifier(recordOut, beacon.getId3());
+                recordOut.writeByte(beacon.getRssi());
+                recordOut.writeByte(beacon.getTxPower());
+            }
+            if (record.size() > MAX_RECORD_LENGTH || beacons.size() > 0xffff) {
+                Log.w(TAG, "Not recording " + beacons.size() + " beacons of region " + region.getUniqueId());
+                return;
+            }
+
+            crc.reset();
+            crc.update(record.toByteArray());
+            pendingOut.writeInt(record.size());
+            record.writeTo(pendingOut);
+            pendingOut.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            // not thrown by in memory streams
+            throw new IllegalStateException(e);
+        }
+
+        if (!flushScheduled) {
+            flushScheduled = true;
+            writer.schedule(flushTask, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*
+     * Writes the pending records, closes the current file and returns all files written so far,
+     * oldest first. Records appended afterwards go to a new file.
+     */
+    List<File> seal() throws IOException {
+        try {
+            return writer.submit(new Callable<List<File>>() {
+                @Override
+                public List<File> call() {
+                    flushNow();
+                    List<File> files = listFiles();
+                    sequence++;
+                    currentLength = 0;
+                    return files;
+                }
+            }).get();
+        } catch (RejectedExecutionException e) {
+            // closed, nothing is written any more
+            return listFiles();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sealing the sighting log");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not seal the sighting log: " + e.getCause());
+        }
+    }
+
+    void delete(List<File> files) {
+        for (File file : files) {
+            if (!file.delete() && file.exists()) {
+                Log.w(TAG, "Could not delete " + file);
+            }
+        }
+    }
+
+    int getFileCount() {
+        return listFiles().size();
+    }
+
+    long getSizeOnDisk() {
+        long size = 0;
+        for (File file : listFiles()) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    /*
+     * Writes the pending records and stops the writer thread once they are written.
+     */
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        writer.execute(flushTask);
+        writer.shutdown();
+    }
+
+    /*
+     * Reads the records of a file, stopping at the first incomplete or damaged record. Each
+     * record is put into the result as {time, region, beacons: [{uuid, major, minor, rssi, tx}]}.
+     */
+    static int read(File file, ResultStream result) throws IOException, JSONException {
+        int count = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                Log.w(TAG, "Ignoring unknown sighting log " + file);
+                return 0;
+            }
+
+            byte[] buffer = new byte[MAX_RECORD_LENGTH];
+            CRC32 checksum = new CRC32();
+            while (true) {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                    break;
+                }
+                in.readFully(buffer, 0, length);
+                checksum.reset();
+                checksum.update(buffer, 0, length);
+                if ((int) checksum.getValue() != in.readInt()) {
+                    break;
+                }
+
+                result.put(readRecord(new DataInputStream(new ByteArrayInputStream(buffer, 0, length))));
+                count++;
+            }
+        } catch (EOFException e) {
+            // end of the file or a record torn by a crash
+        } finally {
+            RegionStore.closeQuietly(in);
+        }
+        return count;
+    }
+
+    private static JSONObject readRecord(DataInputStream in) throws IOException, JSONException {
+        JSONObject record = new JSONObject();
+        record.put("time", in.readLong());
+        record.put("region", in.readUTF());
+
+        int count = in.readUnsignedShort();
+        JSONArray beacons = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            JSONObject beacon = new JSONObject();
+            RegionJson.putIdentifier(beacon, "uuid", RegionStore.readIdentifier(in));
+            RegionJson.putIdentifier(beacon, "major", RegionStore.readIdentifier(in));
+            RegionJson.putIdentifier(beacon, "minor", RegionStore.readIdentifier(in));
+            beacon.put("rssi", in.readByte());
+            beacon.put("tx", in.readByte());
+            beacons.put(beacon);
+        }
+        record.put("beacons", beacons);
+        return record;
+    }
+
+    // Runs on the writer thread.
+    private void flushNow() {
+        byte[] data;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.size() == 0) {
+                return;
+            }
+            data = pending.toByteArray();
+            pending.reset();
+        }
+
+        try {
+            if (currentLength > HEADER_LENGTH && currentLength + data.length > maxFileBytes) {
+                sequence++;
+                currentLength = 0;
+            }
+            append(fileOf(sequence), data);
+            deleteOldFiles();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write sighting log: " + e.getMessage());
+        }
+    }
+
+    private void append(File file, byte[] data) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        FileOutputStream out = new FileOutputStream(file, currentLength > 0);
+        try {
+            if (currentLength == 0) {
+                DataOutputStream header = new DataOutputStream(out);
+                header.writeInt(MAGIC);
+                header.writeByte(VERSION);
+            }
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        currentLength = file.length();
+    }
+
+    private void deleteOldFiles() {
+        List<File> files = listFiles();
+        for (int i = 0, excess = files.size() - maxFiles; i < excess; i++) {
+            if (!files.get(i).delete()) {
+                Log.w(TAG, "Could not delete " + files.get(i));
+            }
+        }
+    }
+
+    private File fileOf(long sequence) {
+        return new File(directory, FILE_PREFIX + sequence + FILE_SUFFIX);
+    }
+
+    // The log files ordered from the oldest to the newest.
+    private List<File> listFiles() {
+        ArrayList<File> files = new ArrayList<File>();
+        File[] candidates = directory.listFiles();
+        if (candidates == null) {
+            return files;
+        }
+        for (File file : candidates) {
+            if (sequenceOf(file) >= 0) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long sa = sequenceOf(a);
+                long sb = sequenceOf(b);
+                return sa < sb ? -1 : (sa == sb ? 0 : 1);
+            }
+        });
+        return files;
+    }
+
+    private static long sequenceOf(File file) {
+        String name = file.getName();
+        if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.Region;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/*
+ * Keeps the most recent beacon sightings of all ranged regions in a fixed size ring, so
+ * questions like "which beacons were seen in the last 10 minutes and for how long" can be
+ * answered on the device.
+ *
+ * The ring is stored column wise in primitive arrays: the time, the beacon and the RSSI of
+ * each sighting, 13 bytes in total. Beacons are referenced by their slot in a BeaconSlotIndex,
+ * a slot is released once the last sighting referencing it is overwritten. Once the ring is
+ * full every new sighting replaces the oldest one.
+ *
+ * A beacon ranged in several overlapping regions is recorded once per region.
+ */
+final class SightingStore {
+
+    private final long[] times;
+    private final int[] slots;
+    private final byte[] rssis;
+    private int next;
+    private int size;
+
+    private final BeaconSlotIndex index = new BeaconSlotIndex();
+    // number of sightings in the ring per beacon slot
+    private int[] references = new int[0];
+
+    // per beacon slot accumulators of a query, reused by the next one
+    private long[] firstSeen = new long[0];
+    private long[] lastSeen = new long[0];
+    private long[] dwellTimes = new long[0];
+    private long[] rssiSums = new long[0];
+    private int[] counts = new int[0];
+    private int[] touched = new int[0];
+
+    SightingStore(int capacity) {
+        capacity = Math.max(1, capacity);
+        times = new long[capacity];
+        slots = new int[capacity];
+        rssis = new byte[capacity];
+    }
+
+    synchronized void record(Collection<Beacon> beacons, long time) {
+        for (Beacon beacon : beacons) {
+            int slot = index.find(beacon);
+            if (slot == -1) {
+                slot = index.add(beacon.getId1(), beacon.getId2(), beacon.getId3());
+                ensureCapacity();
+            }
+
+            // referenced before the oldest sighting is released, it may be of the same beacon
+            references[slot]++;
+            if (size == times.length) {
+                release(slots[next]);
+            } else {
+                size++;
+            }
+            times[next] = time;
+            slots[next] = slot;
+            rssis[next] = (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, beacon.getRssi()));
+            next = (next + 1) % times.length;
+        }
+    }
+
+    /*
+     * Aggregates the sightings since the given time per beacon, optionally only of the beacons
+     * matching the region. Two consecutive sightings of a beacon at most maxGapMs apart count
+     * towards its dwell time. Returns the aggregate of each beacon, to be handed over by the
+     * caller after the lock needed by record() is released.
+     */
+    synchronized List<JSONObject> query(long since, Region region, long maxGapMs) throws JSONException {
+        int capacity = times.length;
+
+        // every sighting is checked, the wall clock may have been changed since it was recorded
+        int touchedCount = 0;
+        for (int i = (next - size + capacity) % capacity, n = 0; n < size; i = (i + 1) % capacity, n++) {
+            long time = times[i];
+            if (time < since) {
+                continue;
+            }
+            int slot = slots[i];
+            if (counts[slot] == 0) {
+                touched[touchedCount++] = slot;
+                firstSeen[slot] = time;
+                lastSeen[slot] = time;
+                dwellTimes[slot] = 0;
+                rssiSums[slot] = 0;
+            } else if (time >= lastSeen[slot] && time - lastSeen[slot] <= maxGapMs) {
+                dwellTimes[slot] += time - lastSeen[slot];
+            }
+            firstSeen[slot] = Math.min(firstSeen[slot], time);
+            lastSeen[slot] = Math.max(lastSeen[slot], time);
+            rssiSums[slot] += rssis[i];
+            counts[slot]++;
+        }
+
+        List<JSONObject> result = new ArrayList<JSONObject>(touchedCount);
+        try {
+            for (int i = 0; i < touchedCount; i++) {
+                int slot = touched[i];
+                if (region == null || matches(region, slot)) {
+                    result.add(sightingsOf(slot));
+                }
+            }
+        } finally {
+            for (int i = 0; i < touchedCount; i++) {
+                counts[touched[i]] = 0;
+            }
+        }
+        return result;
+    }
+
+    synchronized void clear() {
+        index.clear();
+        Arrays.fill(references, 0);
+        next = 0;
+        size = 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    int capacity() {
+        return times.length;
+    }
+
+    private JSONObject sightingsOf(int slot) throws JSONException {
+        JSONObject json = new JSONObject();
+        RegionJson.putIdentifier(json, "uuid", index.id1(slot));
+        RegionJson.putIdentifier(json, "major", index.id2(slot));
+        RegionJson.putIdentifier(json, "minor", index.id3(slot));
+        json.put("firstSeen", firstSeen[slot]);
+        json.put("lastSeen", lastSeen[slot]);
+        json.put("sightings", counts[slot]);
+        json.put("meanRssi", Math.round(rssiSums[slot] * 100.0 / counts[slot]) / 100.0);
+        json.put("dwellTime", dwellTimes[slot]);
+        return json;
+    }
+
+    private boolean matches(Region region, int slot) {
+        return matches(region.getId1(), index.id1(slot))
+                && matches(region.getId2(), index.id2(slot))
+                && matches(region.getId3(), index.id3(slot));
+    }
+
+    private static boolean matches(Identifier regionIdentifier, Identifier identifier) {
+        return regionIdentifier == null || regionIdentifier.equals(identifier);
+    }
+
+    private void release(int slot) {
+        if (--references[slot] == 0) {
+            index.remove(slot);
+        }
+    }
+
+    private void ensureCapacity() {
+        int capacity = index.capacity();
+        if (references.length < capacity) {
+            references = Arrays.copyOf(references, capacity);
+            firstSeen = Arrays.copyOf(firstSeen, capacity);
+            lastSeen = Arrays.copyOf(lastSeen, capacity);
+            dwellTimes = Arrays.copyOf(dwellTimes, capacity);
+            rssiSums = Arrays.copyOf(rssiSums, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            touched = Arrays.copyOf(touched, capacity);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import java.util.concurrent.Executor;
+
+/*
+ * Event executor spreading the events over several lanes, each a single threaded
+ * PausableThreadPoolExecutor with its own DispatchQueue.
+ *
+ * All events of a stripe, the unique id of their region, take the same lane and so reach the DOM
+ * in order, while the payloads of different regions are built in parallel. Events without a
+ * stripe take the first lane, in order among themselves. Pausing pauses all lanes.
+ */
+class StripedDispatcher implements Executor {
+
+    private final DispatchQueue[] queues;
+    private final PausableThreadPoolExecutor[] lanes;
+
+    /*
+     * The capacity is shared evenly by the lanes.
+     */
+    StripedDispatcher(int laneCount, int capacity) {
+        laneCount = Math.max(1, laneCount);
+        int laneCapacity = Math.max(1, (capacity + laneCount - 1) / laneCount);
+
+        queues = new DispatchQueue[laneCount];
+        lanes = new PausableThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            queues[i] = new DispatchQueue(laneCapacity);
+            lanes[i] = new PausableThreadPoolExecutor(queues[i]);
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        lanes[0].execute(task);
+    }
+
+    void execute(String stripe, Runnable task) {
+        lanes[laneOf(stripe)].execute(task);
+    }
+
+    int laneOf(String stripe) {
+        if (stripe == null || lanes.length == 1) {
+            return 0;
+        }
+        int hash = stripe.hashCode();
+        hash ^= hash >>> 16;
+        return (hash & 0x7fffffff) % lanes.length;
+    }
+
+    int getLaneCount() {
+        return lanes.length;
+    }
+
+    boolean isPaused() {
+        return lanes[0].isPaused();
+    }
+
+    void pause() {
+        for (PausableThreadPoolExecutor lane : lanes) {
+            lane.pause();
+        }
+    }
+
+    void resume() {
+        for (PausableThreadPoolExecutor lane : lanes) {
+            lane.resume();
+        }
+    }
+
+    /*
+     * See PausableThreadPoolExecutor.setDrainOnResume().
+     */
+    void setDrainOnResume(boolean drainOnResume) {
+        for (PausableThreadPoolExecutor lane : lanes) {
+            lane.setDrainOnResume(drainOnResume);
+        }
+    }
+
+    void shutdown() {
+        for (PausableThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    void shutdownNow() {
+        for (PausableThreadPoolExecutor lane : lanes) {
+            lane.shutdownNow();
+        }
+    }
+
+    // Number of queued events of all lanes
+    int size() {
+        int size = 0;
+        for (DispatchQueue queue : queues) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    int getCapacity() {
+        int capacity = 0;
+        for (DispatchQueue queue : queues) {
+            capacity += queue.getCapacity();
+        }
+        return capacity;
+    }
+
+    long getDroppedCount() {
+        long dropped = 0;
+        for (DispatchQueue queue : queues) {
+            dropped += queue.getDroppedCount();
+        }
+        return dropped;
+    }
+
+    // Sum of the peak sizes of the lanes, an upper bound of the peak number of queued events
+    int getPeakSize() {
+        int peakSize = 0;
+        for (DispatchQueue queue : queues) {
+            peakSize += queue.getPeakSize();
+        }
+        return peakSize;
+    }
+
+    void resetPeakSize() {
+        for (DispatchQueue queue : queues) {
+            queue.resetPeakSize();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Selects the k strongest or nearest beacons of each ranging result of a region and tells
+ * whether they differ, in membership or order, from the ones selected last.
+ *
+ * The selection keeps a min-heap of at most k beacons while walking the result, so a result of
+ * n beacons costs O(n log k) and allocates nothing but the returned list. Smoothed readings, if
+ * given, are ranked instead of the raw ones. Equal scores are ordered by the hash code of the
+ * beacons, so ties do not swap places from one result to the next.
+ * Each region must only be updated from one thread at a time.
+ */
+class TopKTracker {
+
+    static final String BY_RSSI = "rssi";
+    static final String BY_ACCURACY = "accuracy";
+
+    private static final class RegionState {
+        // min-heap of the selection, the weakest beacon at the root
+        Beacon[] heap = new Beacon[0];
+        double[] scores = new double[0];
+        int size;
+
+        // the new selection taken from the heap, best first
+        Beacon[] ordered = new Beacon[0];
+
+        // the last selection, best first
+        Beacon[] selected = new Beacon[0];
+        int selectedCount;
+
+        void ensureCapacity(int k) {
+            if (heap.length < k) {
+                heap = Arrays.copyOf(heap, k);
+                scores = Arrays.copyOf(scores, k);
+                ordered = Arrays.copyOf(ordered, k);
+                selected = Arrays.copyOf(selected, k);
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<String, RegionState> regions = new ConcurrentHashMap<String, RegionState>();
+
+    /*
+     * The k best beacons of the result, best first, or null if they are the same as last time.
+     */
+    List<Beacon> update(Region region, Collection<Beacon> beacons, int k, String by, RssiFilterBank.Readings readings) {
+        RegionState state = regions.get(region.getUniqueId());
+        if (state == null) {
+            state = new RegionState();
+            regions.put(region.getUniqueId(), state);
+        }
+        state.ensureCapacity(k);
+
+        boolean byAccuracy = BY_ACCURACY.equals(by);
+        state.size = 0;
+        for (Beacon beacon : beacons) {
+            double score = scoreOf(beacon, byAccuracy, readings);
+            if (state.size < k) {
+                state.heap[state.size] = beacon;
+                state.scores[state.size] = score;
+                siftUp(state, state.size++);
+            } else if (k > 0 && isBetter(beacon, score, state.heap[0], state.scores[0])) {
+                state.heap[0] = beacon;
+                state.scores[0] = score;
+                siftDown(state, 0);
+            }
+        }
+
+        // popping the min-heap yields the weakest first, so the selection is filled from the back
+        int count = state.size;
+        Beacon[] ordered = state.ordered;
+        while (state.size > 0) {
+            ordered[state.size - 1] = state.heap[0];
+            state.size--;
+            state.heap[0] = state.heap[state.size];
+            state.scores[0] = state.scores[state.size];
+            state.heap[state.size] = null;
+            siftDown(state, 0);
+        }
+
+        boolean unchanged = count == state.selectedCount && equal(ordered, state.selected, count);
+        List<Beacon> selection = null;
+        if (!unchanged) {
+            selection = new ArrayList<Beacon>(count);
+            for (int i = 0; i < count; i++) {
+                selection.add(ordered[i]);
+            }
+            System.arraycopy(ordered, 0, state.selected, 0, count);
+            if (count < state.selectedCount) {
+                Arrays.fill(state.selected, count, state.selectedCount, null);
+            }
+            state.selectedCount = count;
+        }
+        Arrays.fill(ordered, 0, count, null);
+        return selection;
+    }
+
+    void forget(Region region) {
+        regions.remove(region.getUniqueId());
+    }
+
+    void clear() {
+        regions.clear();
+    }
+
+    // Higher is better
+    private static double scoreOf(Beacon beacon, boolean byAccuracy, RssiFilterBank.Readings readings) {
+        int slot = readings != null ? readings.slotOf(beacon) : -1;
+        if (byAccuracy) {
+            return -(slot != -1 ? readings.distance(slot) : beacon.getDistance());
+        }
+        return slot != -1 ? readings.rssi(slot) : beacon.getRssi();
+    }
+
+    private static boolean isBetter(Beacon a, double scoreA, Beacon b, double scoreB) {
+        if (scoreA != scoreB) {
+            return scoreA > scoreB;
+        }
+        return a.hashCode() > b.hashCode();
+    }
+
+    private static void siftUp(RegionState state, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!isBetter(state.heap[parent], state.scores[parent], state.heap[i], state.scores[i])) {
+                return;
+            }
+            swap(state, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(RegionState state, int i) {
+        while (true) {
+            int weakest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < state.size && isBetter(state.heap[weakest], state.scores[weakest], state.heap[left], state.scores[left])) {
+                weakest = left;
+            }
+            if (right < state.size && isBetter(state.heap[weakest], state.scores[weakest], state.heap[right], state.scores[right])) {
+                weakest = right;
+            }
+            if (weakest == i) {
+                return;
+            }
+            swap(state, i, weakest);
+            i = weakest;
+        }
+    }
+
+    private static void swap(RegionState state, int i, int j) {
+        Beacon beacon = state.heap[i];
+        state.heap[i] = state.heap[j];
+        state.heap[j] = beacon;
+        double score = state.scores[i];
+        state.scores[i] = state.scores[j];
+        state.scores[j] = score;
+    }
+
+    private static boolean equal(Beacon[] a, Beacon[] b, int count) {
+        for (int i = 0; i < count; i++) {
+            if (!a[i].equals(b[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
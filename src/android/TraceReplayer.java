@@ -0,0 +1,173 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.MonitorNotifier;
+import org.altbeacon.beacon.RangeNotifier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Replays a BeaconTrace into a RangeNotifier and a MonitorNotifier on its own thread, as the
+ * AltBeacon service calls them.
+ *
+ * The events are paced by their times divided by the speed, a speed of 0 replays them as fast
+ * as the notifiers take them. A looped trace restarts after its last event, its times carrying
+ * on from there.
+ */
+class TraceReplayer implements Runnable {
+
+    private static final ThreadFactory THREAD_FACTORY = new DaemonThreadFactory("LocationManager-trace-replay");
+
+    interface Listener {
+        // called on the replay thread, error is null unless the trace could not be read
+        void onReplayEnded(TraceReplayer replayer, Exception error);
+    }
+
+    private final File trace;
+    private final double speed;
+    private final boolean loop;
+    private final RangeNotifier rangeNotifier;
+    private final MonitorNotifier monitorNotifier;
+    private final Listener listener;
+
+    private volatile Thread thread;
+    private volatile boolean stopped;
+    private volatile long eventCount;
+
+    TraceReplayer(File trace, double speed, boolean loop, RangeNotifier rangeNotifier, MonitorNotifier monitorNotifier, Listener listener) {
+        this.trace = trace;
+        this.speed = Math.max(0, speed);
+        this.loop = loop;
+        this.rangeNotifier = rangeNotifier;
+        this.monitorNotifier = monitorNotifier;
+        this.listener = listener;
+    }
+
+    synchronized void start() {
+        if (thread != null) {
+            throw new IllegalStateException("Trace replay already started");
+        }
+        thread = THREAD_FACTORY.newThread(this);
+        thread.start();
+    }
+
+    void stop() {
+        stopped = true;
+        Thread replayThread = thread;
+        if (replayThread != null) {
+            replayThread.interrupt();
+        }
+    }
+
+    /*
+     * Waits for the end of the replay, returns false on timeout.
+     */
+    boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        Thread replayThread = thread;
+        if (replayThread != null) {
+            replayThread.join(Math.max(1, unit.toMillis(timeout)));
+            return !replayThread.isAlive();
+        }
+        return true;
+    }
+
+    boolean isRunning() {
+        Thread replayThread = thread;
+        return replayThread != null && replayThread.isAlive();
+    }
+
+    long getEventCount() {
+        return eventCount;
+    }
+
+    @Override
+    public void run() {
+        Exception error = null;
+        try {
+            long startedAt = System.nanoTime();
+            long offsetMs = 0;
+            do {
+                offsetMs = replayOnce(startedAt, offsetMs);
+            } while (loop && !stopped);
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (Exception e) {
+            error = e;
+        }
+
+        if (listener != null) {
+            listener.onReplayEnded(this, error);
+        }
+    }
+
+    // Replays the trace once, returns the time of its last event
+    private long replayOnce(long startedAt, long offsetMs) throws IOException, InterruptedException {
+        BeaconTrace.TraceReader reader = new BeaconTrace.TraceReader(new InputStreamReader(new FileInputStream(trace), "UTF-8"));
+        long lastMs = offsetMs;
+        try {
+            BeaconTrace.Event event;
+            while (!stopped && (event = reader.next()) != null) {
+                lastMs = offsetMs + event.timeMs;
+                if (speed > 0) {
+                    long dueAt = startedAt + (long) (TimeUnit.MILLISECONDS.toNanos(lastMs) / speed);
+                    long waitNanos = dueAt - System.nanoTime();
+                    if (waitNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    }
+                }
+                deliver(event);
+                eventCount++;
+            }
+        } finally {
+            reader.close();
+        }
+        return lastMs;
+    }
+
+    private void deliver(BeaconTrace.Event event) {
+        switch (event.type) {
+            case BeaconTrace.RANGE:
+                if (rangeNotifier != null) {
+                    rangeNotifier.didRangeBeaconsInRegion(event.beacons, event.region);
+                }
+                break;
+            case BeaconTrace.ENTER:
+                if (monitorNotifier != null) {
+                    monitorNotifier.didEnterRegion(event.region);
+                }
+                break;
+            case BeaconTrace.EXIT:
+                if (monitorNotifier != null) {
+                    monitorNotifier.didExitRegion(event.region);
+                }
+                break;
+            case BeaconTrace.STATE:
+                if (monitorNotifier != null) {
+                    monitorNotifier.didDetermineStateForRegion(event.state, event.region);
+                }
+                break;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.unarin.cordova.beacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * The beacons currently visible in the ranged regions, so the DOM can ask for them at any time
+ * instead of waiting for the next ranging event.
+ *
+ * Each ranging result of a region refreshes the beacons it holds. A beacon missing from more than
+ * maxMissedCycles results of its region in a row is no longer visible. Results of different
+ * regions are indexed independently, a beacon visible in several of them is listed once with its
+ * latest sighting.
+ */
+final class VisibleBeaconIndex {
+
+    static final String SORT_BY_RSSI = "rssi";
+    static final String SORT_BY_ACCURACY = "accuracy";
+    static final String SORT_BY_LAST_SEEN = "lastSeen";
+
+    private static final class Visible {
+        Beacon beacon;
+        String regionId;
+        long lastSeen;
+        int missedCycles;
+
+        Visible(Beacon beacon, String regionId, long lastSeen) {
+            this.beacon = beacon;
+            this.regionId = regionId;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    // The visible beacons of one region, guarded by the instance
+    private static final class RegionBeacons {
+        final HashMap<Beacon, Visible> beacons = new HashMap<Beacon, Visible>();
+    }
+
+    private static final Comparator<Visible> STRONGEST_FIRST = new Comparator<Visible>() {
+        @Override
+        public int compare(Visible a, Visible b) {
+            return b.beacon.getRssi() - a.beacon.getRssi();
+        }
+    };
+
+    private static final Comparator<Visible> NEAREST_FIRST = new Comparator<Visible>() {
+        @Override
+        public int compare(Visible a, Visible b) {
+            return Double.compare(a.beacon.getDistance(), b.beacon.getDistance());
+        }
+    };
+
+    private static final Comparator<Visible> LATEST_FIRST = new Comparator<Visible>() {
+        @Override
+        public int compare(Visible a, Visible b) {
+            return a.lastSeen < b.lastSeen ? 1 : a.lastSeen > b.lastSeen ? -1 : 0;
+        }
+    };
+
+    private final ConcurrentHashMap<String, RegionBeacons> regions = new ConcurrentHashMap<String, RegionBeacons>();
+    private final int maxMissedCycles;
+
+    VisibleBeaconIndex(int maxMissedCycles) {
+        this.maxMissedCycles = Math.max(0, maxMissedCycles);
+    }
+
+    void update(Region region, Collection<Beacon> beacons, long timeMs) {
+        String regionId = region.getUniqueId();
+        RegionBeacons regionBeacons = regions.get(regionId);
+        if (regionBeacons == null) {
+            RegionBeacons added = new RegionBeacons();
+            regionBeacons = regions.putIfAbsent(regionId, added);
+            if (regionBeacons == null) {
+                regionBeacons = added;
+            }
+        }
+
+        synchronized (regionBeacons) {
+            for (Visible visible : regionBeacons.beacons.values()) {
+                visible.missedCycles++;
+            }
+            for (Beacon beacon : beacons) {
+                Visible visible = regionBeacons.beacons.get(beacon);
+                if (visible == null) {
+                    regionBeacons.beacons.put(beacon, new Visible(beacon, regionId, timeMs));
+                } else {
+                    visible.beacon = beacon;
+                    visible.lastSeen = timeMs;
+                    visible.missedCycles = 0;
+                }
+            }
+            for (Iterator<Visible> iterator = regionBeacons.beacons.values().iterator(); iterator.hasNext(); ) {
+                if (iterator.next().missedCycles > maxMissedCycles) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    void forget(Region region) {
+        regions.remove(region.getUniqueId());
+    }
+
+    void clear() {
+        regions.clear();
+    }
+
+    /*
+     * Puts the visible beacons matching the region, all if it is null, into the result. They are
+     * sorted by one of the SORT_BY_ orders and at most limit are put unless limit is 0.
+     */
+    void query(Region region, String sortBy, int limit, ResultStream result) throws JSONException {
+        Comparator<Visible> order = orderOf(sortBy);
+
+        HashMap<Beacon, Visible> latest = new HashMap<Beacon, Visible>();
+        for (RegionBeacons regionBeacons : regions.values()) {
+            synchronized (regionBeacons) {
+                for (Visible visible : regionBeacons.beacons.values()) {
+                    if (region != null && !region.matchesBeacon(visible.beacon)) {
+                        continue;
+                    }
+                    Visible known = latest.get(visible.beacon);
+                    if (known == null || known.lastSeen < visible.lastSeen) {
+                        // copied, the original changes with the next result of its region
+                        latest.put(visible.beacon, new Visible(visible.beacon, visible.regionId, visible.lastSeen));
+                    }
+                }
+            }
+        }
+
+        List<Visible> sorted = new ArrayList<Visible>(latest.values());
+        Collections.sort(sorted, order);
+        int count = limit > 0 ? Math.min(limit, sorted.size()) : sorted.size();
+        for (int i = 0; i < count; i++) {
+            result.put(jsonOf(sorted.get(i)));
+        }
+    }
+
+    private static Comparator<Visible> orderOf(String sortBy) {
+        if (sortBy == null || SORT_BY_RSSI.equals(sortBy)) {
+            return STRONGEST_FIRST;
+        } else if (SORT_BY_ACCURACY.equals(sortBy)) {
+            return NEAREST_FIRST;
+        } else if (SORT_BY_LAST_SEEN.equals(sortBy)) {
+            return LATEST_FIRST;
+        }
+        throw new IllegalArgumentException("Unknown sort order '" + sortBy + "'");
+    }
+
+    private static JSONObject jsonOf(Visible visible) throws JSONException {
+        JSONObject json = RegionJson.mapOfBeacon(visible.beacon, null);
+        json.put("region", visible.regionId);
+        json.put("lastSeen", visible.lastSeen);
+        return json;
+    }
+}
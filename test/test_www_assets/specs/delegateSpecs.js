@@ -29,6 +29,36 @@ describe('Delegate', function() {
         expect(delegate instanceof Delegate).toBe(true);
     });
 
+    it('splits a ranging batch into one call per region by default.', function() {
+        var delegate = new Delegate();
+        var ranged = [];
+        var rangedDelta = [];
+        delegate.didRangeBeaconsInRegion = function(pluginResult) {
+            ranged.push(pluginResult);
+        };
+        delegate.didRangeBeaconsInRegionDelta = function(pluginResult) {
+            rangedDelta.push(pluginResult);
+        };
+
+        var beacon = {uuid: 'e4007ab3-efca-4c89-a106-d4c4ec03dbd2', major: '1', minor: '2', rssi: -60};
+        delegate.didRangeBeaconsInRegionBatch({
+            eventType: 'didRangeBeaconsInRegionBatch',
+            batch: [
+                {region: {identifier: 'first'}, beacons: [beacon]},
+                {region: {identifier: 'second'}, added: [], changed: [beacon], removed: []},
+                {region: {identifier: 'third'}, beacons: []}
+            ]
+        });
+
+        expect(ranged.length).toBe(2);
+        expect(ranged[0]).toEqual({eventType: 'didRangeBeaconsInRegion', region: {identifier: 'first'}, beacons: [beacon]});
+        expect(ranged[1]).toEqual({eventType: 'didRangeBeaconsInRegion', region: {identifier: 'third'}, beacons: []});
+
+        expect(rangedDelta.length).toBe(1);
+        expect(rangedDelta[0]).toEqual({eventType: 'didRangeBeaconsInRegionDelta', region: {identifier: 'second'},
+            added: [], changed: [beacon], removed: []});
+    });
+
 });
 
 
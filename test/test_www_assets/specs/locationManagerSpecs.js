@@ -295,4 +295,164 @@ describe('LocationManager', function() {
 			})
 			.done();
 	});
-});
\ No newline at end of file
+});
+
+describe('LocationManager binary ranging events', function() {
+
+    var UUID = 'e4007ab3-efca-4c89-a106-d4c4ec03dbd2';
+    var EVENT_RANGING = 0, EVENT_RANGING_DELTA = 1, EVENT_RANGING_BATCH = 2;
+    var REGION_UUID = 1, REGION_MAJOR = 2, REGION_MINOR = 4, REGION_SMOOTHED = 8, REGION_DELTA = 16;
+
+    // Writes an event field by field, big endian like the Android RangingBinaryWriter
+    var EventBuilder = function(event, regionCount) {
+        this.bytes = [1, event, regionCount >> 8, regionCount & 0xff];
+    };
+
+    EventBuilder.prototype.uint8 = function(value) {
+        this.bytes.push(value & 0xff);
+        return this;
+    };
+
+    EventBuilder.prototype.uint16 = function(value) {
+        return this.uint8(value >> 8).uint8(value);
+    };
+
+    EventBuilder.prototype.uuid = function(uuid) {
+        var hex = uuid.replace(/-/g, '');
+        for (var i = 0; i < hex.length; i += 2) {
+            this.uint8(parseInt(hex.substr(i, 2), 16));
+        }
+        return this;
+    };
+
+    EventBuilder.prototype.float32 = function(value) {
+        var view = new DataView(new ArrayBuffer(4));
+        view.setFloat32(0, value);
+        for (var i = 0; i < 4; i++) {
+            this.uint8(view.getUint8(i));
+        }
+        return this;
+    };
+
+    // The identifier of a region as its UTF-8 bytes
+    EventBuilder.prototype.region = function(flags, utf8Bytes) {
+        this.uint8(flags).uint16(utf8Bytes.length);
+        for (var i = 0; i < utf8Bytes.length; i++) {
+            this.uint8(utf8Bytes[i]);
+        }
+        return this;
+    };
+
+    EventBuilder.prototype.beacon = function(major, minor, rssi, rawRssi, tx, proximity, accuracy) {
+        return this.uuid(UUID).uint16(major).uint16(minor)
+            .uint8(rssi).uint8(rawRssi).uint8(tx).uint8(proximity).float32(accuracy);
+    };
+
+    EventBuilder.prototype.toArrayBuffer = function() {
+        return new Uint8Array(this.bytes).buffer;
+    };
+
+    // 'beacons' in ASCII
+    var BEACONS_ID = [0x62, 0x65, 0x61, 0x63, 0x6f, 0x6e, 0x73];
+
+    it('decodes the beacons of a region', function() {
+        var buffer = new EventBuilder(EVENT_RANGING, 1)
+            .region(REGION_UUID | REGION_MAJOR, BEACONS_ID).uuid(UUID).uint16(1000)
+            .uint16(2)
+            .beacon(1000, 42, -61, 0, -59, 2, 1.2345)
+            .beacon(1000, 65535, -90, 0, -59, 3, 12.5)
+            .toArrayBuffer();
+
+        var event = locationManager._decodeRangingEvent(buffer);
+
+        expect(event.eventType).toBe('didRangeBeaconsInRegion');
+        expect(event.region).toEqual({identifier: 'beacons', uuid: UUID, major: '1000', typeName: 'BeaconRegion'});
+        expect(event.beacons).toEqual([
+            {uuid: UUID, major: '1000', minor: '42', proximity: 'ProximityNear', rssi: -61, tx: -59, accuracy: 1.23},
+            {uuid: UUID, major: '1000', minor: '65535', proximity: 'ProximityFar', rssi: -90, tx: -59, accuracy: 12.5}
+        ]);
+    });
+
+    it('decodes the raw rssi of smoothed beacons', function() {
+        var buffer = new EventBuilder(EVENT_RANGING, 1)
+            .region(REGION_SMOOTHED, BEACONS_ID)
+            .uint16(1)
+            .beacon(1, 2, -70, -75, -59, 1, 0.5)
+            .toArrayBuffer();
+
+        var event = locationManager._decodeRangingEvent(buffer);
+
+        expect(event.region).toEqual({identifier: 'beacons', typeName: 'BeaconRegion'});
+        expect(event.beacons[0].rssi).toBe(-70);
+        expect(event.beacons[0].rawRssi).toBe(-75);
+        expect(event.beacons[0].proximity).toBe('ProximityImmediate');
+    });
+
+    it('decodes the added, changed and removed beacons of a delta', function() {
+        var buffer = new EventBuilder(EVENT_RANGING_DELTA, 1)
+            .region(REGION_UUID | REGION_DELTA, BEACONS_ID).uuid(UUID)
+            .uint16(1).beacon(1, 1, -60, 0, -59, 2, 1)
+            .uint16(1).beacon(1, 2, -80, 0, -59, 3, 7.25)
+            .uint16(2).uuid(UUID).uint16(1).uint16(3).uuid(UUID).uint16(1).uint16(4)
+            .toArrayBuffer();
+
+        var event = locationManager._decodeRangingEvent(buffer);
+
+        expect(event.eventType).toBe('didRangeBeaconsInRegionDelta');
+        expect(event.region.uuid).toBe(UUID);
+        expect(event.added).toEqual([
+            {uuid: UUID, major: '1', minor: '1', proximity: 'ProximityNear', rssi: -60, tx: -59, accuracy: 1}
+        ]);
+        expect(event.changed).toEqual([
+            {uuid: UUID, major: '1', minor: '2', proximity: 'ProximityFar', rssi: -80, tx: -59, accuracy: 7.25}
+        ]);
+        expect(event.removed).toEqual([
+            {uuid: UUID, major: '1', minor: '3'},
+            {uuid: UUID, major: '1', minor: '4'}
+        ]);
+        expect(event.beacons).toBeUndefined();
+    });
+
+    it('decodes each region of a batch', function() {
+        var buffer = new EventBuilder(EVENT_RANGING_BATCH, 2)
+            .region(REGION_MAJOR | REGION_MINOR, BEACONS_ID).uint16(7).uint16(8)
+            .uint16(1).beacon(7, 8, -50, 0, -59, 1, 0.25)
+            .region(REGION_DELTA | REGION_SMOOTHED, [0x62])
+            .uint16(0)
+            .uint16(1).beacon(3, 4, -66, -68, -59, 2, 2)
+            .uint16(0)
+            .toArrayBuffer();
+
+        var event = locationManager._decodeRangingEvent(buffer);
+
+        expect(event.eventType).toBe('didRangeBeaconsInRegionBatch');
+        expect(event.batch.length).toBe(2);
+
+        expect(event.batch[0].region).toEqual({identifier: 'beacons', major: '7', minor: '8', typeName: 'BeaconRegion'});
+        expect(event.batch[0].beacons).toEqual([
+            {uuid: UUID, major: '7', minor: '8', proximity: 'ProximityImmediate', rssi: -50, tx: -59, accuracy: 0.25}
+        ]);
+
+        expect(event.batch[1].region).toEqual({identifier: 'b', typeName: 'BeaconRegion'});
+        expect(event.batch[1].added).toEqual([]);
+        expect(event.batch[1].changed).toEqual([
+            {uuid: UUID, major: '3', minor: '4', proximity: 'ProximityNear', rssi: -66, rawRssi: -68, tx: -59, accuracy: 2}
+        ]);
+        expect(event.batch[1].removed).toEqual([]);
+    });
+
+    it('decodes a region identifier as UTF-8', function() {
+        // 'Café ☕' in UTF-8
+        var cafe = [0x43, 0x61, 0x66, 0xc3, 0xa9, 0x20, 0xe2, 0x98, 0x95];
+        var buffer = new EventBuilder(EVENT_RANGING, 1)
+            .region(0, cafe)
+            .uint16(0)
+            .toArrayBuffer();
+
+        var event = locationManager._decodeRangingEvent(buffer);
+
+        expect(event.region.identifier).toBe('Café ☕');
+        expect(event.beacons).toEqual([]);
+    });
+
+});
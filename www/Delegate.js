@@ -68,6 +68,20 @@ Delegate.didRangeBeaconsInRegion = function(pluginResult) {
 	pluginResult.region = Regions.fromJson(pluginResult.region);
 };
 
+Delegate.didRangeBeaconsInRegionDelta = function(pluginResult) {
+	pluginResult.region = Regions.fromJson(pluginResult.region);
+};
+
+Delegate.didRangeBeaconsInRegionBatch = function(pluginResult) {
+	_.each(pluginResult.batch, function(entry) {
+		entry.region = Regions.fromJson(entry.region);
+	});
+};
+
+Delegate.didChangeNearestBeacon = function(pluginResult) {
+	pluginResult.region = Regions.fromJson(pluginResult.region);
+};
+
 Delegate.peripheralManagerDidStartAdvertising = function(pluginResult) {
 	pluginResult.region = Regions.fromJson(pluginResult.region);
 };
@@ -80,6 +94,10 @@ Delegate.didChangeAuthorizationStatus = function(status) {
 	
 };
 
+Delegate.didUpdateMetrics = function(pluginResult) {
+
+};
+
 Delegate.safeTraceLogging = function(message) {
 	if (!_.isString(message)) {
 		return;
@@ -120,6 +138,35 @@ Delegate.prototype.didRangeBeaconsInRegion = function() {
 	Delegate.safeTraceLogging('DEFAULT didRangeBeaconsInRegion()');
 };
 
+Delegate.prototype.didRangeBeaconsInRegionDelta = function() {
+	Delegate.safeTraceLogging('DEFAULT didRangeBeaconsInRegionDelta()');
+};
+
+/**
+ * By default a batch is split up into one didRangeBeaconsInRegion (or
+ * didRangeBeaconsInRegionDelta) call per region, so enabling batching does not
+ * require changes to an existing delegate.
+ */
+Delegate.prototype.didRangeBeaconsInRegionBatch = function(pluginResult) {
+	Delegate.safeTraceLogging('DEFAULT didRangeBeaconsInRegionBatch()');
+	var self = this;
+	_.each(pluginResult.batch, function(entry) {
+		if (_.has(entry, 'beacons')) {
+			self.didRangeBeaconsInRegion(_.extend({eventType: 'didRangeBeaconsInRegion'}, entry));
+		} else {
+			self.didRangeBeaconsInRegionDelta(_.extend({eventType: 'didRangeBeaconsInRegionDelta'}, entry));
+		}
+	});
+};
+
+/**
+ * Receives { region, beacon, previous } whenever the nearest beacon of a
+ * ranged region changes, once enabled with the nearest ranging option. beacon
+ * and previous are null while the region has no beacon in sight. (ANDROID ONLY)
+ */
+Delegate.prototype.didChangeNearestBeacon = function() {
+	Delegate.safeTraceLogging('DEFAULT didChangeNearestBeacon()');
+};
 
 Delegate.prototype.peripheralManagerDidStartAdvertising = function() {
 	Delegate.safeTraceLogging('DEFAULT peripheralManagerDidStartAdvertising()');
@@ -133,5 +180,13 @@ Delegate.prototype.didChangeAuthorizationStatus = function() {
 	Delegate.safeTraceLogging('DEFAULT didChangeAuthorizationStatus()');
 };
 
+/**
+ * Receives the metrics pushed by the native layer once
+ * {@link LocationManager.setMetricsOptions} set an interval. (ANDROID ONLY)
+ */
+Delegate.prototype.didUpdateMetrics = function() {
+	Delegate.safeTraceLogging('DEFAULT didUpdateMetrics()');
+};
+
 
 module.exports = Delegate;
@@ -113,6 +113,10 @@ LocationManager.prototype._registerDelegateCallbackId = function () {
  */
 LocationManager.prototype._onDelegateCallback = function (deferred, pluginResult) {
 
+	if (pluginResult instanceof ArrayBuffer) { // A binary ranging event, see setRangingOptions().
+		pluginResult = this._decodeRangingEvent(pluginResult);
+	}
+
 	this.appendToDeviceLog('_onDelegateCallback() ' + JSON.stringify(pluginResult));
 
 	if (pluginResult && _.isString(pluginResult['eventType'])) { // The native layer calling the DOM with a delegate event.
@@ -124,6 +128,123 @@ LocationManager.prototype._onDelegateCallback = function (deferred, pluginResult
 	}
 };
 
+var RANGING_EVENT_TYPES = ['didRangeBeaconsInRegion', 'didRangeBeaconsInRegionDelta', 'didRangeBeaconsInRegionBatch'];
+var PROXIMITIES = ['ProximityUnknown', 'ProximityImmediate', 'ProximityNear', 'ProximityFar'];
+var REGION_UUID = 1, REGION_MAJOR = 2, REGION_MINOR = 4, REGION_SMOOTHED = 8, REGION_DELTA = 16;
+var HEX_BYTES = _.map(_.range(256), function(b) {
+	return (b < 16 ? '0' : '') + b.toString(16);
+});
+
+/**
+ * Decodes a binary ranging event written by the Android RangingBinaryWriter
+ * into the object the corresponding JSON event holds.
+ *
+ * @param {ArrayBuffer} buffer The event as received from the native layer.
+ *
+ * @returns {Object} The event with its 'eventType'.
+ */
+LocationManager.prototype._decodeRangingEvent = function (buffer) {
+	var view = new DataView(buffer);
+	var offset = 0;
+
+	var readUuid = function() {
+		var b = new Uint8Array(buffer, offset, 16);
+		offset += 16;
+		return HEX_BYTES[b[0]] + HEX_BYTES[b[1]] + HEX_BYTES[b[2]] + HEX_BYTES[b[3]] + '-' +
+			HEX_BYTES[b[4]] + HEX_BYTES[b[5]] + '-' + HEX_BYTES[b[6]] + HEX_BYTES[b[7]] + '-' +
+			HEX_BYTES[b[8]] + HEX_BYTES[b[9]] + '-' + HEX_BYTES[b[10]] + HEX_BYTES[b[11]] +
+			HEX_BYTES[b[12]] + HEX_BYTES[b[13]] + HEX_BYTES[b[14]] + HEX_BYTES[b[15]];
+	};
+
+	var readUint16 = function() {
+		var value = view.getUint16(offset);
+		offset += 2;
+		return value;
+	};
+
+	var readString = function() {
+		var length = readUint16();
+		var bytes = new Uint8Array(buffer, offset, length);
+		offset += length;
+		var binary = '';
+		for (var i = 0; i < length; i++) {
+			binary += String.fromCharCode(bytes[i]);
+		}
+		return decodeURIComponent(escape(binary)); // UTF-8
+	};
+
+	var readBeaconIdentifiers = function() {
+		return {
+			uuid: readUuid(),
+			major: String(readUint16()),
+			minor: String(readUint16())
+		};
+	};
+
+	var readBeacons = function(smoothed) {
+		var count = readUint16();
+		var beacons = new Array(count);
+		for (var i = 0; i < count; i++) {
+			var beacon = readBeaconIdentifiers();
+			beacon.proximity = PROXIMITIES[view.getUint8(offset + 3)] || PROXIMITIES[0];
+			beacon.rssi = view.getInt8(offset);
+			if (smoothed) {
+				beacon.rawRssi = view.getInt8(offset + 1);
+			}
+			beacon.tx = view.getInt8(offset + 2);
+			beacon.accuracy = Math.round(view.getFloat32(offset + 4) * 100) / 100;
+			offset += 8;
+			beacons[i] = beacon;
+		}
+		return beacons;
+	};
+
+	var readRemovedBeacons = function() {
+		var count = readUint16();
+		var beacons = new Array(count);
+		for (var i = 0; i < count; i++) {
+			beacons[i] = readBeaconIdentifiers();
+		}
+		return beacons;
+	};
+
+	var readEntry = function() {
+		var flags = view.getUint8(offset++);
+		var region = {identifier: readString()};
+		if (flags & REGION_UUID) {
+			region.uuid = readUuid();
+		}
+		if (flags & REGION_MAJOR) {
+			region.major = String(readUint16());
+		}
+		if (flags & REGION_MINOR) {
+			region.minor = String(readUint16());
+		}
+		region.typeName = 'BeaconRegion';
+
+		var smoothed = (flags & REGION_SMOOTHED) !== 0;
+		if (!(flags & REGION_DELTA)) {
+			return {region: region, beacons: readBeacons(smoothed)};
+		}
+		var added = readBeacons(smoothed);
+		var changed = readBeacons(smoothed);
+		return {region: region, added: added, changed: changed, removed: readRemovedBeacons()};
+	};
+
+	var eventType = RANGING_EVENT_TYPES[view.getUint8(1)];
+	var regionCount = view.getUint16(2);
+	offset = 4;
+
+	if (eventType === 'didRangeBeaconsInRegionBatch') {
+		var batch = new Array(regionCount);
+		for (var i = 0; i < regionCount; i++) {
+			batch[i] = readEntry();
+		}
+		return {eventType: eventType, batch: batch};
+	}
+	return _.extend({eventType: eventType}, readEntry());
+};
+
 /**
  * Routes async messages arriving from the native layer to the appropriate
  * delegate methods.
@@ -205,6 +326,53 @@ LocationManager.prototype._promisedExec = function (method, commandArgs, preProc
 	return d.promise;
 };
 
+/**
+ * Calls a native method returning a list in chunks. Each chunk is handed to
+ * onChunk as an {Array} once it arrives, after passing it through the
+ * preProcessors. The promise is resolved with the total number of items
+ * after the last chunk.
+ * <p>
+ * A native layer not supporting streams returns the whole list at once, it
+ * is handed to onChunk as a single chunk.
+ */
+LocationManager.prototype._streamedExec = function (method, commandArgs, onChunk, preProcessors) {
+	var self = this;
+	commandArgs = _.isArray(commandArgs) ? commandArgs : [];
+	preProcessors = _.isArray(preProcessors) ? preProcessors : [];
+	preProcessors = _.filter(preProcessors, function(preProcessor) {
+		return _.isFunction(preProcessor);
+	});
+
+	var d = Q.defer();
+	var expectedSeq = 0;
+
+	var handOver = function(items) {
+		if (_.isFunction(onChunk) && items.length > 0) {
+			self._preProcessorExecutor(onChunk, items, preProcessors);
+		}
+	};
+
+	var onResult = function(chunk) {
+		if (_.isArray(chunk)) {
+			handOver(chunk);
+			d.resolve(chunk.length);
+			return;
+		}
+		if (chunk.seq !== expectedSeq++) {
+			d.reject('Chunk ' + chunk.seq + ' of ' + method + ' received out of order');
+			return;
+		}
+		handOver(chunk.items);
+		if (chunk.end) {
+			d.resolve(chunk.count);
+		}
+	};
+
+	exec(onResult, d.reject, "LocationManager", method, commandArgs);
+
+	return d.promise;
+};
+
 /**
  * Signals the native layer that the client side is ready to consume messages.
  * Readiness here means that it has a {Delegate} set by the consumer javascript
@@ -269,6 +437,10 @@ LocationManager.prototype.disableBluetooth = function() {
  *
  * This is done asynchronously and may not be immediately reflected in monitoredRegions.
  *
+ * On Android the monitored regions are kept by a background service and stay
+ * monitored after the app or the device was restarted, until they are stopped
+ * with stopMonitoringForRegion.
+ *
  * @param {Region} region An instance of {Region} which will be monitored
  * by the operating system.
  * 
@@ -359,6 +531,61 @@ LocationManager.prototype.stopRangingBeaconsInRegion = function(region) {
 	return this._promisedExec('stopRangingBeaconsInRegion', [region], []);
 };
 
+/**
+ * Subscribes to the ranging results of a beacon region, ranging it if it is
+ * not ranged yet. (ANDROID ONLY)
+ *
+ * The results are handed to onResult instead of the delegate, at most
+ * maxRateHz times per second and with only the requested beacon fields.
+ * The subscriptions of a region share one ranging of it.
+ *
+ * @param {BeaconRegion} region The region to receive the ranging results of.
+ * @param {Object} options { maxRateHz: 2, fields: ['major', 'minor', 'rssi'] }
+ * maxRateHz defaults to every ranging cycle, fields defaults to uuid, major,
+ * minor, proximity, rssi, tx and accuracy. ['count'] only delivers the number
+ * of beacons.
+ * @param {Function} onResult Called with { subscriptionId, region, count, beacons }
+ * for each ranging result of the subscription.
+ *
+ * @return {Q.Promise} Returns a promise which is resolved with the id of the
+ * subscription, to be passed to unsubscribeRanging.
+ */
+LocationManager.prototype.subscribeRanging = function(region, options, onResult) {
+	if (!Regions.isBeaconRegion(region))
+		throw new TypeError('The region parameter has to be an instance of BeaconRegion');
+
+	var d = Q.defer();
+
+	var onMessage = function(message) {
+		if (message.eventType === 'didRangeBeaconsForSubscription') {
+			message.region = Regions.fromJson(message.region);
+			if (_.isFunction(onResult)) {
+				onResult(message);
+			}
+		} else if (!message.ended) {
+			d.resolve(message.subscriptionId);
+		}
+	};
+
+	exec(onMessage, d.reject, "LocationManager", 'subscribeRanging', [region, options || {}]);
+
+	return d.promise;
+};
+
+/**
+ * Ends a subscription made with subscribeRanging. The region stops being
+ * ranged with its last subscription, unless it is ranged with
+ * startRangingBeaconsInRegion too. (ANDROID ONLY)
+ *
+ * @param {Number} subscriptionId The id the subscribeRanging promise was resolved with.
+ *
+ * @return {Q.Promise} Returns a promise which is resolved as soon as the
+ * subscription has ended.
+ */
+LocationManager.prototype.unsubscribeRanging = function(subscriptionId) {
+	return this._promisedExec('unsubscribeRanging', [{subscriptionId: subscriptionId}], []);
+};
+
 /**
  * Queries the native layer to determine the current authorization in effect.
  * 
@@ -393,21 +620,41 @@ LocationManager.prototype.requestAlwaysAuthorization = function() {
 
 /** 
  * 
+ * @param {Object} options Optional, { chunkSize: 100 } sets the number of
+ * regions handed to onChunk at once. (ANDROID ONLY)
+ * @param {Function} onChunk Optional, if given the regions are streamed and
+ * handed to it as {Array}s of {Region} instances in chunks.
+ *
  * @returns {Q.Promise} Returns a promise which is resolved with an {Array}
- * of {Region} instances that are being monitored by the native layer.
+ * of {Region} instances that are being monitored by the native layer, or
+ * with their number if streamed.
  */
-LocationManager.prototype.getMonitoredRegions = function() {
+LocationManager.prototype.getMonitoredRegions = function(options, onChunk) {
 	var preProcessors = [Regions.fromJsonArray];
+	if (_.isFunction(onChunk)) {
+		var streamOptions = _.extend({}, options, {stream: true});
+		return this._streamedExec('getMonitoredRegions', [streamOptions], onChunk, preProcessors);
+	}
 	return this._promisedExec('getMonitoredRegions', [], preProcessors);
 };
 
 /** 
  * 
+ * @param {Object} options Optional, { chunkSize: 100 } sets the number of
+ * regions handed to onChunk at once. (ANDROID ONLY)
+ * @param {Function} onChunk Optional, if given the regions are streamed and
+ * handed to it as {Array}s of {Region} instances in chunks.
+ *
  * @returns {Q.Promise} Returns a promise which is resolved with an {Array}
- * of {Region} instances that are being ranged by the native layer.
+ * of {Region} instances that are being ranged by the native layer, or with
+ * their number if streamed.
  */
-LocationManager.prototype.getRangedRegions = function() {
+LocationManager.prototype.getRangedRegions = function(options, onChunk) {
 	var preProcessors = [Regions.fromJsonArray];
+	if (_.isFunction(onChunk)) {
+		var streamOptions = _.extend({}, options, {stream: true});
+		return this._streamedExec('getRangedRegions', [streamOptions], onChunk, preProcessors);
+	}
 	return this._promisedExec('getRangedRegions', [], preProcessors);
 };
 
@@ -446,6 +693,301 @@ LocationManager.prototype.setNotificationOptions = function(options) {
 	return this._promisedExec('setNotificationOptions', [options], []);
 };
 
+/**
+ * Sets the options controlling how ranging results are delivered to the
+ * {Delegate}. (ANDROID ONLY)
+ *
+ * @param {Object} options The ranging options, for example:
+ * <pre>
+ * {
+ *     encoding: 'binary',     // 'json' (default) or 'binary'
+ *     batch: {
+ *         enabled: true,      // coalesce the results of all regions, defaults to false
+ *         maxBatchSize: 20,   // flush as soon as this many regions are waiting
+ *         maxLingerMs: 250    // flush at the latest this long after the first result
+ *     },
+ *     delta: {
+ *         enabled: true,      // only deliver changes, defaults to false
+ *         rssiThreshold: 5    // RSSI change in dBm reported as a change
+ *     },
+ *     filter: {
+ *         type: 'kalman',     // 'kalman', 'median', 'arma' or 'none' (default)
+ *         processNoise: 0.5,  // kalman: expected RSSI drift per cycle (dBm^2)
+ *         measurementNoise: 9,// kalman: noise of a single reading (dBm^2)
+ *         windowSize: 5,      // median: number of readings
+ *         coefficient: 0.1    // arma: weight of a new reading
+ *     },
+ *     proximity: {
+ *         immediateThreshold: 0.5, // metres, immediate below
+ *         nearThreshold: 4.0, // metres, near up to, far beyond
+ *         hysteresis: 0.15,   // fraction a threshold has to be passed by, defaults to 0
+ *         minDwellMs: 3000    // time a new proximity has to last, defaults to 0
+ *     },
+ *     topK: {
+ *         k: 3,               // only the 3 best beacons per region, 0 (default) for all
+ *         by: 'accuracy'      // 'rssi' strongest first (default) or 'accuracy' nearest first
+ *     },
+ *     nearest: {
+ *         enabled: true,      // send didChangeNearestBeacon events, defaults to false
+ *         debounceMs: 1000,   // time a new nearest beacon has to last, defaults to 1000
+ *         rssiMargin: 3       // dBm it has to be stronger by, defaults to 3
+ *     },
+ *     rangingEvents: false    // no ranging events, only derived ones, defaults to true
+ * }
+ * </pre>
+ * With encoding: 'binary' (ANDROID ONLY) the ranging events are sent as
+ * compact ArrayBuffers with fixed size records per beacon instead of JSON and
+ * decoded before they reach the {Delegate}, which receives the same objects.
+ * When batching is enabled the {Delegate} receives didRangeBeaconsInRegionBatch
+ * events instead of didRangeBeaconsInRegion.
+ * When deltas are enabled the {Delegate} receives didRangeBeaconsInRegionDelta
+ * events with the lists 'added', 'changed' and 'removed' instead of 'beacons',
+ * and no event at all while nothing changes. A beacon is changed when its
+ * proximity changed or its RSSI moved by more than rssiThreshold.
+ * When a filter is set, the rssi, accuracy and proximity of the beacons are
+ * based on the smoothed RSSI and the RSSI of the last packet is added as
+ * rawRssi.
+ * With proximity options the proximity of a beacon only changes once its
+ * distance passed a threshold by the hysteresis and stayed there for
+ * minDwellMs.
+ * With topK the 'beacons' of a region are its k best ones, best first, and
+ * they are only delivered when they or their order changed.
+ * With nearest enabled the {Delegate} receives didChangeNearestBeacon events
+ * with the 'beacon' now nearest to the device and the 'previous' one. With
+ * rangingEvents: false these are sent without any ranging events.
+ *
+ * @return {Q.Promise} Returns a promise which is resolved as soon as the
+ * native layer acknowledged the setting of the ranging options.
+ */
+LocationManager.prototype.setRangingOptions = function(options) {
+	return this._promisedExec('setRangingOptions', [options], []);
+};
+
+/**
+ * Sets whether the time between two scans adapts to the activity around the
+ * device. (ANDROID ONLY)
+ *
+ * While beacons appear in or disappear from ranged regions, or monitored
+ * regions are entered or exited, scans happen every floorMs. Every scan cycle
+ * without such activity multiplies the time between scans by
+ * backoffMultiplier, up to ceilingMs. The options are saved and applied again
+ * when the app is restarted.
+ *
+ * @param {Object} options The scan options, for example:
+ * <pre>
+ * {
+ *     adaptive: true,         // defaults to false, the fixed periods apply then
+ *     foreground: { floorMs: 1000, ceilingMs: 15000 },
+ *     background: { floorMs: 10000, ceilingMs: 300000 },
+ *     backoffMultiplier: 2
+ * }
+ * </pre>
+ *
+ * @return {Q.Promise} Returns a promise which is resolved with the current
+ * time between scans ('foregroundBetweenScanPeriod',
+ * 'backgroundBetweenScanPeriod' in milliseconds, -1 if not set by the plugin).
+ */
+LocationManager.prototype.setScanOptions = function(options) {
+	return this._promisedExec('setScanOptions', [options || {}], []);
+};
+
+/**
+ * Returns the beacons currently visible in the ranged regions, right away
+ * rather than with the next ranging event. (ANDROID ONLY)
+ *
+ * A beacon stays visible until it is missing from more than a few ranging
+ * results of its region in a row (see the
+ * com.unarin.cordova.beacon.android.VisibleBeaconMissedCycles preference).
+ *
+ * @param {Object} options Optional, for example:
+ * <pre>
+ * {
+ *     region: region,     // only beacons matching this {Region}, defaults to all
+ *     sortBy: 'rssi',     // strongest first (default), 'accuracy' nearest first or 'lastSeen' latest first
+ *     limit: 10,          // at most this many beacons, all by default
+ *     chunkSize: 100      // number of beacons handed to onChunk at once
+ * }
+ * </pre>
+ * @param {Function} onChunk Optional, if given the result is streamed and
+ * handed to it in chunks.
+ *
+ * @return {Q.Promise} Returns a promise which is resolved with an {Array} of
+ * beacons holding the fields of ranged beacons, the identifier of the
+ * 'region' they were last ranged in and when, 'lastSeen' in milliseconds
+ * since the epoch, or with the number of beacons if streamed.
+ */
+LocationManager.prototype.getVisibleBeacons = function(options, onChunk) {
+	if (_.isFunction(onChunk)) {
+		var streamOptions = _.extend({}, options, {stream: true});
+		return this._streamedExec('getVisibleBeacons', [streamOptions], onChunk, []);
+	}
+	return this._promisedExec('getVisibleBeacons', [options || {}], []);
+};
+
+/**
+ * Reads the history of the ranged beacons. (ANDROID ONLY)
+ *
+ * Once the com.unarin.cordova.beacon.android.SightingCapacity preference is
+ * set, every ranged beacon is recorded in a store of that size, the oldest
+ * sightings are overwritten once it is full. Without it the promise is
+ * rejected.
+ *
+ * @param {Object} options Optional, for example:
+ * <pre>
+ * {
+ *     windowMs: 600000,   // only sightings of the last 10 minutes (default)
+ *     region: region,     // only beacons matching this {Region}, defaults to all
+ *     maxGapMs: 30000,    // longer gaps between two sightings do not count as dwell time (default)
+ *     chunkSize: 100      // number of beacons handed to onChunk at once
+ * }
+ * </pre>
+ * @param {Function} onChunk Optional, if given the result is streamed and
+ * handed to it in chunks.
+ *
+ * @return {Q.Promise} Returns a promise which is resolved with an {Array} of
+ * objects holding per beacon 'uuid', 'major', 'minor', 'firstSeen' and
+ * 'lastSeen' (milliseconds since the epoch), the number of 'sightings', the
+ * 'meanRssi' and the 'dwellTime' in milliseconds, or with the number of
+ * beacons if streamed.
+ */
+LocationManager.prototype.getBeaconSightings = function(options, onChunk) {
+	if (_.isFunction(onChunk)) {
+		var streamOptions = _.extend({}, options, {stream: true});
+		return this._streamedExec('getBeaconSightings', [streamOptions], onChunk, []);
+	}
+	return this._promisedExec('getBeaconSightings', [options || {}], []);
+};
+
+/**
+ * Replays a beacon trace file into the ranging and monitoring callbacks, as if
+ * its beacons were seen, to try the app and the plugin without physical
+ * beacons. The events reach the delegate and the ranging subscriptions like
+ * real ones. See the README for the trace format. (ANDROID ONLY)
+ *
+ * @param {Object} options The replay options, for example:
+ * <pre>
+ * {
+ *     path: 'traces/lobby.trace', // relative to the files directory of the app
+ *     speed: 10,                  // 1 by default, 0 replays as fast as possible
+ *     loop: false                 // default
+ * }
+ * </pre>
+ *
+ * @return {Q.Promise} Returns a promise which is resolved as soon as the
+ * replay has started.
+ */
+LocationManager.prototype.startTraceReplay = function(options) {
+	return this._promisedExec('startTraceReplay', [options || {}], []);
+};
+
+/**
+ * Stops the replay started with startTraceReplay. (ANDROID ONLY)
+ *
+ * @return {Q.Promise} Returns a promise which is resolved with an {Object}
+ * holding the number of 'events' replayed.
+ */
+LocationManager.prototype.stopTraceReplay = function() {
+	return this._promisedExec('stopTraceReplay', [], []);
+};
+
+/**
+ * Sets whether the monitored regions are ranged and the sightings recorded
+ * while the app is not running. (ANDROID ONLY)
+ *
+ * The sightings are appended to log files kept by the background service,
+ * once a file reaches maxFileBytes the next one is started and only the
+ * newest maxFiles files are kept. The options are saved and applied again
+ * when the app or the device is restarted.
+ *
+ * @param {Object} options The recorder options, for example:
+ * <pre>
+ * {
+ *     enabled: true,          // defaults to false
+ *     maxFileBytes: 262144,   // default
+ *     maxFiles: 8             // default
+ * }
+ * </pre>
+ *
+ * @return {Q.Promise} Returns a promise which is resolved with an {Object}
+ * holding 'enabled', 'recording' and the number of 'files' and 'bytes' on disk.
+ */
+LocationManager.prototype.setBackgroundRecorderOptions = function(options) {
+	return this._promisedExec('setBackgroundRecorderOptions', [options || {}], []);
+};
+
+/**
+ * Reads the sightings recorded while the app was not running and deletes
+ * them afterwards. (ANDROID ONLY)
+ *
+ * @param {Object} options Optional, { chunkSize: 100 } sets the number of
+ * records handed over at once.
+ * @param {Function} onChunk Called with an {Array} of records, oldest first.
+ * Each record holds the 'time' in milliseconds since the epoch, the 'region'
+ * identifier and the ranged 'beacons' with 'uuid', 'major', 'minor', 'rssi'
+ * and 'tx'.
+ *
+ * @return {Q.Promise} Returns a promise which is resolved with the number of
+ * records once all of them were handed to onChunk.
+ */
+LocationManager.prototype.drainBackgroundSightings = function(options, onChunk) {
+	return this._streamedExec('drainBackgroundSightings', [options || {}], onChunk, []);
+};
+
+/**
+ * Reads the statistics of the native commands. (ANDROID ONLY)
+ *
+ * @param {Object} options Optional, { reset: true } clears the statistics after
+ * reading them.
+ *
+ * @return {Q.Promise} Returns a promise which is resolved with an {Object}
+ * holding the size of the command thread pool ('threads', 'activeThreads',
+ * 'queueCapacity', 'queued') and per command name under 'commands' the
+ * 'count', 'failures', 'rejections' and the 'latency' and 'queueWait'
+ * histograms. A histogram holds 'count', 'meanMs', 'maxMs', 'p50Ms', 'p90Ms',
+ * 'p99Ms' and 'buckets', where buckets[i] counts the durations below 2^i
+ * microseconds that did not fit into the previous bucket.
+ */
+LocationManager.prototype.getCommandStats = function(options) {
+	return this._promisedExec('getCommandStats', [options || {}], []);
+};
+
+/**
+ * Reads the metrics of the events sent from the native layer to the
+ * {Delegate}. (ANDROID ONLY)
+ *
+ * @param {Object} options Optional, { reset: true } clears the event counters
+ * and the peak queue depth after reading them.
+ *
+ * @return {Q.Promise} Returns a promise which is resolved with an {Object}
+ * holding the state of the event queue under 'queue' ('depth', 'peakDepth',
+ * 'capacity', 'dropped', 'paused'), the current time between scans under
+ * 'scan' (see {@link setScanOptions}) and per event type under 'events' the
+ * counts 'received', 'coalesced', 'dropped', 'suppressed' and 'sent' and the
+ * 'latency' histogram (see {@link getCommandStats}) from receiving an event to
+ * sending it. Every region of a didRangeBeaconsInRegionBatch or
+ * didRangeBeaconsInRegionDelta event is counted as one didRangeBeaconsInRegion
+ * result.
+ */
+LocationManager.prototype.getMetrics = function(options) {
+	return this._promisedExec('getMetrics', [options || {}], []);
+};
+
+/**
+ * Sets whether the metrics returned by {@link getMetrics} are also pushed to
+ * the {Delegate} periodically, as didUpdateMetrics events with the metrics
+ * under 'metrics'. (ANDROID ONLY)
+ *
+ * @param {Object} options { intervalMs: 5000 } pushes the metrics every 5
+ * seconds, an intervalMs of 0 (the default) stops pushing them.
+ * { reset: true } clears the metrics.
+ *
+ * @return {Q.Promise} Returns a promise which is resolved as soon as the
+ * native layer acknowledged the setting of the metrics options.
+ */
+LocationManager.prototype.setMetricsOptions = function(options) {
+	return this._promisedExec('setMetricsOptions', [options || {}], []);
+};
+
 /**
  * Start advertising the specified region.
  *